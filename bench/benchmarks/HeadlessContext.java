@@ -0,0 +1,50 @@
+package benchmarks;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+
+// creates an invisible window, so the chapters' render paths can run without showing anything
+// the benchmarks are only comparable on the same driver, so the renderer is printed once
+public class HeadlessContext {
+	public static final int WIDTH = 300, HEIGHT = 300;
+
+	private static boolean rendererPrinted = false;
+
+	public static long create() {
+		if ( glfwInit() != GL11.GL_TRUE )
+			throw new IllegalStateException("Unable to initialize GLFW!");
+
+		glfwDefaultWindowHints();
+		glfwWindowHint(GLFW_VISIBLE, GL_FALSE);
+		glfwWindowHint(GLFW_RESIZABLE, GL_FALSE);
+
+		long window = glfwCreateWindow(WIDTH, HEIGHT, "Benchmark", NULL, NULL);
+		if ( window == NULL )
+			throw new RuntimeException("Failed to create the GLFW window!");
+
+		glfwMakeContextCurrent(window);
+		GL.createCapabilities();
+
+		// never wait for the monitor, we want to know how long a frame takes, not the refresh rate
+		glfwSwapInterval(0);
+
+		glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+
+		if (!rendererPrinted) {
+			System.out.println("# Renderer: " + glGetString(GL_RENDERER) + ", " + glGetString(GL_VERSION));
+			rendererPrinted = true;
+		}
+
+		return window;
+	}
+
+	public static void destroy(long window) {
+		glfwDestroyWindow(window);
+		glfwTerminate();
+	}
+
+}
@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// runs every *Benchmark class in the bench source folder and prints a summary
+// with microseconds per frame and the frames per second that follows from it
+//
+// without a GPU (or to get numbers that don't depend on one) use Mesa's software rasterizer:
+// LIBGL_ALWAYS_SOFTWARE=1 GALLIUM_DRIVER=llvmpipe xvfb-run -a java benchmarks.RenderBenchmarks
+//
+// any argument is passed on to JMH, e.g. "TextureBenchmark -p objectCount=1000"
+public class RenderBenchmarks {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = args.length > 0
+				? new CommandLineOptions(args)
+				: new OptionsBuilder().include(".*Benchmark").build();
+
+		Collection<RunResult> results = new Runner(options).run();
+
+		System.out.println();
+		System.out.println(String.format("%-60s %14s %10s", "benchmark", "us/frame", "fps"));
+		for (RunResult result : results) {
+			StringBuilder name = new StringBuilder(result.getParams().getBenchmark());
+			for (String key : result.getParams().getParamsKeys())
+				name.append(' ').append(key).append('=').append(result.getParams().getParam(key));
+
+			double microsPerFrame = result.getPrimaryResult().getScore();
+			System.out.println(String.format("%-60s %14.3f %10.1f", name, microsPerFrame, 1000000.0d / microsPerFrame));
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package c3.display;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.HeadlessContext;
+
+// one operation is one frame: clear, draw the triangle objectCount times, swap
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TriangleBenchmark {
+	@Param({"1", "100", "10000"})
+	public int objectCount;
+
+	private long window;
+	private DisplayManager display;
+
+	@Setup
+	public void setUp() {
+		window = HeadlessContext.create();
+		display = new DisplayManager();
+		display.defineVertices();
+	}
+
+	@Benchmark
+	public void frame() {
+		glClear(GL_COLOR_BUFFER_BIT);
+		for (int i = 0; i < objectCount; i++)
+			display.renderTriangle();
+		glfwSwapBuffers(window);
+	}
+
+	@TearDown
+	public void tearDown() {
+		display.cleanUp();
+		HeadlessContext.destroy(window);
+	}
+
+}
@@ -0,0 +1,73 @@
+package c4.display;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.HeadlessContext;
+
+// compares the two ways chapter 4 draws the square, 6 vertices with glDrawArrays
+// or 4 vertices and an index buffer with glDrawElements
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexingBenchmark {
+	@Param({"1", "100", "10000"})
+	public int objectCount;
+
+	@Param({"drawArrays", "drawElements"})
+	public String path;
+
+	private long window;
+	private DisplayManager display;
+	private boolean indexed;
+
+	@Setup
+	public void setUp() {
+		window = HeadlessContext.create();
+		display = new DisplayManager();
+
+		indexed = path.equals("drawElements");
+		if (indexed)
+			display.defineSquareWithIndexing();
+		else
+			display.defineSquareWithoutIndexing();
+	}
+
+	@Benchmark
+	public void frame() {
+		glClear(GL_COLOR_BUFFER_BIT);
+		if (indexed) {
+			for (int i = 0; i < objectCount; i++)
+				display.renderSquareWithDrawElements();
+		} else {
+			for (int i = 0; i < objectCount; i++)
+				display.renderSquareWithDrawArrays();
+		}
+		glfwSwapBuffers(window);
+	}
+
+	@TearDown
+	public void tearDown() {
+		display.cleanUp();
+		HeadlessContext.destroy(window);
+	}
+
+}
@@ -0,0 +1,72 @@
+package c6.batch;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL20;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.HeadlessContext;
+import c6.display.DisplayManager;
+import c6.shaders.ProgramCache;
+
+// objectCount textured quads per frame through the SpriteBatch
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpriteBatchBenchmark {
+	@Param({"100", "10000", "100000"})
+	public int objectCount;
+
+	private long window;
+	private SpriteBatch batch;
+	private int pId, texId;
+
+	@Setup
+	public void setUp() {
+		window = HeadlessContext.create();
+
+		batch = new SpriteBatch(Math.min(objectCount, 65536));
+		pId = new ProgramCache("cache/shaders").load("src/c6/shaders/vertex.sh", "src/c6/shaders/fragment.sh",
+				SpriteBatch.LAYOUT);
+		texId = DisplayManager.loadTexture("res/textures/c6/Bunny2D.PNG", GL13.GL_TEXTURE0);
+	}
+
+	@Benchmark
+	public void frame() {
+		glClear(GL_COLOR_BUFFER_BIT);
+		batch.begin(pId);
+		for (int i = 0; i < objectCount; i++) {
+			float x = (i % 100) * 0.02f - 1.0f, y = 1.0f - (i / 100 % 100) * 0.02f;
+			batch.draw(texId, x, y, 0.02f, 0.02f);
+		}
+		batch.end();
+		glfwSwapBuffers(window);
+	}
+
+	@TearDown
+	public void tearDown() {
+		batch.cleanUp();
+		glDeleteTextures(texId);
+		GL20.glDeleteProgram(pId);
+		HeadlessContext.destroy(window);
+	}
+
+}
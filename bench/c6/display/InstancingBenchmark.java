@@ -0,0 +1,85 @@
+package c6.display;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.HeadlessContext;
+
+// the textured square of chapter 6, drawn instances times per frame, either by calling
+// renderSquare() for every copy or with a single glDrawElementsInstanced call
+// the loop draws every copy at full size, so at high counts it also pays for more pixels
+// transformed composes and uploads a spinning model-view-projection matrix for every copy each frame
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstancingBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int instances;
+
+	@Param({"loop", "instanced", "transformed"})
+	public String path;
+
+	private long window;
+	private DisplayManager display;
+
+	@Setup
+	public void setUp() {
+		window = HeadlessContext.create();
+
+		display = new DisplayManager();
+		display.defineSquare();
+		display.loadTextures();
+		display.initShaders();
+		display.finishLoadingTextures();
+
+		if (!path.equals("loop")) {
+			display.instanceCount = instances;
+			display.transformed = path.equals("transformed");
+			display.defineInstances(instances);
+			if (display.transformed)
+				display.defineTransforms(instances);
+			display.loadTextureArray();
+			display.initInstancedShaders();
+		}
+	}
+
+	@Benchmark
+	public void frame() {
+		glClear(GL_COLOR_BUFFER_BIT);
+		if (path.equals("transformed")) {
+			display.updateInstances();
+			display.renderSquaresInstanced();
+		} else if (path.equals("instanced")) {
+			display.renderSquaresInstanced();
+		} else {
+			for (int i = 0; i < instances; i++)
+				display.renderSquare();
+		}
+		glfwSwapBuffers(window);
+	}
+
+	@TearDown
+	public void tearDown() {
+		display.cleanUp();
+		HeadlessContext.destroy(window);
+	}
+
+}
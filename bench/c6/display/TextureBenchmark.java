@@ -0,0 +1,79 @@
+package c6.display;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.HeadlessContext;
+import c6.vertex.VertexLayout;
+import c6.vertex.VertexLayoutReport;
+
+// the textured square of chapter 6, drawn objectCount times per frame
+// with the vertex format of VertexLayoutReport: 40, 20 or 16 bytes per vertex
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextureBenchmark {
+	@Param({"1", "100", "10000"})
+	public int objectCount;
+
+	@Param({"float", "packed", "compact"})
+	public String vertexFormat;
+
+	private long window;
+	private DisplayManager display;
+
+	@Setup
+	public void setUp() {
+		window = HeadlessContext.create();
+
+		display = new DisplayManager();
+		display.squareLayout = layoutOf(vertexFormat);
+		display.defineSquare();
+		display.loadTextures();
+		display.initShaders();
+		display.finishLoadingTextures();
+	}
+
+	static VertexLayout layoutOf(String vertexFormat) {
+		if (vertexFormat.equals("float"))
+			return VertexLayoutReport.FLOAT_LAYOUT;
+		if (vertexFormat.equals("packed"))
+			return VertexLayoutReport.PACKED_LAYOUT;
+		if (vertexFormat.equals("compact"))
+			return VertexLayoutReport.COMPACT_LAYOUT;
+		throw new IllegalArgumentException("Unknown vertex format: " + vertexFormat);
+	}
+
+	@Benchmark
+	public void frame() {
+		glClear(GL_COLOR_BUFFER_BIT);
+		for (int i = 0; i < objectCount; i++)
+			display.renderSquare();
+		glfwSwapBuffers(window);
+	}
+
+	@TearDown
+	public void tearDown() {
+		display.cleanUp();
+		HeadlessContext.destroy(window);
+	}
+
+}
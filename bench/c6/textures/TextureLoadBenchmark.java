@@ -0,0 +1,74 @@
+package c6.textures;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.opengl.GL13;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.HeadlessContext;
+import c6.display.DisplayManager;
+
+// loading the c6 bunny until it is on the GPU: decoding the PNG and generating
+// the mipmaps at runtime, mapping a container with the mip chain baked in,
+// or compressing every level to BC1 / BC3 on the fork-join pool
+// glFinish() makes sure the upload is part of the measured time
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextureLoadBenchmark {
+	private static final String PNG = "res/textures/c6/Bunny2D.PNG";
+
+	@Param({"png", "mapped", "compressed"})
+	public String path;
+
+	private long window;
+	private File container;
+
+	@Setup
+	public void setUp() throws IOException {
+		window = HeadlessContext.create();
+
+		container = File.createTempFile("Bunny2D", ".c6tex");
+		container.deleteOnExit();
+		TextureContainer.convert(PNG, container.getPath());
+	}
+
+	@Benchmark
+	public int load() throws IOException {
+		int texId;
+		if (path.equals("png"))
+			texId = DisplayManager.loadTexture(PNG, GL13.GL_TEXTURE0);
+		else if (path.equals("mapped"))
+			texId = TextureContainer.load(container.getPath());
+		else
+			texId = CompressedTextureLoader.load(PNG);
+		glFinish();
+		glDeleteTextures(texId);
+		return texId;
+	}
+
+	@TearDown
+	public void tearDown() {
+		container.delete();
+		HeadlessContext.destroy(window);
+	}
+
+}
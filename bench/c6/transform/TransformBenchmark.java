@@ -0,0 +1,61 @@
+package c6.transform;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// composes the model-view-projection matrices of every object, everything up to the upload:
+// scalar builds one matrix at a time with a general 4x4 multiply,
+// batched runs the structure of arrays loops the JIT can vectorize
+// no GL context is needed, it only measures the CPU side
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+	@Param({"10000", "100000", "1000000"})
+	public int objects;
+
+	@Param({"scalar", "batched"})
+	public String path;
+
+	private Transforms transforms;
+	private final float[] viewProjection = new float[16];
+
+	@Setup
+	public void setUp() {
+		Matrices.multiply(Matrices.perspective(1.0f, 1.0f, 0.1f, 100.0f, new float[16]),
+				Matrices.translation(0.0f, 0.0f, -10.0f, new float[16]), viewProjection);
+
+		Random random = new Random(42);
+		transforms = new Transforms(objects);
+		for (int i = 0; i < objects; i++) {
+			transforms.add(random.nextFloat() * 10.0f - 5.0f, random.nextFloat() * 10.0f - 5.0f, random.nextFloat() * 10.0f - 5.0f);
+			transforms.setRotation(i, 0.0f, 1.0f, 0.0f, random.nextFloat() * Math.PI * 2.0d);
+			transforms.setScale(i, 0.5f, 0.5f, 0.5f);
+		}
+	}
+
+	@Benchmark
+	public float[] compose() {
+		if (path.equals("batched"))
+			transforms.compose(viewProjection);
+		else
+			transforms.composeScalar(viewProjection);
+		return transforms.getMatrices();
+	}
+
+}
@@ -75,7 +75,7 @@ public class DisplayManager {
         }
     }
 	
-	private void cleanUp() {
+	void cleanUp() {
     	GL30.glBindVertexArray(vaoId); // bind the VAO
     	GL20.glDisableVertexAttribArray(0); // disable VBO with index 0
     	GL30.glBindVertexArray(0); // unbind VAOs
@@ -85,7 +85,7 @@ public class DisplayManager {
     	GL15.glDeleteBuffers(vboId); // delete this VBO
 	}
  
-    private void defineVertices() {
+    void defineVertices() {
     	float[] vertices = {
 	        -0.5f, -0.5f, 0f, // lower left vertex
 	        0.5f, -0.5f, 0f, // lower right vertex
@@ -107,7 +107,7 @@ public class DisplayManager {
     	GL30.glBindVertexArray(0);	// unbind the VAO
 	}
 
-	private void renderTriangle() {
+	void renderTriangle() {
 		GL30.glBindVertexArray(vaoId); // bind VAO
         GL20.glEnableVertexAttribArray(0); // enable VBO index 0
          
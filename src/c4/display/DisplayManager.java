@@ -75,7 +75,7 @@ public class DisplayManager {
         }
     }
 	
-	private void cleanUp() {
+	void cleanUp() {
 		GL30.glBindVertexArray(vaoId);
     	GL20.glDisableVertexAttribArray(0);
     	GL30.glBindVertexArray(0);
@@ -94,8 +94,7 @@ public class DisplayManager {
 	// it requires the usage of glDrawArrays
 	// the adequate rendering function is renderSquareWithDrawArrays
 	// top left and bottom right are used twice
-    @SuppressWarnings("unused")
-	private void defineSquareWithoutIndexing() {
+	void defineSquareWithoutIndexing() {
     	float[] vertices = {
 	        -0.5f, 0.5f, 0f,	// top left
 	        -0.5f, -0.5f, 0f,	// bottom left
@@ -121,7 +120,7 @@ public class DisplayManager {
 	}
     
     // this one uses an indexing vbo, it goes with renderSquareWithDrawElements
-    private void defineSquareWithIndexing() {
+    void defineSquareWithIndexing() {
     	float[] vertices = {
 	        -0.5f, 0.5f, 0f,	// 0 - top left
 	        -0.5f, -0.5f, 0f,	// 1 - bottom left
@@ -160,8 +159,7 @@ public class DisplayManager {
     	GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
     }
 
-	@SuppressWarnings("unused")
-	private void renderSquareWithDrawArrays() {
+	void renderSquareWithDrawArrays() {
 		GL30.glBindVertexArray(vaoId);
         GL20.glEnableVertexAttribArray(0);
          
@@ -173,7 +171,7 @@ public class DisplayManager {
         GL30.glBindVertexArray(0);
 	}
 	
-	private void renderSquareWithDrawElements() {
+	void renderSquareWithDrawElements() {
 		GL30.glBindVertexArray(vaoId);
 		GL20.glEnableVertexAttribArray(0);
 		
@@ -17,6 +17,8 @@ import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL33;
 
 public class DisplayManager {
 	private final int SCREEN_WIDTH = 300, SCREEN_HEIGHT = 300;
@@ -28,6 +30,11 @@ public class DisplayManager {
 
 	private int vaoId, vboPosId, vboColId, vboIndexId;
 	private int vsId, fsId, pId;
+	
+	// with more than 0 instances the square is drawn that many times with a single call
+	int instanceCount;
+	private int vboInstanceId;
+	private int vsInstancedId, instancedPId;
 
     public void run() {
         try {
@@ -65,13 +72,21 @@ public class DisplayManager {
         defineSquare();
         
         initShaders();
+        
+        if (instanceCount > 0) {
+        	defineInstances(instanceCount);
+        	initInstancedShaders();
+        }
     }
 	
 	private void loop() {
         while ( glfwWindowShouldClose(window) == GL_FALSE ) {
             glClear(GL_COLOR_BUFFER_BIT);
             
-            renderSquare();
+            if (instanceCount > 0)
+            	renderSquaresInstanced();
+            else
+            	renderSquare();
             
             glfwSwapBuffers(window);
  
@@ -81,7 +96,7 @@ public class DisplayManager {
         }
     }
 	
-	private void cleanUp() {
+	void cleanUp() {
 		GL30.glBindVertexArray(vaoId);
     	GL20.glDisableVertexAttribArray(0);
     	GL20.glDisableVertexAttribArray(1);
@@ -101,9 +116,17 @@ public class DisplayManager {
 		GL20.glDeleteShader(vsId); // delete each shader
 		GL20.glDeleteShader(fsId);
 		GL20.glDeleteProgram(pId); // delete the program
+		
+		if (instanceCount > 0) {
+			GL15.glDeleteBuffers(vboInstanceId);
+			GL20.glDetachShader(instancedPId, vsInstancedId);
+			GL20.glDetachShader(instancedPId, fsId);
+			GL20.glDeleteShader(vsInstancedId);
+			GL20.glDeleteProgram(instancedPId);
+		}
 	}
  
-    private void defineSquare() {
+    void defineSquare() {
     	// feeding the shader 4 dimensional vectors is faster,
     	// than converting 3 dimensional ones in the shader
     	// the fourth number (W) is used in matrix operations
@@ -159,7 +182,7 @@ public class DisplayManager {
     	GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
     }
     
-    private void initShaders() {
+    void initShaders() {
 		vsId = loadShader("src/c5/shaders/vertex.sh", GL20.GL_VERTEX_SHADER);
 		fsId = loadShader("src/c5/shaders/fragment.sh", GL20.GL_FRAGMENT_SHADER);
 		
@@ -180,7 +203,58 @@ public class DisplayManager {
 		GL20.glValidateProgram(pId);
 	}
 
-	private void renderSquare() {
+	// every copy gets an offset, a scale and a tint, 8 floats in one interleaved buffer
+	// the copies are laid out in a grid that fills the window
+	void defineInstances(int count) {
+		int columns = (int) Math.ceil(Math.sqrt(count));
+		float cell = 2.0f / columns;
+		
+		FloatBuffer instanceBuffer = BufferUtils.createFloatBuffer(count * 8);
+		for (int i = 0; i < count; i++) {
+			int column = i % columns, row = i / columns;
+			instanceBuffer.put(-1.0f + cell * (column + 0.5f)).put(1.0f - cell * (row + 0.5f)); // offset
+			instanceBuffer.put(cell * 0.9f).put(cell * 0.9f); // scale
+			instanceBuffer.put((float) column / columns).put((float) row / columns).put(1.0f).put(1.0f); // tint
+		}
+		instanceBuffer.flip();
+		
+		GL30.glBindVertexArray(vaoId);
+		
+		vboInstanceId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboInstanceId);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, instanceBuffer, GL15.GL_STATIC_DRAW);
+		GL20.glVertexAttribPointer(2, 2, GL11.GL_FLOAT, false, 32, 0); // offset
+		GL20.glVertexAttribPointer(3, 2, GL11.GL_FLOAT, false, 32, 8); // scale
+		GL20.glVertexAttribPointer(4, 4, GL11.GL_FLOAT, false, 32, 16); // tint
+		
+		// a divisor of 1 moves to the next value after every instance instead of every vertex
+		GL33.glVertexAttribDivisor(2, 1);
+		GL33.glVertexAttribDivisor(3, 1);
+		GL33.glVertexAttribDivisor(4, 1);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		
+		GL30.glBindVertexArray(0);
+	}
+	
+	void initInstancedShaders() {
+		// the fragment shader is the same, only the vertex shader knows about instances
+		vsInstancedId = loadShader("src/c5/shaders/vertex_instanced.sh", GL20.GL_VERTEX_SHADER);
+		
+		instancedPId = GL20.glCreateProgram();
+		GL20.glAttachShader(instancedPId, vsInstancedId);
+		GL20.glAttachShader(instancedPId, fsId);
+		
+		GL20.glBindAttribLocation(instancedPId, 0, "in_Position");
+		GL20.glBindAttribLocation(instancedPId, 1, "in_Color");
+		GL20.glBindAttribLocation(instancedPId, 2, "in_Offset");
+		GL20.glBindAttribLocation(instancedPId, 3, "in_Scale");
+		GL20.glBindAttribLocation(instancedPId, 4, "in_Tint");
+		
+		GL20.glLinkProgram(instancedPId);
+		GL20.glValidateProgram(instancedPId);
+	}
+
+	void renderSquare() {
 		GL30.glBindVertexArray(vaoId);
 		GL20.glEnableVertexAttribArray(0);
 		GL20.glEnableVertexAttribArray(1);
@@ -200,6 +274,27 @@ public class DisplayManager {
 		GL30.glBindVertexArray(0);
 	}
 
+	// one draw call for every copy, instead of calling renderSquare() for each one
+	void renderSquaresInstanced() {
+		GL30.glBindVertexArray(vaoId);
+		for (int i = 0; i < 5; i++)
+			GL20.glEnableVertexAttribArray(i);
+		
+		GL20.glUseProgram(instancedPId);
+		
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
+		
+		GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, 6, GL11.GL_UNSIGNED_BYTE, 0, instanceCount);
+		
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+		
+		GL20.glUseProgram(0);
+		
+		for (int i = 0; i < 5; i++)
+			GL20.glDisableVertexAttribArray(i);
+		GL30.glBindVertexArray(0);
+	}
+
 	private void monitorFrameRate() {
         frameCount++;
         if (glfwGetTime() - lastTime >= 1.0d) {
@@ -246,7 +341,10 @@ public class DisplayManager {
 	}
  
     public static void main(String[] args) {
-        new DisplayManager().run();
+    	DisplayManager manager = new DisplayManager();
+    	if (args.length > 0)
+    		manager.instanceCount = Integer.parseInt(args[0]); // e.g. 10000
+        manager.run();
     }
     
 }
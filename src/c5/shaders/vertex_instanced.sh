@@ -0,0 +1,16 @@
+#version 330
+
+in vec4 in_Position;
+in vec4 in_Color;
+
+// these advance once per instance, not once per vertex
+in vec2 in_Offset;
+in vec2 in_Scale;
+in vec4 in_Tint;
+
+out vec4 pass_Color;
+
+void main() {
+	gl_Position = vec4(in_Position.xy * in_Scale + in_Offset, in_Position.zw);
+	pass_Color = in_Color * in_Tint;
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package c6.batch;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL15;
+
+import c6.buffers.StreamBuffer;
+import c6.memory.FrameArena;
+import c6.state.GLState;
+import c6.vertex.VertexLayout;
+import c6.vertex.VertexType;
+
+// per instance data for glDrawElementsInstanced: where the copy goes, how big it is,
+// how it is tinted and which layer of the texture array it samples
+// the locations continue after the mesh's in_Position, in_Color and in_TextureCoord
+// every bind goes through the renderer's GLState, so it stays in sync with it
+// every upload goes to the next free range of a StreamBuffer and the attributes are pointed at it,
+// call fence() after the draw call that reads it
+// given a frame arena the instances are staged in it instead of a buffer of their own,
+// the staging only lasts until the arena is reset, so clear() has to start every frame
+public class InstanceBuffer {
+	public static final VertexLayout LAYOUT = new VertexLayout.Builder(3)
+			.add("in_Offset", 2, VertexType.FLOAT)
+			.add("in_Scale", 2, VertexType.FLOAT)
+			.add("in_Tint", 4, VertexType.UNSIGNED_BYTE_NORMALIZED)
+			.add("in_Layer", 1, VertexType.FLOAT)
+			.build();
+
+	private final int maxInstances;
+	private ByteBuffer instances;
+	private final FrameArena arena;
+	private final GLState state;
+	private final StreamBuffer stream;
+	private int vaoId;
+	private long offset;
+	private int count;
+
+	public InstanceBuffer(int maxInstances, GLState state) {
+		this(maxInstances, state, null);
+	}
+
+	public InstanceBuffer(int maxInstances, GLState state, FrameArena arena) {
+		this.maxInstances = maxInstances;
+		this.arena = arena;
+		if (arena == null)
+			this.instances = LAYOUT.createBuffer(maxInstances);
+		this.state = state;
+		this.stream = new StreamBuffer(GL15.GL_ARRAY_BUFFER, LAYOUT.getSizeInBytes(maxInstances), state);
+	}
+
+	// adds the instance attributes to a VAO that already holds the mesh
+	public void attach(int vaoId) {
+		this.vaoId = vaoId;
+		state.bindVertexArray(vaoId);
+		state.bindBuffer(GL15.GL_ARRAY_BUFFER, stream.getBufferId());
+		LAYOUT.applyPerInstance(offset);
+	}
+
+	public void clear() {
+		// always the full size, so the arena hands out the same view every frame
+		if (arena != null)
+			instances = arena.allocate(LAYOUT.getSizeInBytes(maxInstances));
+		instances.clear();
+		count = 0;
+	}
+
+	public void add(float x, float y, float scaleX, float scaleY,
+			float r, float g, float b, float a, int layer) {
+		if (count == maxInstances)
+			throw new IllegalStateException("The instance buffer is full!");
+
+		instances.putFloat(x).putFloat(y).putFloat(scaleX).putFloat(scaleY);
+		instances.put(toUnsignedByte(r)).put(toUnsignedByte(g)).put(toUnsignedByte(b)).put(toUnsignedByte(a));
+		instances.putFloat(layer);
+		count++;
+	}
+
+	private static byte toUnsignedByte(float value) {
+		return (byte) (int) (Math.min(Math.max(value, 0.0f), 1.0f) * 255.0f + 0.5f);
+	}
+
+	// one copy of all the instances into the stream buffer
+	// instances added later are appended, call clear() to start over
+	public void upload() {
+		int end = instances.position();
+		instances.flip();
+		stream.map(instances.remaining(), LAYOUT.getStride()).put(instances);
+		offset = stream.unmap();
+		instances.limit(instances.capacity());
+		instances.position(end);
+
+		if (vaoId != 0) {
+			state.bindVertexArray(vaoId);
+			state.bindBuffer(GL15.GL_ARRAY_BUFFER, stream.getBufferId());
+			LAYOUT.applyPointers(offset);
+		}
+	}
+
+	// the draw call that reads the last upload is issued
+	public void fence() {
+		stream.fence();
+	}
+
+	public long getFenceWaitNanos() {
+		return stream.getWaitNanos();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getMaxInstances() {
+		return maxInstances;
+	}
+
+	public void cleanUp() {
+		stream.cleanUp();
+	}
+
+}
@@ -0,0 +1,241 @@
+package c6.batch;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+import c6.buffers.StreamBuffer;
+import c6.state.GLState;
+import c6.vertex.VertexLayout;
+import c6.vertex.VertexType;
+
+// collects textured quads and draws them with a single glDrawElements call,
+// it only flushes when the texture changes or the buffer is full
+// the vertices are streamed through a StreamBuffer, every flush writes to the next free range
+// and draws it with a base vertex, so the index buffer stays the same
+// the vertex layout matches the c6 shaders (in_Position, in_Color, in_TextureCoord),
+// bind the attribute locations with SpriteBatch.LAYOUT.bindAttribLocations()
+//
+// given the renderer's GLState, every bind goes through it and nothing is unbound after end(),
+// without one the batch unbinds everything and leaves the state as it found it
+public class SpriteBatch {
+	// 8 bytes of position, 4 bytes of color and 4 bytes of texture coordinates
+	// the texture coordinates are normalized shorts, so they have to stay between 0 and 1
+	public static final VertexLayout LAYOUT = new VertexLayout.Builder()
+			.add("in_Position", 2, VertexType.FLOAT)
+			.add("in_Color", 4, VertexType.UNSIGNED_BYTE_NORMALIZED)
+			.add("in_TextureCoord", 2, VertexType.UNSIGNED_SHORT_NORMALIZED)
+			.build();
+	private static final int VERTICES_PER_QUAD = 4, INDICES_PER_QUAD = 6;
+
+	// with 16 bit indices we can address 65536 vertices, that is 16384 quads
+	private static final int MAX_SHORT_INDEXED_QUADS = 65536 / VERTICES_PER_QUAD;
+
+	private final int maxQuads;
+	private final int indexType;
+	private final ByteBuffer vertices;
+	private final GLState state;
+	private final boolean sharedState;
+
+	private final StreamBuffer stream;
+	private int vaoId, vboIndexId;
+	private int textureId;
+	private int quadCount;
+	private boolean drawing;
+
+	private int drawCalls, quadsDrawn;
+
+	public SpriteBatch(int maxQuads) {
+		this(maxQuads, null);
+	}
+
+	public SpriteBatch(int maxQuads, GLState state) {
+		if (maxQuads <= 0)
+			throw new IllegalArgumentException("The batch has to hold at least one quad!");
+
+		this.maxQuads = maxQuads;
+		this.indexType = maxQuads <= MAX_SHORT_INDEXED_QUADS ? GL11.GL_UNSIGNED_SHORT : GL11.GL_UNSIGNED_INT;
+		this.vertices = LAYOUT.createBuffer(maxQuads * VERTICES_PER_QUAD);
+		this.sharedState = state != null;
+		this.state = sharedState ? state : new GLState();
+
+		vaoId = GL30.glGenVertexArrays();
+		this.state.bindVertexArray(vaoId);
+
+		// the storage is only reserved here, the data is streamed in at every flush
+		// a section holds a full batch, the vertex stride divides it
+		stream = new StreamBuffer(GL15.GL_ARRAY_BUFFER, vertices.capacity(), this.state);
+		// the enabled arrays are part of the VAO state, so there is no need
+		// to enable and disable them around every draw call
+		LAYOUT.apply();
+
+		// the index pattern never changes, so it is uploaded once
+		// binding it while the VAO is bound stores it in the VAO as well
+		vboIndexId = GL15.glGenBuffers();
+		this.state.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
+		if (indexType == GL11.GL_UNSIGNED_SHORT)
+			GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, createShortIndices(maxQuads), GL15.GL_STATIC_DRAW);
+		else
+			GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, createIntIndices(maxQuads), GL15.GL_STATIC_DRAW);
+
+		if (!sharedState) {
+			this.state.bindVertexArray(0);
+			this.state.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		}
+	}
+
+	// the same winding as the c6 square: top left, bottom left, bottom right, top right
+	private static ShortBuffer createShortIndices(int quads) {
+		ShortBuffer indices = BufferUtils.createShortBuffer(quads * INDICES_PER_QUAD);
+		for (int i = 0; i < quads; i++) {
+			int base = i * VERTICES_PER_QUAD;
+			indices.put((short) base).put((short) (base + 1)).put((short) (base + 2));
+			indices.put((short) base).put((short) (base + 2)).put((short) (base + 3));
+		}
+		indices.flip();
+		return indices;
+	}
+
+	private static IntBuffer createIntIndices(int quads) {
+		IntBuffer indices = BufferUtils.createIntBuffer(quads * INDICES_PER_QUAD);
+		for (int i = 0; i < quads; i++) {
+			int base = i * VERTICES_PER_QUAD;
+			indices.put(base).put(base + 1).put(base + 2);
+			indices.put(base).put(base + 2).put(base + 3);
+		}
+		indices.flip();
+		return indices;
+	}
+
+	public void begin(int programId) {
+		if (drawing)
+			throw new IllegalStateException("SpriteBatch.end() has to be called before begin()!");
+
+		textureId = 0;
+		drawing = true;
+
+		// a private state can't know what happened since the last end()
+		if (!sharedState)
+			state.invalidate();
+
+		state.bindVertexArray(vaoId);
+		state.useProgram(programId);
+		state.activeTexture(GL13.GL_TEXTURE0);
+	}
+
+	public void draw(int texId, float x, float y, float width, float height) {
+		draw(texId, x, y, width, height, 1.0f, 1.0f, 1.0f, 1.0f, 0.0f, 0.0f, 1.0f, 1.0f);
+	}
+
+	// x and y is the top left corner in normalized device coordinates
+	public void draw(int texId, float x, float y, float width, float height,
+			float r, float g, float b, float a,
+			float u0, float v0, float u1, float v1) {
+		if (!drawing)
+			throw new IllegalStateException("SpriteBatch.begin() has to be called before draw()!");
+
+		if (texId != textureId) {
+			flush();
+			state.bindTexture(GL11.GL_TEXTURE_2D, texId);
+			textureId = texId;
+		} else if (quadCount == maxQuads) {
+			flush();
+		}
+
+		// the color and the texture coordinates are packed once per quad, not per vertex
+		byte red = toUnsignedByte(r), green = toUnsignedByte(g), blue = toUnsignedByte(b), alpha = toUnsignedByte(a);
+		short left = toUnsignedShort(u0), top = toUnsignedShort(v0), right = toUnsignedShort(u1), bottom = toUnsignedShort(v1);
+
+		float y1 = y - height, x1 = x + width;
+		putVertex(x, y, red, green, blue, alpha, left, top);			// 0 - top left
+		putVertex(x, y1, red, green, blue, alpha, left, bottom);		// 1 - bottom left
+		putVertex(x1, y1, red, green, blue, alpha, right, bottom);	// 2 - bottom right
+		putVertex(x1, y, red, green, blue, alpha, right, top);		// 3 - top right
+		quadCount++;
+	}
+
+	private void putVertex(float x, float y, byte r, byte g, byte b, byte a, short u, short v) {
+		vertices.putFloat(x).putFloat(y).put(r).put(g).put(b).put(a).putShort(u).putShort(v);
+	}
+
+	private static byte toUnsignedByte(float value) {
+		return (byte) (int) (Math.min(Math.max(value, 0.0f), 1.0f) * 255.0f + 0.5f);
+	}
+
+	private static short toUnsignedShort(float value) {
+		return (short) (int) (Math.min(Math.max(value, 0.0f), 1.0f) * 65535.0f + 0.5f);
+	}
+
+	public void flush() {
+		if (quadCount == 0)
+			return;
+
+		vertices.flip();
+
+		// map() only waits if the GPU still reads the section, which was last drawn from three fences ago
+		stream.map(vertices.remaining(), LAYOUT.getStride()).put(vertices);
+		long offset = stream.unmap();
+
+		GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES, quadCount * INDICES_PER_QUAD, indexType, 0,
+				(int) (offset / LAYOUT.getStride()));
+
+		drawCalls++;
+		quadsDrawn += quadCount;
+
+		vertices.clear();
+		quadCount = 0;
+	}
+
+	public void end() {
+		if (!drawing)
+			throw new IllegalStateException("SpriteBatch.begin() has to be called before end()!");
+
+		flush();
+		stream.fence();
+		drawing = false;
+
+		if (!sharedState) {
+			state.bindTexture(GL11.GL_TEXTURE_2D, 0);
+			state.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+			state.useProgram(0);
+			state.bindVertexArray(0);
+		}
+	}
+
+	// the counters add up until they are reset, usually once every frame
+	public void resetStats() {
+		drawCalls = 0;
+		quadsDrawn = 0;
+	}
+
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	public int getQuadsDrawn() {
+		return quadsDrawn;
+	}
+
+	public int getMaxQuads() {
+		return maxQuads;
+	}
+
+	// how long flushes waited for the GPU to finish with the vertex buffer, in total
+	public long getFenceWaitNanos() {
+		return stream.getWaitNanos();
+	}
+
+	public void cleanUp() {
+		state.deleteVertexArray(vaoId);
+		stream.cleanUp();
+		state.deleteBuffer(vboIndexId);
+	}
+
+}
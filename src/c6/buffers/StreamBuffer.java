@@ -0,0 +1,215 @@
+package c6.buffers;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.ARBBufferStorage;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+
+import c6.state.GLState;
+
+// a buffer for data that changes every frame, split into three sections: while the GPU still
+// reads the last two, the CPU writes into the third, a fence after the draws that read a section
+// tells when it can be written again, so nothing is orphaned and nothing is copied twice
+//
+// ByteBuffer target = stream.map(bytes, stride);
+// target.put(vertices);             // from its position up to its limit
+// long offset = stream.unmap();     // where the data is in the buffer, for the draw call
+// ... draw
+// stream.fence();                   // once all the draws that read this frame's data are issued
+//
+// with GL 4.4 or ARB_buffer_storage the whole buffer is mapped once, persistently and coherently,
+// and stays mapped, without it every map() is a glMapBufferRange of just that range,
+// unsynchronized, because the fences already make sure the GPU is done with it
+// a section that fills up before fence() is fenced early and the next one is taken,
+// its size has to be a multiple of every alignment that is asked for
+public class StreamBuffer {
+	public static final int SECTIONS = 3;
+
+	private final int target;
+	private final int sectionSize;
+	private final GLState state;
+	private final int bufferId;
+	private final boolean persistent;
+
+	private final ByteBuffer mapping; // the persistent mapping of the whole buffer
+	private final ByteBuffer window; // a view of it, moved over every range handed out
+	private ByteBuffer mappedRange; // the last glMapBufferRange
+
+	private final long[] fences = new long[SECTIONS];
+	private int section = SECTIONS - 1;
+	private int head, mappedOffset = -1;
+	private boolean writing;
+
+	private long waitNanos;
+	private int waits, sectionsWritten;
+
+	public StreamBuffer(int target, int sectionSize, GLState state) {
+		this.target = target;
+		this.sectionSize = sectionSize;
+		this.state = state;
+
+		ContextCapabilities caps = GL.getCapabilities();
+		persistent = caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+
+		bufferId = GL15.glGenBuffers();
+		state.bindBuffer(target, bufferId);
+
+		long size = (long) sectionSize * SECTIONS;
+		if (persistent) {
+			int flags = GL30.GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+			if (caps.OpenGL44)
+				GL44.glBufferStorage(target, size, flags);
+			else
+				ARBBufferStorage.glBufferStorage(target, size, flags);
+
+			mapping = GL30.glMapBufferRange(target, 0, size, flags);
+			if (mapping == null)
+				throw new IllegalStateException("Could not map the stream buffer persistently!");
+			window = mapping.duplicate();
+		} else {
+			GL15.glBufferData(target, size, GL15.GL_STREAM_DRAW);
+			mapping = null;
+			window = null;
+		}
+	}
+
+	// a range of that many bytes to write to, starting at a multiple of the alignment,
+	// e.g. the vertex stride, so the offset can be turned into a base vertex
+	// write from the buffer's position up to its limit, then call unmap()
+	public ByteBuffer map(int bytes, int alignment) {
+		if (bytes > sectionSize)
+			throw new IllegalArgumentException("Can't map " + bytes + " bytes, a section has " + sectionSize + "!");
+		if (mappedOffset >= 0)
+			throw new IllegalStateException("The last range has to be unmapped first!");
+
+		int start = writing ? roundUp(head, alignment) : -1;
+		if (start < 0 || start + bytes > (section + 1) * sectionSize) {
+			fence();
+			nextSection();
+			start = section * sectionSize;
+			if (start % alignment != 0)
+				throw new IllegalArgumentException("The section size has to be a multiple of the alignment " + alignment + "!");
+		}
+
+		mappedOffset = start;
+		head = start + bytes;
+
+		if (persistent) {
+			window.limit(window.capacity());
+			window.position(start);
+			window.limit(start + bytes);
+			return window;
+		}
+
+		state.bindBuffer(target, bufferId);
+		mappedRange = GL30.glMapBufferRange(target, start, bytes,
+				GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_INVALIDATE_RANGE_BIT | GL30.GL_MAP_UNSYNCHRONIZED_BIT, mappedRange);
+		if (mappedRange == null)
+			throw new IllegalStateException("Could not map " + bytes + " bytes of the stream buffer!");
+		return mappedRange;
+	}
+
+	private static int roundUp(int value, int alignment) {
+		return (value + alignment - 1) / alignment * alignment;
+	}
+
+	// returns the offset of the range in the buffer
+	public long unmap() {
+		if (mappedOffset < 0)
+			throw new IllegalStateException("Nothing is mapped!");
+
+		if (!persistent) {
+			state.bindBuffer(target, bufferId);
+			GL15.glUnmapBuffer(target);
+		}
+
+		long offset = mappedOffset;
+		mappedOffset = -1;
+		return offset;
+	}
+
+	// the draws that read what was written since the last fence are issued,
+	// the next map() starts in the next section
+	public void fence() {
+		if (!writing)
+			return;
+
+		fences[section] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		writing = false;
+	}
+
+	// waits until the GPU is done with the section, the first wait flushes the commands,
+	// otherwise the fence might never be sent to the GPU at all
+	private void nextSection() {
+		section = (section + 1) % SECTIONS;
+		head = section * sectionSize;
+		writing = true;
+		sectionsWritten++;
+
+		long fence = fences[section];
+		if (fence == 0)
+			return;
+
+		int result = GL32.glClientWaitSync(fence, 0, 0);
+		if (result == GL32.GL_TIMEOUT_EXPIRED) {
+			long start = System.nanoTime();
+			do {
+				result = GL32.glClientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, 1000000L);
+			} while (result == GL32.GL_TIMEOUT_EXPIRED);
+			waitNanos += System.nanoTime() - start;
+			waits++;
+		}
+
+		GL32.glDeleteSync(fence);
+		fences[section] = 0;
+
+		if (result == GL32.GL_WAIT_FAILED)
+			throw new IllegalStateException("Waiting for the stream buffer's fence failed!");
+	}
+
+	public int getBufferId() {
+		return bufferId;
+	}
+
+	public int getSectionSize() {
+		return sectionSize;
+	}
+
+	public boolean isPersistent() {
+		return persistent;
+	}
+
+	// how long the CPU waited for the GPU to finish with a section, in total
+	public long getWaitNanos() {
+		return waitNanos;
+	}
+
+	// how many times map() had to wait at all
+	public int getWaits() {
+		return waits;
+	}
+
+	public int getSectionsWritten() {
+		return sectionsWritten;
+	}
+
+	public void cleanUp() {
+		for (int i = 0; i < SECTIONS; i++) {
+			if (fences[i] != 0) {
+				GL32.glDeleteSync(fences[i]);
+				fences[i] = 0;
+			}
+		}
+		if (persistent) {
+			state.bindBuffer(target, bufferId);
+			GL15.glUnmapBuffer(target);
+		}
+		state.deleteBuffer(bufferId);
+	}
+
+}
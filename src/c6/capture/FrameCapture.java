@@ -0,0 +1,272 @@
+package c6.capture;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+// records the frames of a framebuffer without ever waiting for them on the render thread
+//
+// capture() only queues a glReadPixels into the next of a ring of pixel pack buffers, so the copy
+// happens on the GPU, the buffer is mapped when the ring comes around to it again, ringSize - 1
+// frames later, by then the copy is long done and the map doesn't stall
+// the pixels go into a free frame of a small pool and on to the encoder thread, which writes them
+// as a PNG sequence into a directory, or into one raw file of RGBA frames, top row first:
+// ffmpeg -f rawvideo -pix_fmt rgba -s WIDTHxHEIGHT -r 60 -i capture.rgba capture.mp4
+// when the encoder falls behind and no frame is free, the frame is dropped instead of waited for
+public class FrameCapture implements Runnable {
+	public enum Format { PNG, RAW }
+
+	private final int width, height, frameSize;
+	private final Format format;
+	private final Path output;
+
+	private final int[] pboIds;
+	private final long[] fences;
+	private final int[] numbers; // of the frame in each buffer, in capture order
+	private int next;
+
+	private final BlockingQueue<Frame> free;
+	private final BlockingQueue<Frame> encoding;
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	private int captured, dropped, stalls;
+	private volatile int written;
+	private volatile IOException error;
+
+	private static class Frame {
+		final byte[] pixels;
+		int number;
+
+		Frame(int size) {
+			this.pixels = new byte[size];
+		}
+	}
+
+	// a directory for PNG, a file for RAW, at most poolSize frames wait for the encoder
+	public FrameCapture(int width, int height, int ringSize, int poolSize, Format format, String output) throws IOException {
+		this.width = width;
+		this.height = height;
+		this.frameSize = 4 * width * height;
+		this.format = format;
+		this.output = Paths.get(output);
+
+		if (format == Format.PNG)
+			Files.createDirectories(this.output);
+		else if (this.output.getParent() != null)
+			Files.createDirectories(this.output.getParent());
+
+		pboIds = new int[ringSize];
+		fences = new long[ringSize];
+		numbers = new int[ringSize];
+		for (int i = 0; i < ringSize; i++) {
+			pboIds[i] = GL15.glGenBuffers();
+			GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pboIds[i]);
+			GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, frameSize, GL15.GL_STREAM_READ);
+		}
+		GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+
+		free = new ArrayBlockingQueue<Frame>(poolSize);
+		encoding = new ArrayBlockingQueue<Frame>(poolSize);
+		for (int i = 0; i < poolSize; i++)
+			free.add(new Frame(frameSize));
+
+		thread = new Thread(this, "frame-encoder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// call it after the frame is drawn into the framebuffer, before the window's one is bound again
+	public void capture(Framebuffer source) {
+		if (source.getWidth() != width || source.getHeight() != height)
+			throw new IllegalArgumentException("The framebuffer is " + source.getWidth() + "x" + source.getHeight()
+					+ ", the capture is " + width + "x" + height);
+
+		// the oldest readback is in the buffer that is about to be reused
+		if (fences[next] != 0)
+			retrieve(next);
+
+		GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, source.getId());
+		GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pboIds[next]);
+		GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+
+		// with a pixel pack buffer bound the last argument is an offset into it,
+		// so this returns right away and the GPU does the copy when it gets to it
+		GL11.glReadPixels(0, 0, width, height, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, 0L);
+		GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+		GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, 0);
+
+		fences[next] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		numbers[next] = captured;
+		next = (next + 1) % pboIds.length;
+		captured++;
+	}
+
+	private void retrieve(int slot) {
+		// only if the GPU is more than a whole ring behind
+		int result = GL32.glClientWaitSync(fences[slot], 0, 0);
+		if (result == GL32.GL_TIMEOUT_EXPIRED) {
+			stalls++;
+			do {
+				result = GL32.glClientWaitSync(fences[slot], GL32.GL_SYNC_FLUSH_COMMANDS_BIT, 1000000L);
+			} while (result == GL32.GL_TIMEOUT_EXPIRED);
+		}
+		GL32.glDeleteSync(fences[slot]);
+		fences[slot] = 0;
+
+		// a dropped frame leaves a gap in the numbers
+		Frame frame = free.poll();
+		if (frame == null) {
+			dropped++;
+			return;
+		}
+
+		GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pboIds[slot]);
+		ByteBuffer pixels = GL30.glMapBufferRange(GL21.GL_PIXEL_PACK_BUFFER, 0, frameSize, GL30.GL_MAP_READ_BIT, null);
+		if (pixels != null) {
+			pixels.get(frame.pixels);
+			GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+		}
+		GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+
+		if (pixels == null) {
+			free.add(frame);
+			dropped++;
+			return;
+		}
+
+		frame.number = numbers[slot];
+		encoding.add(frame);
+	}
+
+	@Override
+	public void run() {
+		OutputStream raw = null;
+		try {
+			if (format == Format.RAW)
+				raw = new BufferedOutputStream(Files.newOutputStream(output), frameSize);
+
+			BufferedImage image = format == Format.PNG
+					? new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR) : null;
+
+			while (running || !encoding.isEmpty()) {
+				Frame frame = encoding.poll(100, TimeUnit.MILLISECONDS);
+				if (frame == null)
+					continue;
+
+				if (format == Format.PNG)
+					writePng(frame, image);
+				else
+					writeRaw(frame, raw);
+
+				free.add(frame);
+				written++;
+			}
+		} catch (IOException e) {
+			error = e;
+		} catch (InterruptedException e) {
+			// stopped
+		} finally {
+			if (raw != null) {
+				try {
+					raw.close();
+				} catch (IOException e) {
+					if (error == null)
+						error = e;
+				}
+			}
+		}
+	}
+
+	// OpenGL's rows start at the bottom, the image's at the top, and the image wants ABGR
+	private void writePng(Frame frame, BufferedImage image) throws IOException {
+		byte[] target = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		byte[] source = frame.pixels;
+		int rowSize = 4 * width;
+
+		for (int y = 0; y < height; y++) {
+			int from = (height - 1 - y) * rowSize;
+			int to = y * rowSize;
+			for (int x = 0; x < rowSize; x += 4) {
+				target[to + x] = source[from + x + 3];
+				target[to + x + 1] = source[from + x + 2];
+				target[to + x + 2] = source[from + x + 1];
+				target[to + x + 3] = source[from + x];
+			}
+		}
+
+		Path file = output.resolve(String.format(Locale.ROOT, "frame_%06d.png", frame.number));
+		if (!ImageIO.write(image, "png", file.toFile()))
+			throw new IOException("No PNG writer for " + file);
+	}
+
+	private void writeRaw(Frame frame, OutputStream raw) throws IOException {
+		int rowSize = 4 * width;
+		for (int y = height - 1; y >= 0; y--)
+			raw.write(frame.pixels, y * rowSize, rowSize);
+	}
+
+	// reads back what is still in flight, waits until the encoder wrote everything and deletes the buffers
+	public void finish() {
+		for (int i = 0; i < pboIds.length; i++) {
+			int slot = (next + i) % pboIds.length;
+			if (fences[slot] != 0)
+				retrieve(slot);
+		}
+
+		running = false;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (int pboId : pboIds)
+			GL15.glDeleteBuffers(pboId);
+
+		if (error != null)
+			error.printStackTrace();
+		System.out.println(getStats());
+	}
+
+	public int getCaptured() {
+		return captured;
+	}
+
+	public int getDropped() {
+		return dropped;
+	}
+
+	public int getWritten() {
+		return written;
+	}
+
+	// how often the render thread had to wait for a readback
+	public int getStalls() {
+		return stalls;
+	}
+
+	public String getStats() {
+		return String.format(Locale.ROOT, "capture: %dx%d %s to %s, %d captured, %d written, %d dropped, %d stalls",
+				width, height, format, output, captured, written, dropped, stalls);
+	}
+
+}
@@ -0,0 +1,87 @@
+package c6.capture;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL30;
+
+import c6.state.GLState;
+
+// an offscreen color target of any size, the frame is drawn into it instead of the window
+// and copied to the window with one scaled blit, so the window size doesn't limit the resolution
+//
+// framebuffer.bind();
+// ... draw the frame
+// framebuffer.blitToScreen(SCREEN_WIDTH, SCREEN_HEIGHT); // the window's framebuffer is bound again
+public class Framebuffer {
+	private final int width, height;
+	private final GLState state;
+	private final int fboId, texId;
+
+	public Framebuffer(int width, int height, GLState state) {
+		this.width = width;
+		this.height = height;
+		this.state = state;
+
+		// the color buffer is a texture, so it can be sampled as well as read back
+		texId = GL11.glGenTextures();
+		state.bindTexture(GL11.GL_TEXTURE_2D, texId);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, width, height, 0,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+
+		fboId = GL30.glGenFramebuffers();
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, fboId);
+		GL30.glFramebufferTexture2D(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL11.GL_TEXTURE_2D, texId, 0);
+
+		int status = GL30.glCheckFramebufferStatus(GL30.GL_FRAMEBUFFER);
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+		if (status != GL30.GL_FRAMEBUFFER_COMPLETE) {
+			GL30.glDeleteFramebuffers(fboId);
+			state.deleteTexture(texId);
+			throw new IllegalStateException(String.format("The %dx%d framebuffer is incomplete: 0x%x", width, height, status));
+		}
+	}
+
+	// everything drawn from now on goes into the framebuffer
+	public void bind() {
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, fboId);
+		GL11.glViewport(0, 0, width, height);
+	}
+
+	// scales the frame to the window, which is drawn into again afterwards
+	public void blitToScreen(int screenWidth, int screenHeight) {
+		GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, fboId);
+		GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, 0);
+		GL30.glBlitFramebuffer(0, 0, width, height, 0, 0, screenWidth, screenHeight,
+				GL11.GL_COLOR_BUFFER_BIT, GL11.GL_LINEAR);
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+		GL11.glViewport(0, 0, screenWidth, screenHeight);
+	}
+
+	public int getId() {
+		return fboId;
+	}
+
+	public int getTextureId() {
+		return texId;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public void cleanUp() {
+		GL30.glDeleteFramebuffers(fboId);
+		state.deleteTexture(texId);
+	}
+
+}
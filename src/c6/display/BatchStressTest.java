@@ -0,0 +1,237 @@
+package c6.display;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.glfw.GLFWvidmode;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+import c6.batch.SpriteBatch;
+import c6.shaders.ProgramCache;
+
+// pushes a lot of small textured quads through the SpriteBatch every frame
+// usage: BatchStressTest [quad count] [naive]
+// in naive mode every quad is drawn with its own bind / draw / unbind sequence,
+// just like renderSquare() does, so the two numbers can be compared
+// the naive quads sit in a static buffer uploaded once, so only the cost per draw call is measured,
+// not the streaming the batch needs for data that changes
+public class BatchStressTest {
+	private final int SCREEN_WIDTH = 300, SCREEN_HEIGHT = 300;
+	private final float QUAD_SIZE = 0.02f;
+
+	private long window;
+
+	private final int quadCount;
+	private final boolean naive;
+
+	private int frameCount = 0;
+	private long drawCallCount = 0;
+	private double lastTime;
+
+	private float[] quadX, quadY, quadColor;
+
+	private SpriteBatch batch;
+	private int pId, texId;
+	private int vaoId, vboVertexId, vboIndexId; // the naive mode's quads
+
+	public BatchStressTest(int quadCount, boolean naive) {
+		this.quadCount = quadCount;
+		this.naive = naive;
+	}
+
+	public void run() {
+		try {
+			init();
+			loop();
+			cleanUp();
+			glfwDestroyWindow(window);
+		} finally {
+			glfwTerminate();
+		}
+	}
+
+	private void init() {
+		if ( glfwInit() != GL11.GL_TRUE )
+			throw new IllegalStateException("Unable to initialize GLFW!");
+
+		glfwWindowHint(GLFW_RESIZABLE, GL_FALSE);
+
+		window = glfwCreateWindow(SCREEN_WIDTH, SCREEN_HEIGHT, "Chapter 6 - Batch stress test", NULL, NULL);
+		if ( window == NULL )
+			throw new RuntimeException("Failed to create the GLFW window!");
+
+		ByteBuffer vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
+		glfwSetWindowPos(window,
+			(GLFWvidmode.width(vidmode) - SCREEN_WIDTH) / 2,
+			(GLFWvidmode.height(vidmode) - SCREEN_HEIGHT) / 2 );
+
+		glfwMakeContextCurrent(window);
+		GL.createCapabilities();
+
+		glfwSwapInterval(0);
+
+		glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+
+		defineQuads();
+
+		if (naive)
+			defineStaticQuads();
+		else
+			batch = new SpriteBatch(Math.min(quadCount, 65536));
+
+		texId = DisplayManager.loadTexture("res/textures/c6/Bunny2D.PNG", GL13.GL_TEXTURE0);
+
+		initShaders();
+
+		lastTime = glfwGetTime();
+	}
+
+	// the same fixed seed is used, so both modes draw the exact same scene
+	private void defineQuads() {
+		Random random = new Random(6);
+
+		quadX = new float[quadCount];
+		quadY = new float[quadCount];
+		quadColor = new float[quadCount * 4];
+
+		for (int i = 0; i < quadCount; i++) {
+			quadX[i] = random.nextFloat() * 2.0f - 1.0f;
+			quadY[i] = random.nextFloat() * 2.0f - 1.0f + QUAD_SIZE;
+			quadColor[i * 4] = random.nextFloat();
+			quadColor[i * 4 + 1] = random.nextFloat();
+			quadColor[i * 4 + 2] = random.nextFloat();
+			quadColor[i * 4 + 3] = 1.0f;
+		}
+	}
+
+	// every quad in one buffer, in the batch's layout, drawn one at a time with a base vertex
+	private void defineStaticQuads() {
+		ByteBuffer vertices = SpriteBatch.LAYOUT.createBuffer(quadCount * 4);
+		float[] corners = { 0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.0f }; // top left, bottom left, bottom right, top right
+		for (int i = 0; i < quadCount; i++) {
+			for (int c = 0; c < 8; c += 2) {
+				int start = vertices.position();
+				SpriteBatch.LAYOUT.getAttribute(0).put(vertices,
+						quadX[i] + corners[c] * QUAD_SIZE, quadY[i] - corners[c + 1] * QUAD_SIZE, 0.0f, 0.0f);
+				SpriteBatch.LAYOUT.getAttribute(1).put(vertices, quadColor, i);
+				SpriteBatch.LAYOUT.getAttribute(2).put(vertices, corners[c], corners[c + 1], 0.0f, 0.0f);
+				vertices.position(start + SpriteBatch.LAYOUT.getStride());
+			}
+		}
+		vertices.flip();
+
+		ByteBuffer indices = BufferUtils.createByteBuffer(DisplayManager.SQUARE_INDICES.length);
+		indices.put(DisplayManager.SQUARE_INDICES);
+		indices.flip();
+
+		vaoId = GL30.glGenVertexArrays();
+		GL30.glBindVertexArray(vaoId);
+		vboVertexId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboVertexId);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, vertices, GL15.GL_STATIC_DRAW);
+		SpriteBatch.LAYOUT.apply();
+		vboIndexId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
+		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
+		GL30.glBindVertexArray(0);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+	}
+
+	private void initShaders() {
+		pId = new ProgramCache("cache/shaders").load("src/c6/shaders/vertex.sh", "src/c6/shaders/fragment.sh",
+				SpriteBatch.LAYOUT);
+	}
+
+	private void loop() {
+		while ( glfwWindowShouldClose(window) == GL_FALSE ) {
+			glClear(GL_COLOR_BUFFER_BIT);
+
+			if (naive)
+				renderQuadsOneByOne();
+			else
+				renderQuadsBatched();
+
+			glfwSwapBuffers(window);
+
+			glfwPollEvents();
+
+			monitorFrameRate();
+		}
+	}
+
+	private void renderQuadsBatched() {
+		batch.resetStats();
+		batch.begin(pId);
+		for (int i = 0; i < quadCount; i++) {
+			batch.draw(texId, quadX[i], quadY[i], QUAD_SIZE, QUAD_SIZE,
+					quadColor[i * 4], quadColor[i * 4 + 1], quadColor[i * 4 + 2], quadColor[i * 4 + 3],
+					0.0f, 0.0f, 1.0f, 1.0f);
+		}
+		batch.end();
+		drawCallCount += batch.getDrawCalls();
+	}
+
+	private void renderQuadsOneByOne() {
+		for (int i = 0; i < quadCount; i++) {
+			GL30.glBindVertexArray(vaoId);
+			GL13.glActiveTexture(GL13.GL_TEXTURE0);
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId);
+			GL20.glUseProgram(pId);
+
+			GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES, 6, GL11.GL_UNSIGNED_BYTE, 0, i * 4);
+
+			GL20.glUseProgram(0);
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+			GL30.glBindVertexArray(0);
+		}
+		drawCallCount += quadCount;
+	}
+
+	// prints frames per second, average frame time and draw calls per frame
+	private void monitorFrameRate() {
+		frameCount++;
+		double elapsed = glfwGetTime() - lastTime;
+		if (elapsed >= 1.0d) {
+			System.out.println(String.format("%s: %d quads, %d fps, %.3f ms/frame, %d draw calls/frame",
+					naive ? "naive" : "batched", quadCount, frameCount,
+					elapsed * 1000.0d / frameCount, drawCallCount / frameCount));
+			lastTime = glfwGetTime();
+			frameCount = 0;
+			drawCallCount = 0;
+		}
+	}
+
+	private void cleanUp() {
+		if (batch != null) {
+			batch.cleanUp();
+		} else {
+			GL30.glDeleteVertexArrays(vaoId);
+			GL15.glDeleteBuffers(vboVertexId);
+			GL15.glDeleteBuffers(vboIndexId);
+		}
+
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+		glDeleteTextures(texId);
+
+		GL20.glUseProgram(0);
+		GL20.glDeleteProgram(pId);
+	}
+
+	public static void main(String[] args) {
+		int quadCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		boolean naive = args.length > 1 && args[1].equals("naive");
+		new BatchStressTest(quadCount, naive).run();
+	}
+
+}
@@ -4,36 +4,184 @@ import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.system.MemoryUtil.*;
 
-import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
 
-import org.lwjgl.BufferUtils;
+import org.lwjgl.glfw.GLFWCursorPosCallback;
+import org.lwjgl.glfw.GLFWKeyCallback;
+import org.lwjgl.glfw.GLFWMouseButtonCallback;
+import org.lwjgl.glfw.GLFWScrollCallback;
+import org.lwjgl.glfw.GLFWWindowRefreshCallback;
 import org.lwjgl.glfw.GLFWvidmode;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL15;
-import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
 
 import de.matthiasmann.twl.utils.PNGDecoder;
 import de.matthiasmann.twl.utils.PNGDecoder.Format;
 
+import c6.batch.InstanceBuffer;
+import c6.capture.FrameCapture;
+import c6.capture.Framebuffer;
+import c6.memory.FrameArena;
+import c6.memory.StackArena;
+import c6.profiling.FrameProfiler;
+import c6.profiling.GpuTimer;
+import c6.profiling.ProfileReporter;
+import c6.redraw.DamageTracker;
+import c6.redraw.WakeTimer;
+import c6.reload.HotReloader;
+import c6.reload.ReloadableProgram;
+import c6.reload.ReloadableTexture;
+import c6.reload.ReloadableTextureArray;
+import c6.scene.Frustum;
+import c6.scene.SceneIndex;
+import c6.shaders.ProgramCache;
+import c6.simulation.FixedStepSimulation;
+import c6.state.GLState;
+import c6.text.BitmapFont;
+import c6.text.StatsOverlay;
+import c6.text.TextBatch;
+import c6.textures.AsyncTextureLoader;
+import c6.textures.TextureArrayLoader;
+import c6.textures.TextureHandle;
+import c6.textures.TextureManager;
+import c6.timing.FramePacer;
+import c6.transform.Matrices;
+import c6.transform.TransformBuffer;
+import c6.transform.Transforms;
+import c6.vertex.VertexLayout;
+import c6.vertex.VertexType;
+
 public class DisplayManager {
 	private final int SCREEN_WIDTH = 300, SCREEN_HEIGHT = 300;
 	
     private long window;
     
-    private int frameCount = 0;	
-    private double lastTime = glfwGetTime();
+    // the phases of a frame, the profiler adds the whole frame as the last one
+    // on demand the loop waits for input between frames, outside of any frame, so the waits aren't in here
+    private static final int TEXTURES = 0, SIMULATE = 1, CLEAR = 2, RENDER = 3, PACE = 4, SWAP = 5, EVENTS = 6;
+    
+    private FrameProfiler profiler;
+    private ProfileReporter profileReporter;
+    
+    // vsync while the frames keep up with the display, see FramePacer for the other modes
+    FramePacer pacer = new FramePacer(FramePacer.Mode.ADAPTIVE, 0.0d);
+
+	static final VertexLayout SQUARE_LAYOUT = new VertexLayout.Builder()
+			.add("in_Position", 3, VertexType.FLOAT)
+			.add("in_Color", 4, VertexType.UNSIGNED_BYTE_NORMALIZED)
+			.add("in_TextureCoord", 2, VertexType.UNSIGNED_SHORT_NORMALIZED)
+			.build();
+	
+	static final byte[] SQUARE_INDICES = {
+			0, 1, 2,	// Left bottom triangle
+			0, 2, 3 };	// Right top triangle
+
+	// the benchmarks swap it for other formats before defineSquare() and initShaders()
+	VertexLayout squareLayout = SQUARE_LAYOUT;
+
+	// every bind of the render methods goes through here, so the ones that change nothing are skipped
+	private final GLState glState = new GLState();
+	
+	// the one-off uploads of the GL thread stage their data here instead of in direct buffers
+	// of their own, anything bigger than the arena still gets one
+	private static final StackArena STAGING = new StackArena(4 * 1024 * 1024);
+	
+	// transient data of a frame goes here, it is all freed at the start of the next one,
+	// the instances and their matrices are staged in it on their way to the stream buffers
+	private FrameArena frameArena = new FrameArena(1024 * 1024);
+
+	private int vaoId, vboVertexId, vboIndexId;
+	private ReloadableProgram program;
 
-	private int vaoId, vboPosId, vboColId, vboTexId, vboIndexId;
-	private int vsId, fsId, pId, texId;
+	private ProgramCache programCache;
+
+	private AsyncTextureLoader textureLoader;
+	private TextureManager textureManager;
+	private TextureHandle texture;
+
+	// with more than 0 instances the square is drawn that many times with a single call
+	int instanceCount;
+	private InstanceBuffer instanceBuffer;
+	private ReloadableProgram instancedProgram;
+	private ReloadableTextureArray textureArray;
+	
+	// the layers of the instanced squares' texture array, every one has to be the same size
+	private static final String[] TEXTURE_LAYERS = { "res/textures/c6/Bunny2D.PNG" };
+	
+	// the instanced squares can move, stepped 60 times a second either on the render thread
+	// or on a thread of their own, the frames draw between the last two steps
+	enum SimulationMode { NONE, SERIAL, THREADED }
+	
+	SimulationMode simulationMode = SimulationMode.NONE;
+	long simulationCostNanos; // how long a step takes on top of moving the squares
+	private FixedStepSimulation<MovingSquares.State> simulation;
+	private int instanceColumns;
+	private float instanceScale;
+	private float[] instanceX, instanceY;
+	
+	// with transforms every instance spins around its own axis, seen through a perspective camera
+	// that moves in and out, all the matrices are composed on the CPU every frame and uploaded at once
+	boolean transformed;
+	private Transforms transforms;
+	private TransformBuffer transformBuffer;
+	private final float[] projection = new float[16], view = new float[16];
+	private final float[] viewProjection = Matrices.identity(new float[16]);
+	private float cameraDistance;
+	private long transformStart;
+	
+	// whenever the instances are rebuilt, only the ones the camera can see are put back in
+	private SceneIndex scene;
+	private final Frustum frustum = new Frustum();
+	private int[] proxies, visible;
+	private int visibleCount;
+	
+	// the frame stats are drawn in the corner of the window instead of printed
+	private BitmapFont font;
+	private TextBatch textBatch;
+	private StatsOverlay statsOverlay;
+	private int drawCalls;
+	
+	// the shaders and textures are loaded again when their files change, without a restart
+	private HotReloader reloader;
+	
+	// with a capture output every frame is drawn offscreen at the capture resolution, shown scaled
+	// in the window, read back a few frames later and written to disk on a thread of its own
+	String captureOutput; // a directory for a PNG sequence, a file for raw RGBA video
+	int captureWidth = SCREEN_WIDTH, captureHeight = SCREEN_HEIGHT;
+	int captureFrames; // with more than 0 the window stays hidden and closes after that many frames
+	private Framebuffer framebuffer;
+	private FrameCapture capture;
+	
+	// on demand a frame is only drawn when something changed: input, a reload, the stats text or anything
+	// that moves, in between the loop sleeps in glfwWaitEvents(), and only the damaged part is cleared and drawn
+	// continuously every frame is drawn in full, the stats show the CPU and GPU time of both
+	boolean onDemand;
+	private DamageTracker damage;
+	private Framebuffer redrawBuffer; // the frame on demand, it keeps what isn't redrawn
+	private WakeTimer wakeTimer;
+	private final int[] overlayBounds = new int[4];
+	private GpuTimer gpuTimer;
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private long repaints;
+	
+	// GLFW doesn't keep the callbacks alive, they are released in cleanUp()
+	private GLFWKeyCallback keyCallback;
+	private GLFWCursorPosCallback cursorPosCallback;
+	private GLFWMouseButtonCallback mouseButtonCallback;
+	private GLFWScrollCallback scrollCallback;
+	private GLFWWindowRefreshCallback refreshCallback;
 
     public void run() {
         try {
@@ -51,6 +199,8 @@ public class DisplayManager {
             throw new IllegalStateException("Unable to initialize GLFW!");
         
         glfwWindowHint(GLFW_RESIZABLE, GL_FALSE);
+        if (captureFrames > 0)
+        	glfwWindowHint(GLFW_VISIBLE, GL_FALSE); // headless, e.g. on a software renderer
  
         window = glfwCreateWindow(SCREEN_WIDTH, SCREEN_HEIGHT, "Chapter 6 - Textures", NULL, NULL);
         if ( window == NULL )
@@ -64,10 +214,17 @@ public class DisplayManager {
         glfwMakeContextCurrent(window);
         GL.createCapabilities();
         
-        glfwSwapInterval(0);
+        pacer.probe();
+        pacer.start();
         
         glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
         
+        // percentiles of every phase are published once a second and printed
+        // by a background thread, so the render loop never waits for the console
+        profiler = new FrameProfiler(1000000000L, 64, "textures", "simulate", "clear", "render", "pace", "swap", "events");
+        profileReporter = ProfileReporter.toConsole(profiler);
+        profileReporter.start();
+        
         defineSquare();
         
         // if you just renamed a random picture file
@@ -75,222 +232,580 @@ public class DisplayManager {
         loadTextures();
         
         initShaders();
+        
+        if (instanceCount > 0) {
+        	defineInstances(instanceCount);
+        	if (transformed)
+        		defineTransforms(instanceCount);
+        	loadTextureArray();
+        	initInstancedShaders();
+        	
+        	if (simulationMode != SimulationMode.NONE)
+        		initSimulation();
+        }
+        
+        initStatsOverlay();
+        
+        initHotReload();
+        
+        if (captureOutput != null)
+        	initCapture();
+        
+        initRedraw();
     }
 	
 	private void loop() {
         while ( glfwWindowShouldClose(window) == GL_FALSE ) {
-            glClear(GL_COLOR_BUFFER_BIT);
+            if (onDemand && !damage.isDirty() && !isAnimating()) {
+            	idle();
+            	continue;
+            }
             
-            renderSquare();
+            profiler.beginFrame();
+            pacer.beginFrame();
+            statsOverlay.beginFrame();
+            frameArena.reset();
+            
+            glState.beginFrame();
+            drawCalls = 0;
+            
+            updateTextures();
+            profiler.mark(TEXTURES);
+            
+            // on its own thread the simulation costs the frame nothing
+            if (simulation != null && !simulation.isThreaded())
+            	simulation.advance(System.nanoTime());
+            profiler.mark(SIMULATE);
+            
+            if (transforms != null || simulation != null)
+            	updateInstances();
+            
+            if (!onDemand || isAnimating())
+            	damage.markAll();
+            if (statsOverlay.pollDamage(overlayBounds))
+            	damage.mark(overlayBounds[0], overlayBounds[1], overlayBounds[2], overlayBounds[3]);
+            
+            renderFrame();
             
-            glfwSwapBuffers(window);
- 
             glfwPollEvents();
+            profiler.mark(EVENTS);
             
-            monitorFrameRate();
+            if (captureFrames > 0 && capture.getCaptured() >= captureFrames)
+            	glfwSetWindowShouldClose(window, GL_TRUE);
         }
     }
 	
-	private void cleanUp() {
-		GL30.glBindVertexArray(vaoId);
-    	GL20.glDisableVertexAttribArray(0);
-    	GL20.glDisableVertexAttribArray(1);
-    	GL20.glDisableVertexAttribArray(2);
-    	GL30.glBindVertexArray(0);
-    	GL30.glDeleteVertexArrays(vaoId);
-    	
-    	GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
-    	GL15.glDeleteBuffers(vboPosId);
-    	GL15.glDeleteBuffers(vboColId);
-    	GL15.glDeleteBuffers(vboTexId);
-    	 
-    	GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
-		GL15.glDeleteBuffers(vboIndexId);
+	private void updateTextures() {
+		int evictions = textureManager.getEvictions();
+		textureManager.update(); // finishes the uploads of textures decoded in the background
+		// the loader binds and deletes textures directly, so the state cache can't trust its texture bindings
+		if (textureLoader.getUploadedBytesLastFrame() > 0 || textureManager.getEvictions() != evictions) {
+			glState.invalidateTextures();
+			damage.markAll();
+		}
+		// the objects rebuilt in the background, swapped in once the GPU is done with them
+		if (reloader.update() > 0) {
+			glState.invalidateTextures();
+			damage.markAll();
+		}
+	}
+	
+	// on demand with nothing to draw: only what could change that is checked, without starting a frame,
+	// then it sleeps until there is input, a reload or new stats to show
+	// the profiler, the pacer and the overlay don't count the time asleep as a frame
+	private void idle() {
+		updateTextures();
+		updateStats();
+		statsOverlay.idle();
+		if (statsOverlay.pollDamage(overlayBounds))
+			damage.mark(overlayBounds[0], overlayBounds[1], overlayBounds[2], overlayBounds[3]);
+		if (damage.isDirty() || isAnimating())
+			return;
+		
+		profiler.pause();
+		pacer.pause();
+		wakeTimer.wakeAt(statsOverlay.getNextRefresh());
+		glfwWaitEvents();
+	}
+	
+	// only the damage is cleared and drawn, unless it is the whole window
+	private void renderFrame() {
+		if (framebuffer != null)
+			framebuffer.bind();
+		else if (redrawBuffer != null)
+			redrawBuffer.bind();
+		gpuTimer.begin();
+		damage.beginRepaint();
+		glClear(GL_COLOR_BUFFER_BIT);
+		profiler.mark(CLEAR);
+		
+		if (instanceCount > 0)
+			renderSquaresInstanced();
+		else
+			renderSquare();
+		// the stats are drawn over the scaled frame, they are not captured
+		if (framebuffer != null) {
+			capture.capture(framebuffer);
+			framebuffer.blitToScreen(SCREEN_WIDTH, SCREEN_HEIGHT);
+		}
+		renderStats();
+		damage.endRepaint();
+		// the whole frame, so nothing depends on what the swap left in the back buffer
+		if (redrawBuffer != null)
+			redrawBuffer.blitToScreen(SCREEN_WIDTH, SCREEN_HEIGHT);
+		gpuTimer.end();
+		repaints++;
+		profiler.mark(RENDER);
+		
+		pacer.sync(); // sleeps until the frame is due, if there is a target frame rate
+		profiler.mark(PACE);
+		
+		glfwSwapBuffers(window);
+		profiler.mark(SWAP);
+	}
+	
+	// anything that changes the picture by itself, or has to be polled, is drawn every frame even on demand
+	private boolean isAnimating() {
+		return simulation != null || transforms != null || capture != null
+				|| (!texture.isResident() && !texture.hasFailed()) || reloader.isPending();
+	}
+	
+	void cleanUp() {
+		if (profileReporter != null)
+			profileReporter.stop();
+		if (wakeTimer != null) {
+			wakeTimer.stop();
+			System.out.println(String.format(Locale.ROOT, "redraw: %s, %d repaints, %d partial, %.1f windows of pixels, %d timer wake ups, gpu %.1f ms",
+					onDemand ? "on demand" : "continuous", repaints, damage.getPartialRepaints(),
+					(double) damage.getRepaintedPixels() / (SCREEN_WIDTH * SCREEN_HEIGHT), wakeTimer.getWakeUps(),
+					gpuTimer.getTotalNanos() / 1e6d));
+			gpuTimer.cleanUp();
+			if (redrawBuffer != null)
+				redrawBuffer.cleanUp();
+			keyCallback.release();
+			cursorPosCallback.release();
+			mouseButtonCallback.release();
+			scrollCallback.release();
+			refreshCallback.release();
+		}
+		if (reloader != null)
+			reloader.cleanUp();
+		if (capture != null) {
+			capture.finish(); // writes out the frames still in flight
+			framebuffer.cleanUp();
+		}
+		if (simulation != null)
+			simulation.stop();
+		if (statsOverlay != null) {
+			textBatch.cleanUp();
+			font.cleanUp();
+		}
+		
+		// deleting an object also unbinds it, the state cache keeps track of that
+		glState.bindVertexArray(0);
+		glState.deleteVertexArray(vaoId);
+    	glState.deleteBuffer(vboVertexId);
+		glState.deleteBuffer(vboIndexId);
+		
+        textureManager.release(texture);
+        textureManager.cleanUp(); // delete every texture
+        glState.invalidateTextures();
 		
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0); // unbind the texture
-        GL13.glActiveTexture(0); // deactivate the texture unit
-        glDeleteTextures(texId); // delete the texture
+		glState.deleteProgram(program.getId()); // the shaders were already deleted after linking
 		
-		GL20.glUseProgram(0);
-		GL20.glDetachShader(pId, vsId);
-		GL20.glDetachShader(pId, fsId);
-		GL20.glDeleteShader(vsId);
-		GL20.glDeleteShader(fsId);
-		GL20.glDeleteProgram(pId);
+		if (instanceBuffer != null) {
+			instanceBuffer.cleanUp();
+			if (transformBuffer != null)
+				transformBuffer.cleanUp();
+			glState.deleteTexture(textureArray.getId());
+			glState.deleteProgram(instancedProgram.getId());
+		}
 	}
  
-    private void defineSquare() {
+    void defineSquare() {
+    	// all three attributes go into one interleaved buffer,
+    	// with the default layout 20 bytes per vertex instead of 40 in three separate ones
+    	STAGING.push(); // both buffers are free again once they are uploaded
+    	ByteBuffer vertexBuffer = putSquare(squareLayout, STAGING.allocate(squareLayout.getSizeInBytes(4)));
+    	
+    	ByteBuffer indicesBuffer = STAGING.allocate(SQUARE_INDICES.length);
+    	indicesBuffer.put(SQUARE_INDICES);
+    	indicesBuffer.flip();
+    	
+    	vaoId = GL30.glGenVertexArrays();
+    	GL30.glBindVertexArray(vaoId);
+    	 
+    	vboVertexId = GL15.glGenBuffers();
+    	GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboVertexId);
+    	GL15.glBufferData(GL15.GL_ARRAY_BUFFER, vertexBuffer, GL15.GL_STATIC_DRAW);
+    	squareLayout.apply(); // sets up and enables every attribute pointer
+    	GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    	
+    	GL30.glBindVertexArray(0);
+    	
+    	vboIndexId = GL15.glGenBuffers();
+    	GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
+    	GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL15.GL_STATIC_DRAW);
+    	GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+    	STAGING.pop();
+    }
+    
+    // the square's 4 vertices in the given layout, flipped and ready to upload
+    static ByteBuffer putSquare(VertexLayout layout, ByteBuffer vertexBuffer) {
+    	// positions only need 3 floats, OpenGL fills in w = 1
+    	// a layout with a 4 component position gets the w = 1 written out
     	float[] positions = {
-	        -0.5f, 0.5f, 0.0f, 1.0f,	// 0 - top left
-	        -0.5f, -0.5f, 0.0f, 1.0f,	// 1 - bottom left
-	        0.5f, -0.5f, 0.0f, 1.0f,	// 2 - bottom right
-	        0.5f, 0.5f, 0.0f, 1.0f };	// 3 - top right
-        	
-    	FloatBuffer positionBuffer = BufferUtils.createFloatBuffer(positions.length);
-    	positionBuffer.put(positions);
-    	positionBuffer.flip();
+	        -0.5f, 0.5f, 0.0f,	// 0 - top left
+	        -0.5f, -0.5f, 0.0f,	// 1 - bottom left
+	        0.5f, -0.5f, 0.0f,	// 2 - bottom right
+	        0.5f, 0.5f, 0.0f };	// 3 - top right
     	
+    	// stored as normalized unsigned bytes, 4 bytes instead of 16
     	float[] colors = {
     		0.0f, 1.0f, 0.0f, 1.0f,		// 0 - green - top right
     		0.0f, 0.0f, 1.0f, 1.0f,		// 1 - blue - top right
     		1.0f, 1.0f, 1.0f, 1.0f,		// 2 - white - top right
     		1.0f, 0.0f, 0.0f, 1.0f };	// 3 - red - top right
     	
-    	FloatBuffer colorBuffer = BufferUtils.createFloatBuffer(colors.length);
-    	colorBuffer.put(colors);
-    	colorBuffer.flip();
-    	
     	// if you put values between 0 and 1, it will clip
     	// the image according to those numbers
+    	// stored as normalized unsigned shorts, so they have to stay in that range
     	float[] texCoords = {
     		0.0f, 0.0f,	// 0 - top left
     		0.0f, 1.0f, 	// 1 - bottom left
     		1.0f, 1.0f, 	// 2 - bottom right
     		1.0f, 0.0f };	// 3 - top right
     	
-    	FloatBuffer texCoordBuffer = BufferUtils.createFloatBuffer(texCoords.length);
-    	texCoordBuffer.put(texCoords);
-    	texCoordBuffer.flip();
-    	
-    	byte[] indices = {
-	        0, 1, 2,	// Left bottom triangle
-	        0, 2, 3 };	// Right top triangle
-    	
-    	ByteBuffer indicesBuffer = BufferUtils.createByteBuffer(indices.length);
-    	indicesBuffer.put(indices);
-    	indicesBuffer.flip();
-    	
-    	vaoId = GL30.glGenVertexArrays();
-    	GL30.glBindVertexArray(vaoId);
-    	 
-    	vboPosId = GL15.glGenBuffers();
-    	GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboPosId);
-    	GL15.glBufferData(GL15.GL_ARRAY_BUFFER, positionBuffer, GL15.GL_STATIC_DRAW);
-    	GL20.glVertexAttribPointer(0, 4, GL11.GL_FLOAT, false, 0, 0);
-    	GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
-    	
-    	vboColId = GL15.glGenBuffers();
-    	GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboColId);
-    	GL15.glBufferData(GL15.GL_ARRAY_BUFFER, colorBuffer, GL15.GL_STATIC_DRAW);
-    	GL20.glVertexAttribPointer(1, 4, GL11.GL_FLOAT, false, 0, 0);
-    	GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
-    	
-    	vboTexId = GL15.glGenBuffers();
-    	GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboTexId);
-    	GL15.glBufferData(GL15.GL_ARRAY_BUFFER, texCoordBuffer, GL15.GL_STATIC_DRAW);
-    	GL20.glVertexAttribPointer(2, 2, GL11.GL_FLOAT, false, 0, 0);
-    	GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
-    	
-    	GL30.glBindVertexArray(0);
-    	
-    	vboIndexId = GL15.glGenBuffers();
-    	GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
-    	GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL15.GL_STATIC_DRAW);
-    	GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+    	for (int i = 0; i < 4; i++) {
+    		layout.getAttribute(0).put(vertexBuffer, positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], 1.0f);
+    		layout.getAttribute(1).put(vertexBuffer, colors, i);
+    		layout.getAttribute(2).put(vertexBuffer, texCoords, i);
+    	}
+    	vertexBuffer.flip();
+    	return vertexBuffer;
     }
     
-    private void loadTextures() {
-    	// GL_TEXTURE0 is going to be our diffuse texture
-		texId = loadTexture("res/textures/c6/Bunny2D.PNG", GL13.GL_TEXTURE0);
+    void loadTextures() {
+    	// the textures are decoded on 2 worker threads, at most 64 MB of them at once,
+    	// and at most 16 MB is uploaded in a frame, until then a placeholder is drawn
+    	// the manager loads every image only once and keeps at most 256 MB of unused textures
+    	textureLoader = new AsyncTextureLoader(2, 64 * 1024 * 1024, 16 * 1024 * 1024);
+    	textureManager = new TextureManager(textureLoader, 256L * 1024 * 1024);
+		texture = textureManager.acquire("res/textures/c6/Bunny2D.PNG");
 	}
     
-    private void initShaders() {
-		vsId = loadShader("src/c6/shaders/vertex.sh", GL20.GL_VERTEX_SHADER);
-		fsId = loadShader("src/c6/shaders/fragment.sh", GL20.GL_FRAGMENT_SHADER);
+    void initShaders() {
+		// the linked program is stored in the cache directory, the next launch
+		// loads it from there instead of compiling the sources again
+		// in_Position, in_Color and in_TextureCoord are bound in the order of the layout
+		programCache = new ProgramCache("cache/shaders");
+		program = loadProgram("src/c6/shaders/vertex.sh", "src/c6/shaders/fragment.sh", squareLayout);
+	}
+	
+	private ReloadableProgram loadProgram(String vertexFile, String fragmentFile, VertexLayout... layouts) {
+		return new ReloadableProgram(programCache.load(vertexFile, fragmentFile, layouts),
+				programCache, vertexFile, fragmentFile, layouts);
+	}
+
+	// lays the copies out in a grid that fills the window, every copy gets its own tint
+	// and cycles through the layers of the texture array
+	void defineInstances(int count) {
+		instanceColumns = (int) Math.ceil(Math.sqrt(count));
+		float cell = 2.0f / instanceColumns;
+		instanceScale = cell * 0.9f;
+		instanceX = new float[count];
+		instanceY = new float[count];
+		
+		// a square turning around the vertical axis stays inside a cube as wide as the square
+		scene = new SceneIndex(cell * 0.25f, count);
+		proxies = new int[count];
+		visible = new int[count];
+		float half = instanceScale / 2.0f;
+		
+		// room for every instance and its matrix, with the alignment of both allocations
+		int frameBytes = InstanceBuffer.LAYOUT.getSizeInBytes(count) + TransformBuffer.LAYOUT.getSizeInBytes(count)
+				+ 2 * FrameArena.ALIGNMENT;
+		if (frameBytes > frameArena.getCapacity())
+			frameArena = new FrameArena(frameBytes);
+		
+		instanceBuffer = new InstanceBuffer(count, glState, frameArena);
+		instanceBuffer.clear();
+		for (int i = 0; i < count; i++) {
+			instanceX[i] = -1.0f + cell * (i % instanceColumns + 0.5f);
+			instanceY[i] = 1.0f - cell * (i / instanceColumns + 0.5f);
+			proxies[i] = scene.insert(i, instanceX[i] - half, instanceY[i] - half, -half,
+					instanceX[i] + half, instanceY[i] + half, half);
+			visible[i] = i;
+			addInstance(i);
+		}
+		visibleCount = count;
+		instanceBuffer.upload();
+		instanceBuffer.attach(vaoId); // the VAO already holds the square itself
+	}
+	
+	private void addInstance(int i) {
+		int column = i % instanceColumns, row = i / instanceColumns;
+		instanceBuffer.add(instanceX[i], instanceY[i], instanceScale, instanceScale,
+				(float) column / instanceColumns, (float) row / instanceColumns, 1.0f, 1.0f, i % TEXTURE_LAYERS.length);
+	}
+	
+	void initSimulation() {
+		MovingSquares squares = new MovingSquares(instanceCount, simulationCostNanos);
+		simulation = new FixedStepSimulation<MovingSquares.State>(squares, 1000000000L / 60,
+				new MovingSquares.State(instanceCount), new MovingSquares.State(instanceCount),
+				new MovingSquares.State(instanceCount));
+		if (simulationMode == SimulationMode.THREADED)
+			simulation.start();
+	}
+	
+	// the camera starts just far enough back for the z = 0 plane to fill the window from -1 to 1,
+	// so the grid looks the same as without transforms until the squares start turning
+	void defineTransforms(int count) {
+		Matrices.perspective((float) Math.toRadians(60.0d), (float) SCREEN_WIDTH / SCREEN_HEIGHT, 0.1f, 10.0f, projection);
+		cameraDistance = 1.0f / (float) Math.tan(Math.toRadians(30.0d));
+		
+		transforms = new Transforms(count);
+		transformBuffer = new TransformBuffer(count, glState, frameArena);
+		transformBuffer.attach(vaoId); // next to the per instance tint and layer
+		transformStart = System.nanoTime();
+		frameArena.reset(); // the instances staged by defineInstances() are uploaded already
+		updateInstances();
+	}
+	
+	// moves the squares to where they are between the last two steps of the simulation,
+	// culls them and refills the instance buffers with the visible ones, both in the same order,
+	// so the tint and the transform of a square stay together
+	void updateInstances() {
+		long now = System.nanoTime();
+		
+		MovingSquares.State snapshot = simulation != null ? simulation.getSnapshot() : null;
+		if (snapshot != null) {
+			float alpha = snapshot.getAlpha(now);
+			float half = instanceScale / 2.0f;
+			for (int i = 0; i < instanceCount; i++) {
+				instanceX[i] = snapshot.getX(i, alpha);
+				instanceY[i] = snapshot.getY(i, alpha);
+				scene.move(proxies[i], instanceX[i] - half, instanceY[i] - half, -half,
+						instanceX[i] + half, instanceY[i] + half, half);
+			}
+		}
+		
+		if (transforms != null)
+			moveCamera(now);
+		visibleCount = scene.cull(frustum.set(viewProjection), visible);
 		
-		pId = GL20.glCreateProgram();
-		GL20.glAttachShader(pId, vsId);
-		GL20.glAttachShader(pId, fsId);
+		instanceBuffer.clear();
+		for (int v = 0; v < visibleCount; v++)
+			addInstance(visible[v]);
+		instanceBuffer.upload();
 		
-		GL20.glBindAttribLocation(pId, 0, "in_Position");
-		GL20.glBindAttribLocation(pId, 1, "in_Color");
-		// added the texture coordinates here
-		GL20.glBindAttribLocation(pId, 2, "in_TextureCoord");
+		// every instance turns around the vertical axis at one of a few speeds
+		if (transforms != null) {
+			double seconds = (now - transformStart) / 1e9d;
+			transforms.clear();
+			for (int v = 0; v < visibleCount; v++) {
+				int i = visible[v];
+				int t = transforms.add(instanceX[i], instanceY[i], 0.0f);
+				transforms.setScale(t, instanceScale, instanceScale, instanceScale);
+				transforms.setRotation(t, 0.0f, 1.0f, 0.0f, seconds * (1.0d + i % 4 * 0.5d));
+			}
+			transforms.compose(viewProjection);
+			transformBuffer.upload(transforms);
+		}
+	}
+	
+	// halfway in, the edges of the grid are out of view and culled
+	private void moveCamera(long now) {
+		double seconds = (now - transformStart) / 1e9d;
+		float distance = cameraDistance * (0.75f + 0.25f * (float) Math.cos(seconds * 0.5d));
+		Matrices.multiply(projection, Matrices.translation(0.0f, 0.0f, -distance, view), viewProjection);
+	}
+	
+	void loadTextureArray() {
+		try {
+			textureArray = new ReloadableTextureArray(TextureArrayLoader.load(TEXTURE_LAYERS), TEXTURE_LAYERS);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+	
+	void initInstancedShaders() {
+		// the per instance attributes are bound to the locations after the square's own
+		if (transformed)
+			instancedProgram = loadProgram("src/c6/shaders/vertex_transformed.sh", "src/c6/shaders/fragment_instanced.sh",
+					squareLayout, InstanceBuffer.LAYOUT, TransformBuffer.LAYOUT);
+		else
+			instancedProgram = loadProgram("src/c6/shaders/vertex_instanced.sh", "src/c6/shaders/fragment_instanced.sh",
+					squareLayout, InstanceBuffer.LAYOUT);
+	}
+
+	// a reload compiles and decodes on the reloader's thread, in a context shared with this window's,
+	// a shader that doesn't compile keeps the old program until it is fixed
+	void initHotReload() {
+		try {
+			reloader = new HotReloader(window, glState);
+			reloader.watch(program);
+			reloader.watch(new ReloadableTexture(textureManager, texture));
+			if (instanceCount > 0) {
+				reloader.watch(instancedProgram);
+				reloader.watch(textureArray);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		reloader.start();
+	}
+
+	// 3 pixel buffers, so a frame is read back 2 frames after it was drawn,
+	// and up to 8 frames wait for the encoder before frames are dropped
+	void initCapture() {
+		framebuffer = new Framebuffer(captureWidth, captureHeight, glState);
+		FrameCapture.Format format = Files.isDirectory(Paths.get(captureOutput)) || !captureOutput.contains(".")
+				? FrameCapture.Format.PNG : FrameCapture.Format.RAW;
+		try {
+			capture = new FrameCapture(captureWidth, captureHeight, 3, 8, format, captureOutput);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	// what a swap leaves in the window's back buffer is up to the driver, so on demand the frame is kept
+	// in a framebuffer of its own, only the damage is redrawn in there and the whole of it is copied
+	// to the window, the framebuffer's contents only change when they are drawn, so one frame of history does
+	// the scene doesn't say what the input is for, so any input redraws the whole window,
+	// and so does the window system when it lost the window's contents
+	void initRedraw() {
+		damage = new DamageTracker(SCREEN_WIDTH, SCREEN_HEIGHT, 1);
+		damage.markAll();
+		if (onDemand && framebuffer == null)
+			redrawBuffer = new Framebuffer(SCREEN_WIDTH, SCREEN_HEIGHT, glState);
+		gpuTimer = new GpuTimer(4);
+		wakeTimer = new WakeTimer();
+		wakeTimer.start();
 		
-		GL20.glLinkProgram(pId);
-		GL20.glValidateProgram(pId);
+		glfwSetKeyCallback(window, keyCallback = new GLFWKeyCallback() {
+			@Override
+			public void invoke(long window, int key, int scancode, int action, int mods) {
+				damage.markAll();
+			}
+		});
+		glfwSetCursorPosCallback(window, cursorPosCallback = new GLFWCursorPosCallback() {
+			@Override
+			public void invoke(long window, double xpos, double ypos) {
+				damage.markAll();
+			}
+		});
+		glfwSetMouseButtonCallback(window, mouseButtonCallback = new GLFWMouseButtonCallback() {
+			@Override
+			public void invoke(long window, int button, int action, int mods) {
+				damage.markAll();
+			}
+		});
+		glfwSetScrollCallback(window, scrollCallback = new GLFWScrollCallback() {
+			@Override
+			public void invoke(long window, double xoffset, double yoffset) {
+				damage.markAll();
+			}
+		});
+		glfwSetWindowRefreshCallback(window, refreshCallback = new GLFWWindowRefreshCallback() {
+			@Override
+			public void invoke(long window) {
+				damage.markAll();
+			}
+		});
+	}
+	
+	void initStatsOverlay() {
+		font = new BitmapFont(12);
+		textBatch = new TextBatch(font, 512, glState, SCREEN_WIDTH, SCREEN_HEIGHT);
+		statsOverlay = new StatsOverlay(textBatch);
+	}
+	
+	// the text uses the same shaders as the square, the sprite batch's attributes have the same names
+	void renderStats() {
+		updateStats();
+		statsOverlay.render(program.getId());
+	}
+	
+	private void updateStats() {
+		statsOverlay.setDrawCalls(drawCalls + statsOverlay.getDrawCalls());
+		statsOverlay.setGLCalls(glState.getIssuedLastFrame(), glState.getElidedLastFrame());
+		statsOverlay.setTextureMemory(textureManager.getResidentBytes(), textureManager.getBudgetBytes());
+		if (instanceCount > 0)
+			statsOverlay.setCulling(visibleCount, instanceCount - visibleCount);
+		if (instanceBuffer != null)
+			statsOverlay.setFenceWait(instanceBuffer.getFenceWaitNanos()
+					+ (transformBuffer != null ? transformBuffer.getFenceWaitNanos() : 0));
+		statsOverlay.setPacing(pacer.getMode().name(), pacer.getSwapInterval(),
+				pacer.getJitterSum(), pacer.getFrames(), pacer.getSpunNanos());
+		long cpuTime = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+		statsOverlay.setActivity(onDemand, repaints, damage.getRepaintedPixels(), SCREEN_WIDTH * SCREEN_HEIGHT,
+				cpuTime, gpuTimer.getTotalNanos());
+		statsOverlay.setStagingMemory(frameArena.getUsed(), frameArena.getFrameHighWaterMark(),
+				STAGING.getHighWaterMark(), frameArena.getOverflows() + STAGING.getOverflows());
 	}
 
-	private void renderSquare() {
-		GL30.glBindVertexArray(vaoId);
-		GL20.glEnableVertexAttribArray(0);
-		GL20.glEnableVertexAttribArray(1);
-		GL20.glEnableVertexAttribArray(2);
+	// the texture is loaded in the background, this blocks until it is on the GPU
+	void finishLoadingTextures() {
+		while (!texture.isResident() && !texture.hasFailed()) {
+			textureManager.update();
+			Thread.yield();
+		}
+	}
+
+	// nothing is unbound afterwards, when the square is drawn again
+	// every one of these calls is skipped by the state cache
+	void renderSquare() {
+		glState.bindVertexArray(vaoId);
+		glState.enableVertexAttribArray(0);
+		glState.enableVertexAttribArray(1);
+		glState.enableVertexAttribArray(2);
 		
 		// bind the approppriate texture unit,
 		// currently we are only using diffuse texture
-		GL13.glActiveTexture(GL13.GL_TEXTURE0);
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId); // bind the texture
+		glState.activeTexture(GL13.GL_TEXTURE0);
+		glState.bindTexture(GL11.GL_TEXTURE_2D, texture.getId()); // bind the texture
 		
-		GL20.glUseProgram(pId);
+		glState.useProgram(program.getId());
 		
-		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
+		glState.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
 		 
 		GL11.glDrawElements(GL11.GL_TRIANGLES, 6, GL11.GL_UNSIGNED_BYTE, 0);
-		 
-		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+		drawCalls++;
+	}
+
+	// every copy of the square in one draw call, the divisor on the per instance
+	// attributes makes them advance once per copy instead of once per vertex
+	void renderSquaresInstanced() {
+		glState.bindVertexArray(vaoId);
 		
-		GL20.glUseProgram(0);
+		glState.activeTexture(GL13.GL_TEXTURE0);
+		glState.bindTexture(GL30.GL_TEXTURE_2D_ARRAY, textureArray.getId());
 		
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0); // unbind the texture
-        GL13.glActiveTexture(0); // deactivate the texture unit
+		glState.useProgram(instancedProgram.getId());
 		
-		GL20.glDisableVertexAttribArray(0);
-		GL20.glDisableVertexAttribArray(1);
-		GL20.glDisableVertexAttribArray(2);
-		GL30.glBindVertexArray(0);
+		glState.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
+		
+		GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, 6, GL11.GL_UNSIGNED_BYTE, 0, instanceBuffer.getCount());
+		drawCalls++;
+		
+		// the next uploads go to other sections until the GPU is done with these
+		instanceBuffer.fence();
+		if (transformBuffer != null)
+			transformBuffer.fence();
 	}
 
-	private void monitorFrameRate() {
-        frameCount++;
-        if (glfwGetTime() - lastTime >= 1.0d) {
-        	System.out.println(frameCount); // TODO: render using bitmap font
-        	lastTime = glfwGetTime();
-        	frameCount = 0;
-        }
-    }
-	
-	@SuppressWarnings("unused")
-	private void monitorProcessingTime() {
-        frameCount++;
-        if (glfwGetTime() - lastTime >= 1.0d) {
-        	System.out.println(1000.0d / (double) frameCount); // TODO: render using bitmap font
-        	lastTime = glfwGetTime();
-        	frameCount = 0;
-        }
-    }
-	
-	public int loadShader(String filename, int type) {
-	    StringBuilder shaderSource = new StringBuilder();
-	    int shaderID = 0;
-	     
-	    try {
-	        BufferedReader reader = new BufferedReader(new FileReader(filename));
-	        String line;
-	        while ((line = reader.readLine()) != null) {
-	            shaderSource.append(line).append("\n");
-	        }
-	        reader.close();
-	    } catch (IOException e) {
-	        System.err.println("Could not read file.");
-	        e.printStackTrace();
-	        System.exit(-1);
-	    }
-	     
-	    shaderID = GL20.glCreateShader(type);
-	    GL20.glShaderSource(shaderID, shaderSource);
-	    GL20.glCompileShader(shaderID);
-	     
-	    return shaderID;
-	}
-	
 	// a general function for loading textures
 	// written by Mathias Verboven
-	private int loadTexture(String filename, int textureUnit) {
+	public static int loadTexture(String filename, int textureUnit) {
         ByteBuffer buf = null;
         int tWidth = 0;
         int tHeight = 0;
-         
+        
+        STAGING.push(); // the pixels are only needed until glTexImage2D returns
         try {
             InputStream in = new FileInputStream(filename);
             PNGDecoder decoder = new PNGDecoder(in);
@@ -300,8 +815,7 @@ public class DisplayManager {
             tHeight = decoder.getHeight();
              
             // Decode the PNG file in a ByteBuffer
-            buf = ByteBuffer.allocateDirect(
-                    4 * decoder.getWidth() * decoder.getHeight());
+            buf = STAGING.allocate(4 * decoder.getWidth() * decoder.getHeight());
             decoder.decode(buf, decoder.getWidth() * 4, Format.RGBA);
             buf.flip();
              
@@ -320,8 +834,10 @@ public class DisplayManager {
         GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
          
         // Upload the texture data and generate mip maps (for scaling)
-        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGB, tWidth, tHeight, 0, 
+        // the source is RGBA, GL_RGB would silently throw the alpha channel away
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, tWidth, tHeight, 0, 
                 GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buf);
+        STAGING.pop();
         GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
          
         // Setup the ST coordinate system
@@ -335,13 +851,38 @@ public class DisplayManager {
                 GL11.GL_LINEAR_MIPMAP_LINEAR);
         
         GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0); // unbind the texture
-        GL13.glActiveTexture(0); // deactivate the texture unit
+        GL13.glActiveTexture(GL13.GL_TEXTURE0); // back to the default texture unit
          
         return texId;
     }
  
     public static void main(String[] args) {
-        new DisplayManager().run();
+    	// AWT only draws the font's glyphs into an image, it mustn't start a window system of its own next to GLFW's
+    	System.setProperty("java.awt.headless", "true");
+    	
+    	DisplayManager manager = new DisplayManager();
+    	if (args.length > 0)
+    		manager.instanceCount = Integer.parseInt(args[0]); // e.g. 10000
+    	if (args.length > 1)
+    		manager.simulationMode = SimulationMode.valueOf(args[1].toUpperCase(Locale.ROOT)); // serial or threaded
+    	if (args.length > 2)
+    		manager.simulationCostNanos = Long.parseLong(args[2]) * 1000000L; // in milliseconds
+    	if (args.length > 3)
+    		manager.transformed = args[3].equals("transformed");
+    	if (args.length > 4)
+    		manager.captureOutput = args[4]; // e.g. capture/frames or capture/session.rgba
+    	if (args.length > 5) {
+    		String[] size = args[5].split("x"); // e.g. 1920x1080
+    		manager.captureWidth = Integer.parseInt(size[0]);
+    		manager.captureHeight = Integer.parseInt(size[1]);
+    	}
+    	if (args.length > 6)
+    		manager.captureFrames = Integer.parseInt(args[6]);
+    	if (args.length > 7)
+    		manager.pacer = FramePacer.parse(args[7]); // unlimited, vsync, adaptive or a frame rate
+    	if (args.length > 8)
+    		manager.onDemand = args[8].equals("ondemand"); // or continuous
+        manager.run();
     }
     
 }
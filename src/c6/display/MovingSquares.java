@@ -0,0 +1,88 @@
+package c6.display;
+
+import java.util.Random;
+
+import c6.simulation.Simulation;
+import c6.simulation.Snapshot;
+
+// the instanced squares drifting around and bouncing off the edges of the window
+// the extra cost makes every step burn that much time, to see what an expensive
+// update does to the frame time with and without the simulation thread
+public class MovingSquares implements Simulation<MovingSquares.State> {
+
+	public static class State extends Snapshot {
+		private final float[] previousX, previousY, x, y;
+
+		public State(int count) {
+			previousX = new float[count];
+			previousY = new float[count];
+			x = new float[count];
+			y = new float[count];
+		}
+
+		public float getX(int i, float alpha) {
+			return previousX[i] + (x[i] - previousX[i]) * alpha;
+		}
+
+		public float getY(int i, float alpha) {
+			return previousY[i] + (y[i] - previousY[i]) * alpha;
+		}
+	}
+
+	private final int count;
+	private final float[] previousX, previousY, x, y, velocityX, velocityY;
+	private final long extraCostNanos;
+
+	// starts every square at its place in the grid of DisplayManager.defineInstances()
+	public MovingSquares(int count, long extraCostNanos) {
+		this.count = count;
+		this.extraCostNanos = extraCostNanos;
+		previousX = new float[count];
+		previousY = new float[count];
+		x = new float[count];
+		y = new float[count];
+		velocityX = new float[count];
+		velocityY = new float[count];
+
+		int columns = (int) Math.ceil(Math.sqrt(count));
+		float cell = 2.0f / columns;
+		Random random = new Random(42);
+		for (int i = 0; i < count; i++) {
+			x[i] = previousX[i] = -1.0f + cell * (i % columns + 0.5f);
+			y[i] = previousY[i] = 1.0f - cell * (i / columns + 0.5f);
+			velocityX[i] = (random.nextFloat() - 0.5f) * 0.5f;
+			velocityY[i] = (random.nextFloat() - 0.5f) * 0.5f;
+		}
+	}
+
+	@Override
+	public void step(double seconds) {
+		float dt = (float) seconds;
+		for (int i = 0; i < count; i++) {
+			previousX[i] = x[i];
+			previousY[i] = y[i];
+			x[i] += velocityX[i] * dt;
+			y[i] += velocityY[i] * dt;
+
+			if (x[i] < -1.0f || x[i] > 1.0f)
+				velocityX[i] = -velocityX[i];
+			if (y[i] < -1.0f || y[i] > 1.0f)
+				velocityY[i] = -velocityY[i];
+		}
+
+		// stands in for physics, AI and the like
+		long end = System.nanoTime() + extraCostNanos;
+		while (System.nanoTime() < end) {
+			// busy, like a real update would be
+		}
+	}
+
+	@Override
+	public void snapshot(State target) {
+		System.arraycopy(previousX, 0, target.previousX, 0, count);
+		System.arraycopy(previousY, 0, target.previousY, 0, count);
+		System.arraycopy(x, 0, target.x, 0, count);
+		System.arraycopy(y, 0, target.y, 0, count);
+	}
+
+}
@@ -0,0 +1,284 @@
+package c6.display;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+import c6.profiling.FrameProfiler;
+import c6.shaders.ProgramCache;
+import c6.state.GLState;
+import c6.timing.FramePacer;
+
+// several windows in one process, every one drawn by a render thread of its own
+// usage: MultiWindowDisplay [pacing of every window...]
+// e.g. "vsync 30 unlimited" opens three windows, one synced to the display, one held at 30 fps
+// and one that draws as fast as it can, see FramePacer
+//
+// the windows' contexts share their objects with a hidden one that loads them,
+// so the buffers, the texture and the program exist once however many windows there are,
+// only vertex arrays are never shared between contexts, so every window sets up its own
+// GLFW itself stays on the main thread: it creates and destroys the windows, polls the events
+// and prints the frame times of every window and how many cores the render threads keep busy
+public class MultiWindowDisplay {
+	private final int SCREEN_WIDTH = 300, SCREEN_HEIGHT = 300;
+	private static final long REPORT_INTERVAL = 1000000000L;
+
+	// the phases of a window's frame, the profiler adds the whole frame as the last one
+	private static final int RENDER = 0, PACE = 1, SWAP = 2, FRAME = 3;
+
+	private final String[] pacing;
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private long sharedContext;
+	private int vboVertexId, vboIndexId, texId, pId;
+	private Window[] windows;
+
+	public MultiWindowDisplay(String... pacing) {
+		this.pacing = pacing;
+	}
+
+	// one window, its context is only ever current on its own thread
+	private class Window implements Runnable {
+		final int index;
+		final FramePacer pacer;
+		final FrameProfiler profiler;
+		final long[] record;
+		final Thread thread;
+		long handle;
+
+		// what the last report saw, for the differences over the interval
+		long lastCpuTime;
+		boolean reported;
+
+		Window(int index, FramePacer pacer) {
+			this.index = index;
+			this.pacer = pacer;
+			pacer.probe(); // the monitor can only be asked on the main thread
+			this.profiler = new FrameProfiler(REPORT_INTERVAL, 16, "render", "pace", "swap");
+			this.record = new long[profiler.getRing().getRecordSize()];
+
+			glfwWindowHint(GLFW_RESIZABLE, GL_FALSE);
+			handle = glfwCreateWindow(SCREEN_WIDTH, SCREEN_HEIGHT, "Chapter 6 - Window " + (index + 1), NULL, sharedContext);
+			if ( handle == NULL )
+				throw new RuntimeException("Failed to create the GLFW window!");
+			glfwSetWindowPos(handle, 100 + index * (SCREEN_WIDTH + 20), 100);
+
+			thread = new Thread(this, "render-window-" + (index + 1));
+		}
+
+		@Override
+		public void run() {
+			glfwMakeContextCurrent(handle);
+			GL.createCapabilities();
+
+			// the swap interval belongs to the current context, so every window is paced on its own
+			pacer.start();
+
+			float shade = 0.1f * (index % 4);
+			glClearColor(shade, shade, shade, 1.0f);
+
+			// the cache is per context, like the bindings it tracks
+			GLState state = new GLState();
+
+			int vaoId = GL30.glGenVertexArrays();
+			state.bindVertexArray(vaoId);
+			state.bindBuffer(GL15.GL_ARRAY_BUFFER, vboVertexId);
+			DisplayManager.SQUARE_LAYOUT.apply();
+			state.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
+
+			while ( glfwWindowShouldClose(handle) == GL_FALSE ) {
+				profiler.beginFrame();
+				pacer.beginFrame();
+				state.beginFrame();
+
+				glClear(GL_COLOR_BUFFER_BIT);
+
+				state.bindVertexArray(vaoId);
+				state.activeTexture(GL13.GL_TEXTURE0);
+				state.bindTexture(GL11.GL_TEXTURE_2D, texId);
+				state.useProgram(pId);
+				GL11.glDrawElements(GL11.GL_TRIANGLES, 6, GL11.GL_UNSIGNED_BYTE, 0);
+				profiler.mark(RENDER);
+
+				pacer.sync();
+				profiler.mark(PACE);
+
+				glfwSwapBuffers(handle);
+				profiler.mark(SWAP);
+			}
+
+			state.bindVertexArray(0);
+			state.deleteVertexArray(vaoId);
+			glfwMakeContextCurrent(NULL);
+		}
+	}
+
+	public void run() {
+		try {
+			init();
+			loop();
+			cleanUp();
+		} finally {
+			glfwTerminate();
+		}
+	}
+
+	private void init() {
+		if ( glfwInit() != GL11.GL_TRUE )
+			throw new IllegalStateException("Unable to initialize GLFW!");
+
+		// the hidden context owns the shared objects, so any window can be closed first
+		glfwWindowHint(GLFW_VISIBLE, GL_FALSE);
+		sharedContext = glfwCreateWindow(1, 1, "Chapter 6 - Shared", NULL, NULL);
+		if ( sharedContext == NULL )
+			throw new RuntimeException("Failed to create the shared context!");
+		glfwDefaultWindowHints();
+
+		glfwMakeContextCurrent(sharedContext);
+		GL.createCapabilities();
+
+		defineSquare();
+		texId = DisplayManager.loadTexture("res/textures/c6/Bunny2D.PNG", GL13.GL_TEXTURE0);
+		pId = new ProgramCache("cache/shaders").load("src/c6/shaders/vertex.sh", "src/c6/shaders/fragment.sh",
+				DisplayManager.SQUARE_LAYOUT);
+
+		// the other contexts may only use the objects once they are complete
+		glFinish();
+		glfwMakeContextCurrent(NULL);
+
+		windows = new Window[pacing.length];
+		for (int i = 0; i < windows.length; i++)
+			windows[i] = new Window(i, FramePacer.parse(pacing[i]));
+		for (Window window : windows) {
+			window.lastCpuTime = getCpuTime(window);
+			window.thread.start();
+		}
+	}
+
+	private void defineSquare() {
+		ByteBuffer vertexBuffer = DisplayManager.putSquare(DisplayManager.SQUARE_LAYOUT,
+				BufferUtils.createByteBuffer(DisplayManager.SQUARE_LAYOUT.getSizeInBytes(4)));
+		ByteBuffer indicesBuffer = BufferUtils.createByteBuffer(DisplayManager.SQUARE_INDICES.length);
+		indicesBuffer.put(DisplayManager.SQUARE_INDICES);
+		indicesBuffer.flip();
+
+		vboVertexId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboVertexId);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, vertexBuffer, GL15.GL_STATIC_DRAW);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+		vboIndexId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
+		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL15.GL_STATIC_DRAW);
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	// the events of every window come in here, the render threads only see the close flag
+	// a window whose thread is done is destroyed, the others keep going
+	private void loop() {
+		int open = windows.length;
+		long lastReport = System.nanoTime();
+
+		while (open > 0) {
+			glfwPollEvents();
+
+			for (Window window : windows) {
+				if (window.handle != NULL && !window.thread.isAlive()) {
+					glfwDestroyWindow(window.handle);
+					window.handle = NULL;
+					open--;
+				}
+			}
+
+			long now = System.nanoTime();
+			if (now - lastReport >= REPORT_INTERVAL) {
+				report(now - lastReport);
+				lastReport = now;
+			}
+
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	// per window: frames, p50 / p99 of the whole frame and of the swap, jitter and the cores its thread used,
+	// then how many of the machine's cores all the render threads used together
+	private void report(long elapsed) {
+		StringBuilder lines = new StringBuilder();
+		double totalCores = 0.0d;
+
+		for (Window window : windows) {
+			long cpuTime = getCpuTime(window);
+			double cores = cpuTime < 0 ? 0.0d : (double) (cpuTime - window.lastCpuTime) / elapsed;
+			window.lastCpuTime = cpuTime;
+			totalCores += cores;
+
+			// the profiler publishes once a second on its own, only the newest record is shown
+			boolean published = false;
+			while (window.profiler.getRing().poll(window.record))
+				published = true;
+			if (window.handle == NULL && !published)
+				continue;
+
+			lines.append(String.format(Locale.ROOT, "window %d (%s): ", window.index + 1, pacing[window.index]));
+			if (published || window.reported) {
+				long[] record = window.record;
+				int frame = FrameProfiler.HEADER_SIZE + FRAME * FrameProfiler.STATS_PER_PHASE;
+				int swap = FrameProfiler.HEADER_SIZE + SWAP * FrameProfiler.STATS_PER_PHASE;
+				lines.append(String.format(Locale.ROOT, "%d frames | frame %.2f / %.2f ms | swap %.2f / %.2f ms | jitter %.2f ms",
+						record[FrameProfiler.FRAMES],
+						record[frame + FrameProfiler.P50] / 1e6d, record[frame + FrameProfiler.P99] / 1e6d,
+						record[swap + FrameProfiler.P50] / 1e6d, record[swap + FrameProfiler.P99] / 1e6d,
+						record[FrameProfiler.JITTER] / 1e6d));
+				window.reported = true;
+			} else {
+				lines.append("no frames yet");
+			}
+			lines.append(cpuTime < 0 ? " | cpu n/a\n" : String.format(Locale.ROOT, " | cpu %.2f cores\n", cores));
+		}
+
+		lines.append(String.format(Locale.ROOT, "render threads: %.2f of %d cores busy",
+				totalCores, Runtime.getRuntime().availableProcessors()));
+		System.out.println(lines);
+	}
+
+	// -1 if the JVM can't measure it, or the thread is gone
+	private long getCpuTime(Window window) {
+		if (!threads.isThreadCpuTimeSupported())
+			return -1;
+		return threads.getThreadCpuTime(window.thread.getId());
+	}
+
+	// every window is closed by now, the objects are deleted in the context that made them
+	private void cleanUp() {
+		glfwMakeContextCurrent(sharedContext);
+		GL15.glDeleteBuffers(vboVertexId);
+		GL15.glDeleteBuffers(vboIndexId);
+		GL11.glDeleteTextures(texId);
+		GL20.glDeleteProgram(pId);
+		glfwMakeContextCurrent(NULL);
+		glfwDestroyWindow(sharedContext);
+	}
+
+	public static void main(String[] args) {
+		String[] pacing = args.length > 0 ? args : new String[] { "vsync", "unlimited" };
+		new MultiWindowDisplay(pacing).run();
+	}
+
+}
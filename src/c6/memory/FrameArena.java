@@ -0,0 +1,32 @@
+package c6.memory;
+
+// staging memory that lives for one frame, everything is freed at once by reset()
+// at the start of the next one
+//
+// arena.reset();
+// ByteBuffer vertices = arena.allocate(layout.getSizeInBytes(count));
+// ... fill and upload, the buffer is handed out again next frame
+public class FrameArena extends OffHeapArena {
+	private int frameHighWaterMark, usedLastFrame;
+
+	public FrameArena(int capacity) {
+		super(capacity);
+	}
+
+	public void reset() {
+		usedLastFrame = getUsed();
+		if (usedLastFrame > frameHighWaterMark)
+			frameHighWaterMark = usedLastFrame;
+		rewind(0, 0);
+	}
+
+	public int getUsedLastFrame() {
+		return usedLastFrame;
+	}
+
+	// the most a single frame ever used
+	public int getFrameHighWaterMark() {
+		return frameHighWaterMark;
+	}
+
+}
@@ -0,0 +1,108 @@
+package c6.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.lwjgl.BufferUtils;
+
+// one big direct block that transient staging data (vertices, pixels, indices on their way
+// to the GPU) is carved out of by bumping an offset, so it isn't a direct buffer of its own
+// every time, which the garbage collector only frees when it gets around to it
+//
+// the buffers handed out are views of the block, a view is kept and handed out again when the
+// same allocation (the n-th since the last reset, with the same offset and size) comes back,
+// so the usual case of doing the same thing every frame creates no garbage at all
+//
+// an allocation that doesn't fit gets a direct buffer of its own, it is counted as an overflow
+// and the capacity can be raised until there are none
+// not thread safe, an arena belongs to one thread, usually the render thread
+public abstract class OffHeapArena {
+	// enough for any vertex attribute or SIMD load
+	public static final int ALIGNMENT = 16;
+
+	private final ByteBuffer block;
+
+	private int offset, allocations;
+	private int highWaterMark, overflows;
+	private long overflowBytes;
+
+	private ByteBuffer[] views = new ByteBuffer[16];
+	private int[] viewOffsets = new int[16];
+
+	protected OffHeapArena(int capacity) {
+		block = BufferUtils.createByteBuffer(capacity);
+	}
+
+	// a cleared buffer of exactly that many bytes in native byte order, its contents are undefined
+	// it is only valid until the arena is reset past it, the arena will hand the memory out again
+	public ByteBuffer allocate(int bytes) {
+		if (bytes < 0)
+			throw new IllegalArgumentException("Can't allocate " + bytes + " bytes!");
+
+		int start = (offset + ALIGNMENT - 1) & -ALIGNMENT;
+		if (start + bytes > block.capacity()) {
+			overflows++;
+			overflowBytes += bytes;
+			return BufferUtils.createByteBuffer(bytes);
+		}
+
+		if (allocations == views.length) {
+			views = Arrays.copyOf(views, views.length * 2);
+			viewOffsets = Arrays.copyOf(viewOffsets, viewOffsets.length * 2);
+		}
+
+		int slot = allocations++;
+		ByteBuffer view = views[slot];
+		if (view == null || viewOffsets[slot] != start || view.capacity() != bytes) {
+			ByteBuffer window = block.duplicate();
+			window.limit(start + bytes).position(start);
+			view = window.slice().order(ByteOrder.nativeOrder());
+			views[slot] = view;
+			viewOffsets[slot] = start;
+		}
+		view.clear();
+
+		offset = start + bytes;
+		if (offset > highWaterMark)
+			highWaterMark = offset;
+		return view;
+	}
+
+	// everything allocated after the position is free again
+	protected void rewind(int offset, int allocations) {
+		this.offset = offset;
+		this.allocations = allocations;
+	}
+
+	protected int getOffset() {
+		return offset;
+	}
+
+	protected int getAllocations() {
+		return allocations;
+	}
+
+	public int getUsed() {
+		return offset;
+	}
+
+	public int getCapacity() {
+		return block.capacity();
+	}
+
+	// the most that was ever in use at once
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	// allocations that didn't fit and got a direct buffer of their own
+	public int getOverflows() {
+		return overflows;
+	}
+
+	public long getOverflowBytes() {
+		return overflowBytes;
+	}
+
+}
@@ -0,0 +1,50 @@
+package c6.memory;
+
+import java.util.Arrays;
+
+// staging memory with nested scopes, pop() frees everything allocated since the matching push()
+//
+// stack.push();
+// try {
+//     ByteBuffer pixels = stack.allocate(width * height * 4);
+//     ... decode and upload
+// } finally {
+//     stack.pop();
+// }
+public class StackArena extends OffHeapArena {
+	private int[] offsets = new int[8], allocations = new int[8];
+	private int depth, maxDepth;
+
+	public StackArena(int capacity) {
+		super(capacity);
+	}
+
+	public void push() {
+		if (depth == offsets.length) {
+			offsets = Arrays.copyOf(offsets, depth * 2);
+			allocations = Arrays.copyOf(allocations, depth * 2);
+		}
+		offsets[depth] = getOffset();
+		allocations[depth] = getAllocations();
+		depth++;
+		if (depth > maxDepth)
+			maxDepth = depth;
+	}
+
+	public void pop() {
+		if (depth == 0)
+			throw new IllegalStateException("pop() without a push()!");
+
+		depth--;
+		rewind(offsets[depth], allocations[depth]);
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+}
@@ -0,0 +1,98 @@
+package c6.meshes;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import c6.vertex.VertexLayout;
+
+// indexed triangles in memory: the vertices in a layout and the indices
+// in the narrowest type that can address every vertex
+public class Mesh {
+	private final VertexLayout layout;
+	private final ByteBuffer vertices;
+	private final int vertexCount;
+	private final ByteBuffer indices;
+	private final int indexCount;
+	private final int indexType;
+
+	public Mesh(VertexLayout layout, ByteBuffer vertices, int vertexCount,
+			ByteBuffer indices, int indexCount, int indexType) {
+		this.layout = layout;
+		this.vertices = vertices;
+		this.vertexCount = vertexCount;
+		this.indices = indices;
+		this.indexCount = indexCount;
+		this.indexType = indexType;
+	}
+
+	// a byte addresses 256 vertices, a short 65536, above that it takes an int
+	public static int getIndexType(int vertexCount) {
+		if (vertexCount <= 256)
+			return GL11.GL_UNSIGNED_BYTE;
+		if (vertexCount <= 65536)
+			return GL11.GL_UNSIGNED_SHORT;
+		return GL11.GL_UNSIGNED_INT;
+	}
+
+	public static int getIndexSize(int indexType) {
+		switch (indexType) {
+		case GL11.GL_UNSIGNED_BYTE: return 1;
+		case GL11.GL_UNSIGNED_SHORT: return 2;
+		case GL11.GL_UNSIGNED_INT: return 4;
+		default: throw new IllegalArgumentException("Not an index type: " + indexType);
+		}
+	}
+
+	// packs the first count indices into a buffer of the narrowest type for vertexCount vertices
+	public static ByteBuffer createIndexBuffer(int[] indices, int count, int vertexCount) {
+		int indexType = getIndexType(vertexCount);
+		ByteBuffer buffer = BufferUtils.createByteBuffer(count * getIndexSize(indexType));
+		for (int i = 0; i < count; i++) {
+			if (indexType == GL11.GL_UNSIGNED_BYTE)
+				buffer.put((byte) indices[i]);
+			else if (indexType == GL11.GL_UNSIGNED_SHORT)
+				buffer.putShort((short) indices[i]);
+			else
+				buffer.putInt(indices[i]);
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	public VertexLayout getLayout() {
+		return layout;
+	}
+
+	public ByteBuffer getVertices() {
+		return vertices;
+	}
+
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	public ByteBuffer getIndices() {
+		return indices;
+	}
+
+	public int getIndexCount() {
+		return indexCount;
+	}
+
+	public int getIndexType() {
+		return indexType;
+	}
+
+	public int getSizeInBytes() {
+		return vertices.remaining() + indices.remaining();
+	}
+
+	@Override
+	public String toString() {
+		return vertexCount + " vertices, " + indexCount / 3 + " triangles, "
+				+ getIndexSize(indexType) + " byte indices, " + getSizeInBytes() + " bytes";
+	}
+
+}
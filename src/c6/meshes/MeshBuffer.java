@@ -0,0 +1,51 @@
+package c6.meshes;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+
+import c6.state.GLState;
+
+// a mesh uploaded into a VAO with a static vertex and index buffer
+// the index type and count come from the mesh, so there is nothing to hard-code
+public class MeshBuffer {
+	private final GLState state;
+	private final int vaoId, vboVertexId, vboIndexId;
+	private final int indexCount, indexType;
+
+	public MeshBuffer(Mesh mesh, GLState state) {
+		this.state = state;
+		this.indexCount = mesh.getIndexCount();
+		this.indexType = mesh.getIndexType();
+
+		vaoId = GL30.glGenVertexArrays();
+		state.bindVertexArray(vaoId);
+
+		vboVertexId = GL15.glGenBuffers();
+		state.bindBuffer(GL15.GL_ARRAY_BUFFER, vboVertexId);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, mesh.getVertices(), GL15.GL_STATIC_DRAW);
+		mesh.getLayout().apply();
+
+		// bound while the VAO is bound, so the VAO remembers it
+		vboIndexId = GL15.glGenBuffers();
+		state.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboIndexId);
+		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, mesh.getIndices(), GL15.GL_STATIC_DRAW);
+	}
+
+	// the program and textures have to be bound already
+	public void draw() {
+		state.bindVertexArray(vaoId);
+		GL11.glDrawElements(GL11.GL_TRIANGLES, indexCount, indexType, 0);
+	}
+
+	public int getIndexCount() {
+		return indexCount;
+	}
+
+	public void cleanUp() {
+		state.deleteVertexArray(vaoId);
+		state.deleteBuffer(vboVertexId);
+		state.deleteBuffer(vboIndexId);
+	}
+
+}
@@ -0,0 +1,148 @@
+package c6.meshes;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import c6.vertex.VertexAttribute;
+import c6.vertex.VertexLayout;
+import c6.vertex.VertexType;
+
+// a compact binary mesh: the vertices and indices exactly as they go to the GPU,
+// loading one is a single mapping, the mesh's buffers are views of it
+//
+// the layout: "C6MS", version, the vertex layout (first location, attribute count,
+// then components, type and name of every attribute), vertex count, index type,
+// index count, then the vertices and the indices, both 4 byte aligned
+// the header is big endian, the data little endian like every GPU we run on
+//
+// convert an OBJ offline: MeshFile input.obj output.c6mesh
+public class MeshFile {
+	private static final int MAGIC = 0x43364D53; // "C6MS"
+	private static final int VERSION = 1;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public static void write(Mesh mesh, String filename) throws IOException {
+		Path target = Paths.get(filename);
+		if (target.getParent() != null)
+			Files.createDirectories(target.getParent());
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			VertexLayout layout = mesh.getLayout();
+			out.writeInt(layout.getAttribute(0).getLocation());
+			out.writeInt(layout.getAttributes().size());
+			for (VertexAttribute attribute : layout.getAttributes()) {
+				out.writeInt(attribute.getComponents());
+				out.writeInt(attribute.getType().ordinal());
+				byte[] name = attribute.getName().getBytes(UTF_8);
+				out.writeInt(name.length);
+				out.write(name);
+			}
+
+			out.writeInt(mesh.getVertexCount());
+			out.writeInt(mesh.getIndexType());
+			out.writeInt(mesh.getIndexCount());
+
+			writeAligned(out, mesh.getVertices());
+			writeAligned(out, mesh.getIndices());
+		} finally {
+			out.close();
+		}
+	}
+
+	// the data starts at a 4 byte boundary and is padded to the next one
+	private static void writeAligned(DataOutputStream out, ByteBuffer data) throws IOException {
+		if (data.order() != ByteOrder.LITTLE_ENDIAN)
+			throw new IOException("Mesh data has to be little endian");
+		while (out.size() % 4 != 0)
+			out.write(0);
+		ByteBuffer copy = data.duplicate();
+		while (copy.hasRemaining())
+			out.write(copy.get());
+	}
+
+	public static Mesh load(String filename) throws IOException {
+		if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN)
+			throw new IOException("Meshes are stored little endian, this machine is not");
+
+		ByteBuffer file;
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		try {
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+
+		try {
+			if (file.getInt() != MAGIC)
+				throw new IOException(filename + " is not a mesh file");
+			int version = file.getInt();
+			if (version != VERSION)
+				throw new IOException(filename + " has version " + version + ", expected " + VERSION);
+
+			VertexLayout.Builder builder = new VertexLayout.Builder(file.getInt());
+			int attributes = file.getInt();
+			for (int i = 0; i < attributes; i++) {
+				int components = file.getInt();
+				VertexType type = VertexType.values()[file.getInt()];
+				byte[] name = new byte[file.getInt()];
+				file.get(name);
+				builder.add(new String(name, UTF_8), components, type);
+			}
+			VertexLayout layout = builder.build();
+
+			int vertexCount = file.getInt();
+			int indexType = file.getInt();
+			int indexCount = file.getInt();
+
+			ByteBuffer vertices = slice(file, layout.getSizeInBytes(vertexCount));
+			ByteBuffer indices = slice(file, indexCount * Mesh.getIndexSize(indexType));
+			return new Mesh(layout, vertices, vertexCount, indices, indexCount, indexType);
+		} catch (RuntimeException e) {
+			// a truncated file or a broken header runs out of bytes or into a bad enum
+			throw new IOException(filename + " is broken", e);
+		}
+	}
+
+	// a view of the next size bytes after the alignment, not a copy
+	private static ByteBuffer slice(ByteBuffer file, int size) {
+		file.position((file.position() + 3) & ~3);
+		ByteBuffer data = file.slice();
+		data.limit(size);
+		file.position(file.position() + size);
+		return data.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: MeshFile input.obj output.c6mesh");
+			System.exit(-1);
+		}
+
+		long start = System.nanoTime();
+		Mesh mesh = ObjLoader.load(args[0]);
+		long parsed = System.nanoTime();
+		write(mesh, args[1]);
+		long loadStart = System.nanoTime();
+		load(args[1]);
+		long loaded = System.nanoTime();
+
+		System.out.println(args[0] + ": " + mesh);
+		System.out.println(String.format(Locale.ROOT, "parsing the OBJ took %.2f ms, loading the mesh file %.2f ms",
+				(parsed - start) / 1e6d, (loaded - loadStart) / 1e6d));
+	}
+
+}
@@ -0,0 +1,378 @@
+package c6.meshes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+import org.lwjgl.opengl.GL11;
+
+import c6.vertex.VertexAttribute;
+import c6.vertex.VertexType;
+
+// reorders the triangles and vertices of a mesh so the GPU does less work drawing it,
+// the mesh looks exactly the same afterwards:
+//
+// 1. triangles: Forsyth's linear-speed vertex cache optimisation, every vertex gets a score
+//    from where it is in a simulated cache and how many triangles still need it,
+//    the triangle with the best score is drawn next
+// 2. overdraw (optional): the reordered triangles are cut into clusters where the cache starts over,
+//    the clusters facing away from the center are drawn first, they are likely to hide the others
+// 3. vertices: renumbered in the order the triangles first use them, so fetching them walks
+//    through memory instead of jumping around
+//
+// ACMR is the average number of cache misses per triangle (0.5 is the best a grid can get, 3 the worst),
+// ATVR is misses per vertex (1 is perfect, every vertex is transformed once)
+public class MeshOptimizer {
+	// the cache the score is tuned for, and the one the report simulates
+	public static final int CACHE_SIZE = 32, REPORT_CACHE_SIZE = 16;
+
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+
+	public static Mesh optimize(Mesh mesh, boolean overdraw) {
+		int[] indices = readIndices(mesh);
+		int indexCount = mesh.getIndexCount();
+
+		optimizeVertexCache(indices, indexCount, mesh.getVertexCount());
+		if (overdraw)
+			optimizeOverdraw(indices, indexCount, readPositions(mesh));
+
+		int[] remap = optimizeVertexFetch(indices, indexCount, mesh.getVertexCount());
+		int vertexCount = 0;
+		for (int target : remap)
+			if (target >= 0)
+				vertexCount++;
+
+		// copy every used vertex to its new place, unused ones are dropped
+		int stride = mesh.getLayout().getStride();
+		ByteBuffer source = mesh.getVertices();
+		ByteBuffer vertices = mesh.getLayout().createBuffer(vertexCount);
+		for (int vertex = 0; vertex < remap.length; vertex++) {
+			if (remap[vertex] < 0)
+				continue;
+			for (int i = 0; i < stride; i++)
+				vertices.put(remap[vertex] * stride + i, source.get(source.position() + vertex * stride + i));
+		}
+
+		return new Mesh(mesh.getLayout(), vertices, vertexCount,
+				Mesh.createIndexBuffer(indices, indexCount, vertexCount), indexCount, Mesh.getIndexType(vertexCount));
+	}
+
+	// reorders the triangles in place
+	public static void optimizeVertexCache(int[] indices, int indexCount, int vertexCount) {
+		int triangleCount = indexCount / 3;
+
+		// the triangles of every vertex, the first remaining[v] of them are not drawn yet
+		int[] remaining = new int[vertexCount];
+		for (int i = 0; i < indexCount; i++)
+			remaining[indices[i]]++;
+		int[] offsets = new int[vertexCount + 1];
+		for (int v = 0; v < vertexCount; v++)
+			offsets[v + 1] = offsets[v] + remaining[v];
+		int[] triangles = new int[indexCount];
+		int[] filled = new int[vertexCount];
+		for (int i = 0; i < indexCount; i++) {
+			int v = indices[i];
+			triangles[offsets[v] + filled[v]++] = i / 3;
+		}
+
+		int[] cachePosition = new int[vertexCount];
+		Arrays.fill(cachePosition, -1);
+		float[] vertexScores = new float[vertexCount];
+		for (int v = 0; v < vertexCount; v++)
+			vertexScores[v] = vertexScore(-1, remaining[v]);
+
+		boolean[] drawn = new boolean[triangleCount];
+
+		int[] cache = new int[CACHE_SIZE + 3], newCache = new int[CACHE_SIZE + 3];
+		int cacheCount = 0;
+		int[] order = new int[indexCount];
+		int scanFrom = 0;
+
+		int best = -1;
+		for (int drawnCount = 0; drawnCount < triangleCount; drawnCount++) {
+			// nothing in the cache touches an undrawn triangle, take the next one in the old order
+			if (best < 0) {
+				while (drawn[scanFrom])
+					scanFrom++;
+				best = scanFrom;
+			}
+
+			drawn[best] = true;
+			int a = indices[best * 3], b = indices[best * 3 + 1], c = indices[best * 3 + 2];
+			order[drawnCount * 3] = a;
+			order[drawnCount * 3 + 1] = b;
+			order[drawnCount * 3 + 2] = c;
+
+			// the triangle is done, take it out of its vertices' lists
+			for (int k = 0; k < 3; k++) {
+				int v = indices[best * 3 + k];
+				int start = offsets[v], end = start + remaining[v];
+				for (int i = start; i < end; i++) {
+					if (triangles[i] == best) {
+						triangles[i] = triangles[end - 1];
+						triangles[end - 1] = best;
+						break;
+					}
+				}
+				remaining[v]--;
+			}
+
+			// the three vertices move to the front, everything else shifts back
+			int newCount = 0;
+			newCache[newCount++] = a;
+			newCache[newCount++] = b;
+			newCache[newCount++] = c;
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				if (v != a && v != b && v != c)
+					newCache[newCount++] = v;
+			}
+			int[] swap = cache;
+			cache = newCache;
+			newCache = swap;
+			cacheCount = Math.min(newCount, CACHE_SIZE);
+
+			// the ones pushed past the end are out of the cache
+			for (int i = 0; i < newCount; i++) {
+				int v = cache[i];
+				cachePosition[v] = i < CACHE_SIZE ? i : -1;
+				vertexScores[v] = vertexScore(cachePosition[v], remaining[v]);
+			}
+
+			// only the triangles of the vertices in the cache changed their score
+			best = -1;
+			float bestScore = -1.0f;
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				for (int j = offsets[v]; j < offsets[v] + remaining[v]; j++) {
+					int t = triangles[j];
+					float score = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]] + vertexScores[indices[t * 3 + 2]];
+					if (score > bestScore) {
+						bestScore = score;
+						best = t;
+					}
+				}
+			}
+		}
+
+		System.arraycopy(order, 0, indices, 0, indexCount);
+	}
+
+	private static float vertexScore(int cachePosition, int remainingTriangles) {
+		if (remainingTriangles == 0)
+			return -1.0f;
+
+		float score = 0.0f;
+		if (cachePosition >= 0) {
+			// the last triangle's vertices get a fixed score, so the same triangle's
+			// neighbours aren't always preferred, which would make long thin strips
+			if (cachePosition < 3) {
+				score = LAST_TRIANGLE_SCORE;
+			} else {
+				float scaler = 1.0f / (CACHE_SIZE - 3);
+				score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+			}
+		}
+
+		// vertices with few triangles left are finished first, so they don't stay around forever
+		score += VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+		return score;
+	}
+
+	// cuts the triangles into clusters where they start missing the cache completely,
+	// then draws the clusters facing outwards first, reorders the triangles in place
+	public static void optimizeOverdraw(int[] indices, int indexCount, float[] positions) {
+		int triangleCount = indexCount / 3;
+
+		int[] clusterStarts = new int[triangleCount + 1];
+		int clusterCount = 0;
+		int[] fifo = new int[REPORT_CACHE_SIZE];
+		Arrays.fill(fifo, -1);
+		int fifoHead = 0;
+		for (int t = 0; t < triangleCount; t++) {
+			int misses = 0;
+			for (int k = 0; k < 3; k++) {
+				int v = indices[t * 3 + k];
+				if (!contains(fifo, v)) {
+					fifo[fifoHead] = v;
+					fifoHead = (fifoHead + 1) % fifo.length;
+					misses++;
+				}
+			}
+			if (t == 0 || misses == 3)
+				clusterStarts[clusterCount++] = t;
+		}
+		clusterStarts[clusterCount] = triangleCount;
+
+		// the center of the mesh, and of every cluster, with its average normal
+		float[] center = new float[3];
+		int used = 0;
+		for (int i = 0; i < indexCount; i++, used++)
+			for (int k = 0; k < 3; k++)
+				center[k] += positions[indices[i] * 3 + k];
+		for (int k = 0; k < 3; k++)
+			center[k] /= Math.max(used, 1);
+
+		final float[] sortKeys = new float[clusterCount];
+		for (int cluster = 0; cluster < clusterCount; cluster++) {
+			float[] clusterCenter = new float[3], normal = new float[3];
+			float area = 0.0f;
+			for (int t = clusterStarts[cluster]; t < clusterStarts[cluster + 1]; t++) {
+				int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+				float ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1], uz = positions[b + 2] - positions[a + 2];
+				float vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1], vz = positions[c + 2] - positions[a + 2];
+				float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+				float triangleArea = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+				normal[0] += nx;
+				normal[1] += ny;
+				normal[2] += nz;
+				for (int k = 0; k < 3; k++)
+					clusterCenter[k] += (positions[a + k] + positions[b + k] + positions[c + k]) / 3.0f * triangleArea;
+				area += triangleArea;
+			}
+
+			float length = (float) Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+			float key = 0.0f;
+			if (area > 0.0f && length > 0.0f)
+				for (int k = 0; k < 3; k++)
+					key += (clusterCenter[k] / area - center[k]) * normal[k] / length;
+			sortKeys[cluster] = key;
+		}
+
+		Integer[] clusters = new Integer[clusterCount];
+		for (int cluster = 0; cluster < clusterCount; cluster++)
+			clusters[cluster] = cluster;
+		Arrays.sort(clusters, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Float.compare(sortKeys[b], sortKeys[a]);
+			}
+		});
+
+		int[] sorted = new int[indexCount];
+		int written = 0;
+		for (Integer cluster : clusters) {
+			int from = clusterStarts[cluster] * 3, to = clusterStarts[cluster + 1] * 3;
+			System.arraycopy(indices, from, sorted, written, to - from);
+			written += to - from;
+		}
+		System.arraycopy(sorted, 0, indices, 0, indexCount);
+	}
+
+	private static boolean contains(int[] array, int value) {
+		for (int element : array)
+			if (element == value)
+				return true;
+		return false;
+	}
+
+	// renumbers the vertices in the order they are first used and rewrites the indices,
+	// returns where every old vertex went, -1 for the ones no triangle uses
+	public static int[] optimizeVertexFetch(int[] indices, int indexCount, int vertexCount) {
+		int[] remap = new int[vertexCount];
+		Arrays.fill(remap, -1);
+		int next = 0;
+		for (int i = 0; i < indexCount; i++) {
+			int v = indices[i];
+			if (remap[v] < 0)
+				remap[v] = next++;
+			indices[i] = remap[v];
+		}
+		return remap;
+	}
+
+	// cache misses of a FIFO cache, like the one in most GPUs, per triangle
+	public static float getACMR(int[] indices, int indexCount, int cacheSize) {
+		return (float) countMisses(indices, indexCount, cacheSize) / (indexCount / 3);
+	}
+
+	// cache misses per vertex used by the mesh
+	public static float getATVR(int[] indices, int indexCount, int cacheSize) {
+		int[] unique = indices.clone();
+		Arrays.sort(unique, 0, indexCount);
+		int vertexCount = 0;
+		for (int i = 0; i < indexCount; i++)
+			if (i == 0 || unique[i] != unique[i - 1])
+				vertexCount++;
+		return (float) countMisses(indices, indexCount, cacheSize) / vertexCount;
+	}
+
+	private static int countMisses(int[] indices, int indexCount, int cacheSize) {
+		int[] fifo = new int[cacheSize];
+		Arrays.fill(fifo, -1);
+		int head = 0, misses = 0;
+		for (int i = 0; i < indexCount; i++) {
+			if (!contains(fifo, indices[i])) {
+				fifo[head] = indices[i];
+				head = (head + 1) % cacheSize;
+				misses++;
+			}
+		}
+		return misses;
+	}
+
+	public static int[] readIndices(Mesh mesh) {
+		ByteBuffer buffer = mesh.getIndices();
+		int start = buffer.position();
+		int[] indices = new int[mesh.getIndexCount()];
+		for (int i = 0; i < indices.length; i++) {
+			switch (mesh.getIndexType()) {
+			case GL11.GL_UNSIGNED_BYTE: indices[i] = buffer.get(start + i) & 0xff; break;
+			case GL11.GL_UNSIGNED_SHORT: indices[i] = buffer.getShort(start + i * 2) & 0xffff; break;
+			default: indices[i] = buffer.getInt(start + i * 4); break;
+			}
+		}
+		return indices;
+	}
+
+	// the first attribute has to be the position, as 3 floats
+	static float[] readPositions(Mesh mesh) {
+		VertexAttribute position = mesh.getLayout().getAttribute(0);
+		if (position.getType() != VertexType.FLOAT || position.getComponents() < 3)
+			throw new IllegalArgumentException("The overdraw pass needs float positions, not " + position);
+
+		ByteBuffer vertices = mesh.getVertices();
+		int stride = mesh.getLayout().getStride();
+		float[] positions = new float[mesh.getVertexCount() * 3];
+		for (int v = 0; v < mesh.getVertexCount(); v++)
+			for (int k = 0; k < 3; k++)
+				positions[v * 3 + k] = vertices.getFloat(vertices.position() + v * stride + position.getOffset() + k * 4);
+		return positions;
+	}
+
+	public static String report(Mesh mesh) {
+		int[] indices = readIndices(mesh);
+		return String.format(Locale.ROOT, "ACMR %.3f, ATVR %.3f", getACMR(indices, indices.length, REPORT_CACHE_SIZE),
+				getATVR(indices, indices.length, REPORT_CACHE_SIZE));
+	}
+
+	// usage: MeshOptimizer input.obj|input.c6mesh [output.c6mesh] [overdraw]
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: MeshOptimizer input.obj|input.c6mesh [output.c6mesh] [overdraw]");
+			System.exit(-1);
+		}
+
+		Mesh mesh = args[0].endsWith(".obj") ? ObjLoader.load(args[0]) : MeshFile.load(args[0]);
+		boolean overdraw = args.length > 2 && args[2].equals("overdraw");
+
+		long start = System.nanoTime();
+		Mesh optimized = optimize(mesh, overdraw);
+		long end = System.nanoTime();
+
+		System.out.println(args[0] + ": " + mesh);
+		System.out.println("  before: " + report(mesh));
+		System.out.println("  after:  " + report(optimized) + String.format(Locale.ROOT, " (%.2f ms%s)",
+				(end - start) / 1e6d, overdraw ? ", with overdraw clusters" : ""));
+
+		if (args.length > 1)
+			MeshFile.write(optimized, args[1]);
+	}
+
+}
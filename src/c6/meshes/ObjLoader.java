@@ -0,0 +1,287 @@
+package c6.meshes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import c6.vertex.VertexAttribute;
+import c6.vertex.VertexLayout;
+import c6.vertex.VertexType;
+
+// reads the triangles of a Wavefront OBJ file: v, vt, vn and f, everything else is skipped
+//
+// the file is mapped and parsed byte by byte, numbers are read straight from the bytes,
+// so there is no String per line or per number
+// corners with the same position, texture coordinate and normal become one vertex,
+// polygons are split into a fan of triangles
+public class ObjLoader {
+	// the c6 attributes plus the normal, white where the file has no color
+	public static final VertexLayout LAYOUT = new VertexLayout.Builder()
+			.add("in_Position", 3, VertexType.FLOAT)
+			.add("in_Color", 4, VertexType.UNSIGNED_BYTE_NORMALIZED)
+			.add("in_TextureCoord", 2, VertexType.FLOAT)
+			.add("in_Normal", 3, VertexType.BYTE_NORMALIZED)
+			.build();
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.0d;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0d;
+	}
+
+	private final ByteBuffer file;
+	private final String filename;
+	private int position, line = 1;
+
+	private float[] positions = new float[3 * 1024], texCoords = new float[2 * 1024], normals = new float[3 * 1024];
+	private int positionCount, texCoordCount, normalCount;
+
+	// the position, texture coordinate and normal index of every unique vertex
+	private int[] corners = new int[3 * 1024];
+	private int[] indices = new int[3 * 1024];
+	private int indexCount;
+	private final VertexKeyMap vertexMap = new VertexKeyMap(1024);
+
+	private ObjLoader(ByteBuffer file, String filename) {
+		this.file = file;
+		this.filename = filename;
+	}
+
+	public static Mesh load(String filename) throws IOException {
+		ByteBuffer file;
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		try {
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+
+		ObjLoader loader = new ObjLoader(file, filename);
+		loader.parse();
+		return loader.createMesh();
+	}
+
+	private void parse() throws IOException {
+		int end = file.limit();
+		while (position < end) {
+			skipSpaces();
+			if (position >= end)
+				break;
+
+			byte first = file.get(position);
+			byte second = position + 1 < end ? file.get(position + 1) : 0;
+			if (first == 'v' && second == ' ') {
+				position += 2;
+				positions = ensure(positions, positionCount * 3 + 3);
+				for (int i = 0; i < 3; i++)
+					positions[positionCount * 3 + i] = readFloat();
+				positionCount++;
+			} else if (first == 'v' && second == 't') {
+				position += 2;
+				texCoords = ensure(texCoords, texCoordCount * 2 + 2);
+				texCoords[texCoordCount * 2] = readFloat();
+				texCoords[texCoordCount * 2 + 1] = readFloat();
+				texCoordCount++;
+			} else if (first == 'v' && second == 'n') {
+				position += 2;
+				normals = ensure(normals, normalCount * 3 + 3);
+				for (int i = 0; i < 3; i++)
+					normals[normalCount * 3 + i] = readFloat();
+				normalCount++;
+			} else if (first == 'f' && second == ' ') {
+				position += 2;
+				readFace();
+			}
+			skipLine();
+		}
+	}
+
+	// a fan around the first corner: 0 1 2, 0 2 3, 0 3 4...
+	private void readFace() throws IOException {
+		int firstVertex = -1, previousVertex = -1, corner = 0;
+		while (true) {
+			skipSpaces();
+			if (atLineEnd())
+				break;
+
+			int vertex = readCorner();
+			if (corner >= 2) {
+				indices = ensure(indices, indexCount + 3);
+				indices[indexCount++] = firstVertex;
+				indices[indexCount++] = previousVertex;
+				indices[indexCount++] = vertex;
+			}
+			if (corner == 0)
+				firstVertex = vertex;
+			previousVertex = vertex;
+			corner++;
+		}
+		if (corner < 3)
+			throw error("a face needs at least 3 corners");
+	}
+
+	// v, v/vt, v//vn or v/vt/vn, negative indices count back from the end
+	private int readCorner() throws IOException {
+		int positionIndex = resolve(readInt(), positionCount);
+		int texCoordIndex = -1, normalIndex = -1;
+		if (peek() == '/') {
+			position++;
+			if (peek() != '/')
+				texCoordIndex = resolve(readInt(), texCoordCount);
+			if (peek() == '/') {
+				position++;
+				normalIndex = resolve(readInt(), normalCount);
+			}
+		}
+
+		int vertexCount = vertexMap.size();
+		int existing = vertexMap.putIfAbsent(positionIndex, texCoordIndex, normalIndex, vertexCount);
+		if (existing >= 0)
+			return existing;
+
+		corners = ensure(corners, vertexCount * 3 + 3);
+		corners[vertexCount * 3] = positionIndex;
+		corners[vertexCount * 3 + 1] = texCoordIndex;
+		corners[vertexCount * 3 + 2] = normalIndex;
+		return vertexCount;
+	}
+
+	private int resolve(int index, int count) throws IOException {
+		int resolved = index < 0 ? count + index : index - 1;
+		if (resolved < 0 || resolved >= count)
+			throw error("index " + index + " is out of range");
+		return resolved;
+	}
+
+	private Mesh createMesh() {
+		int vertexCount = vertexMap.size();
+		ByteBuffer vertices = LAYOUT.createBuffer(vertexCount);
+		VertexAttribute position = LAYOUT.getAttribute(0), color = LAYOUT.getAttribute(1);
+		VertexAttribute texCoord = LAYOUT.getAttribute(2), normal = LAYOUT.getAttribute(3);
+
+		for (int i = 0; i < vertexCount; i++) {
+			int p = corners[i * 3], t = corners[i * 3 + 1], n = corners[i * 3 + 2];
+			position.put(vertices, positions, p);
+			color.put(vertices, 1.0f, 1.0f, 1.0f, 1.0f);
+			if (t >= 0)
+				texCoord.put(vertices, texCoords, t);
+			else
+				texCoord.put(vertices, 0.0f, 0.0f, 0.0f, 0.0f);
+			if (n >= 0)
+				normal.put(vertices, normals, n);
+			else
+				normal.put(vertices, 0.0f, 0.0f, 0.0f, 0.0f);
+		}
+		vertices.flip();
+
+		return new Mesh(LAYOUT, vertices, vertexCount,
+				Mesh.createIndexBuffer(indices, indexCount, vertexCount), indexCount, Mesh.getIndexType(vertexCount));
+	}
+
+	private byte peek() {
+		return position < file.limit() ? file.get(position) : (byte) '\n';
+	}
+
+	private boolean atLineEnd() {
+		byte b = peek();
+		return b == '\n' || b == '\r' || b == '#';
+	}
+
+	private void skipSpaces() {
+		while (position < file.limit() && (file.get(position) == ' ' || file.get(position) == '\t'))
+			position++;
+	}
+
+	private void skipLine() {
+		while (position < file.limit() && file.get(position) != '\n')
+			position++;
+		position++;
+		line++;
+	}
+
+	private int readInt() throws IOException {
+		skipSpaces();
+		boolean negative = peek() == '-';
+		if (negative)
+			position++;
+
+		int start = position, value = 0;
+		byte b;
+		while ((b = peek()) >= '0' && b <= '9') {
+			value = value * 10 + (b - '0');
+			position++;
+		}
+		if (position == start)
+			throw error("expected a number");
+		return negative ? -value : value;
+	}
+
+	// [-]digits[.digits][e[-]digits], accurate to the last bit or two, plenty for vertex data
+	private float readFloat() throws IOException {
+		skipSpaces();
+		boolean negative = peek() == '-';
+		if (negative || peek() == '+')
+			position++;
+
+		int start = position;
+		long mantissa = 0;
+		int exponent = 0, digits = 0;
+		byte b;
+		while ((b = peek()) >= '0' && b <= '9') {
+			if (digits++ < 18)
+				mantissa = mantissa * 10 + (b - '0');
+			else
+				exponent++;
+			position++;
+		}
+		if (peek() == '.') {
+			position++;
+			while ((b = peek()) >= '0' && b <= '9') {
+				if (digits++ < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					exponent--;
+				}
+				position++;
+			}
+		}
+		if (position == start)
+			throw error("expected a number");
+
+		if (peek() == 'e' || peek() == 'E') {
+			position++;
+			boolean negativeExponent = peek() == '-';
+			if (negativeExponent || peek() == '+')
+				position++;
+			int value = 0;
+			while ((b = peek()) >= '0' && b <= '9') {
+				value = value * 10 + (b - '0');
+				position++;
+			}
+			exponent += negativeExponent ? -value : value;
+		}
+
+		double result = mantissa;
+		if (exponent < 0)
+			result /= -exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[-exponent] : Math.pow(10.0d, -exponent);
+		else if (exponent > 0)
+			result *= exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : Math.pow(10.0d, exponent);
+		return (float) (negative ? -result : result);
+	}
+
+	private IOException error(String message) {
+		return new IOException(filename + ":" + line + ": " + message);
+	}
+
+	private static float[] ensure(float[] array, int size) {
+		return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+	}
+
+	private static int[] ensure(int[] array, int size) {
+		return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+	}
+
+}
@@ -0,0 +1,67 @@
+package c6.meshes;
+
+import java.util.Arrays;
+
+// maps position / texture coordinate / normal index triples to vertex indices
+// open addressing with linear probing over plain int arrays, so looking up
+// a face corner allocates nothing, not even a boxed key
+class VertexKeyMap {
+	private static final int EMPTY = -1;
+
+	private int[] keys;		// 3 ints per slot
+	private int[] values;
+	private int size, mask;
+
+	VertexKeyMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity * 3];
+		values = new int[capacity];
+		Arrays.fill(values, EMPTY);
+		mask = capacity - 1;
+		size = 0;
+	}
+
+	// returns the vertex of the triple, or adds it as next if it is new and returns -1
+	int putIfAbsent(int position, int texCoord, int normal, int next) {
+		int slot = hash(position, texCoord, normal) & mask;
+		while (values[slot] != EMPTY) {
+			int key = slot * 3;
+			if (keys[key] == position && keys[key + 1] == texCoord && keys[key + 2] == normal)
+				return values[slot];
+			slot = (slot + 1) & mask;
+		}
+
+		int key = slot * 3;
+		keys[key] = position;
+		keys[key + 1] = texCoord;
+		keys[key + 2] = normal;
+		values[slot] = next;
+
+		// keep at most half of the slots used, so the probes stay short
+		if (++size * 2 > values.length)
+			grow();
+		return EMPTY;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys, oldValues = values;
+		allocate(oldValues.length * 2);
+		for (int slot = 0; slot < oldValues.length; slot++)
+			if (oldValues[slot] != EMPTY)
+				putIfAbsent(oldKeys[slot * 3], oldKeys[slot * 3 + 1], oldKeys[slot * 3 + 2], oldValues[slot]);
+	}
+
+	private static int hash(int a, int b, int c) {
+		int h = a * 0x9E3779B1 + b * 0x85EBCA77 + c * 0xC2B2AE3D;
+		return h ^ (h >>> 16);
+	}
+
+	int size() {
+		return size;
+	}
+
+}
@@ -0,0 +1,134 @@
+package c6.profiling;
+
+// measures how long each phase of a frame takes and publishes percentiles
+// once per report interval, nothing in here allocates after construction
+//
+// profiler.beginFrame();
+// glClear(...);            profiler.mark(CLEAR);
+// renderSquare();          profiler.mark(RENDER);
+// glfwSwapBuffers(window); profiler.mark(SWAP);
+// glfwPollEvents();        profiler.mark(EVENTS);
+//
+// the last phase is always "frame", the time between two beginFrame() calls,
+// so it includes everything, even the work that isn't marked
+public class FrameProfiler {
+	public static final String FRAME = "frame";
+
+	// the layout of a published record: a header, then the same stats for every phase
+	public static final int TIMESTAMP = 0, FRAMES = 1, JITTER = 2, HEADER_SIZE = 3;
+	public static final int MEAN = 0, P50 = 1, P95 = 2, P99 = 3, MAX = 4, DEVIATION = 5, STATS_PER_PHASE = 6;
+
+	private final String[] phases;
+	private final Histogram[] histograms;
+	private final ProfileRing ring;
+	private final long reportIntervalNanos;
+
+	private long frameStart, lastMark, lastReport;
+	private long lastFrameTime = -1;
+	private long frameTimeDeltaSum;
+	private int frameTimeDeltas;
+	private int frames;
+	private boolean paused;
+
+	public FrameProfiler(long reportIntervalNanos, int ringCapacity, String... phases) {
+		this.phases = new String[phases.length + 1];
+		System.arraycopy(phases, 0, this.phases, 0, phases.length);
+		this.phases[phases.length] = FRAME;
+
+		histograms = new Histogram[this.phases.length];
+		for (int i = 0; i < histograms.length; i++)
+			histograms[i] = new Histogram();
+
+		this.ring = new ProfileRing(ringCapacity, HEADER_SIZE + this.phases.length * STATS_PER_PHASE);
+		this.reportIntervalNanos = reportIntervalNanos;
+	}
+
+	public void beginFrame() {
+		long now = System.nanoTime();
+
+		if (frameStart != 0 && !paused) {
+			long frameTime = now - frameStart;
+			histograms[phases.length - 1].record(frameTime);
+
+			// jitter is how much a frame differs from the one before it,
+			// a steady 20 ms is smooth, alternating 10 and 30 ms is not
+			if (lastFrameTime >= 0) {
+				frameTimeDeltaSum += Math.abs(frameTime - lastFrameTime);
+				frameTimeDeltas++;
+			}
+			lastFrameTime = frameTime;
+			frames++;
+		} else if (frameStart == 0) {
+			lastReport = now;
+		} else {
+			lastFrameTime = -1; // the frame after a pause isn't compared with the one before it
+		}
+		paused = false;
+
+		if (now - lastReport >= reportIntervalNanos) {
+			publish();
+			lastReport = now;
+		}
+
+		frameStart = now;
+		lastMark = now;
+	}
+
+	// the time until the next beginFrame() isn't a frame, e.g. a loop that sleeps until there is input
+	public void pause() {
+		paused = true;
+	}
+
+	// records the time since the last mark (or the start of the frame) for the phase
+	public void mark(int phase) {
+		long now = System.nanoTime();
+		histograms[phase].record(now - lastMark);
+		lastMark = now;
+	}
+
+	private void publish() {
+		int offset = ring.claim();
+		if (offset >= 0) {
+			long[] record = ring.array();
+			record[offset + TIMESTAMP] = System.currentTimeMillis();
+			record[offset + FRAMES] = frames;
+			record[offset + JITTER] = frameTimeDeltas == 0 ? 0 : frameTimeDeltaSum / frameTimeDeltas;
+
+			for (int i = 0; i < histograms.length; i++) {
+				Histogram histogram = histograms[i];
+				int stats = offset + HEADER_SIZE + i * STATS_PER_PHASE;
+				record[stats + MEAN] = (long) histogram.getMean();
+				record[stats + P50] = histogram.getPercentile(50.0d);
+				record[stats + P95] = histogram.getPercentile(95.0d);
+				record[stats + P99] = histogram.getPercentile(99.0d);
+				record[stats + MAX] = histogram.getMax();
+				record[stats + DEVIATION] = (long) histogram.getStandardDeviation();
+			}
+			ring.publish();
+		}
+
+		for (Histogram histogram : histograms)
+			histogram.reset();
+		frames = 0;
+		frameTimeDeltaSum = 0;
+		frameTimeDeltas = 0;
+	}
+
+	// the histograms of the current interval, they are reset at every report
+	public Histogram getHistogram(int phase) {
+		return histograms[phase];
+	}
+
+	public int getPhaseCount() {
+		return phases.length;
+	}
+
+	public String getPhaseName(int phase) {
+		return phases[phase];
+	}
+
+	public ProfileRing getRing() {
+		return ring;
+	}
+
+}
@@ -0,0 +1,81 @@
+package c6.profiling;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL33;
+
+// how long the GPU spends on the frames, measured with timer queries
+// the result of a query is only there a few frames after it was issued, so there is a ring of them
+// and a result is only read once it is available, asking for it earlier would wait for the GPU
+//
+// timer.begin();
+// ... draw
+// timer.end();
+//
+// only one timer query can run at a time, so the begin() and end() of two timers must not overlap
+public class GpuTimer {
+	private final int[] queryIds;
+	private final boolean[] pending;
+	private int next;
+
+	private long totalNanos;
+	private int frames, skipped;
+
+	public GpuTimer(int ringSize) {
+		queryIds = new int[ringSize];
+		pending = new boolean[ringSize];
+		for (int i = 0; i < ringSize; i++)
+			queryIds[i] = GL15.glGenQueries();
+	}
+
+	public void begin() {
+		// every query in the ring is still in flight, this frame isn't measured rather than waited for
+		collect();
+		if (pending[next]) {
+			skipped++;
+			return;
+		}
+		GL15.glBeginQuery(GL33.GL_TIME_ELAPSED, queryIds[next]);
+	}
+
+	public void end() {
+		if (pending[next])
+			return;
+		GL15.glEndQuery(GL33.GL_TIME_ELAPSED);
+		pending[next] = true;
+		next = (next + 1) % queryIds.length;
+	}
+
+	// adds up the results that came in, oldest first, a result is never waited for
+	private void collect() {
+		for (int i = 0; i < queryIds.length; i++) {
+			int slot = (next + i) % queryIds.length;
+			if (!pending[slot])
+				continue;
+			if (GL15.glGetQueryObjecti(queryIds[slot], GL15.GL_QUERY_RESULT_AVAILABLE) == 0)
+				break;
+			totalNanos += GL33.glGetQueryObjecti64(queryIds[slot], GL15.GL_QUERY_RESULT);
+			pending[slot] = false;
+			frames++;
+		}
+	}
+
+	// the GPU time of every measured frame so far
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public int getFrames() {
+		return frames;
+	}
+
+	// frames that weren't measured because the ring was full
+	public int getSkipped() {
+		return skipped;
+	}
+
+	public void cleanUp() {
+		for (int queryId : queryIds)
+			GL15.glDeleteQueries(queryId);
+	}
+
+}
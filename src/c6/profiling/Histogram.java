@@ -0,0 +1,105 @@
+package c6.profiling;
+
+// a fixed size histogram of nanosecond durations, recording never allocates
+//
+// values below 64 ns get a bucket each, above that every power of two is split
+// into 32 buckets, so a percentile is never more than ~3% off
+// everything above 2^40 ns (about 18 minutes) ends up in the last bucket
+public class Histogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_MAGNITUDE = 40;
+	private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long min = Long.MAX_VALUE, max;
+	private double sum, sumOfSquares;
+
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+
+		counts[indexOf(nanos)]++;
+		count++;
+		if (nanos < min) min = nanos;
+		if (nanos > max) max = nanos;
+		sum += nanos;
+		sumOfSquares += (double) nanos * nanos;
+	}
+
+	static int indexOf(long value) {
+		if (value < 2 * SUB_BUCKETS)
+			return (int) value;
+
+		int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		if (magnitude > MAX_MAGNITUDE - SUB_BUCKET_BITS)
+			return BUCKETS - 1;
+
+		return magnitude * SUB_BUCKETS + (int) (value >>> magnitude);
+	}
+
+	// the highest value that still falls into the bucket
+	static long upperBoundOf(int index) {
+		if (index < 2 * SUB_BUCKETS)
+			return index;
+
+		int magnitude = index / SUB_BUCKETS - 1;
+		long subBucket = index - magnitude * SUB_BUCKETS;
+		return ((subBucket + 1) << magnitude) - 1;
+	}
+
+	// percentile is between 0 and 100, the result is never above the recorded maximum
+	public long getPercentile(double percentile) {
+		if (count == 0)
+			return 0;
+
+		long target = (long) Math.ceil(percentile / 100.0d * count);
+		if (target < 1)
+			target = 1;
+
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target)
+				return Math.min(upperBoundOf(i), max);
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0.0d : sum / count;
+	}
+
+	// the standard deviation, how much the values jump around the mean
+	public double getStandardDeviation() {
+		if (count == 0)
+			return 0.0d;
+
+		double mean = sum / count;
+		return Math.sqrt(Math.max(0.0d, sumOfSquares / count - mean * mean));
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts[i] = 0;
+		count = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+		sum = 0.0d;
+		sumOfSquares = 0.0d;
+	}
+
+}
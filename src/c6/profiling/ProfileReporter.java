@@ -0,0 +1,167 @@
+package c6.profiling;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+// drains the profiler's ring on a background thread and writes every record
+// as a CSV row, a JSON line or a short human readable line
+// all the formatting and I/O happens here, never on the render thread
+public class ProfileReporter implements Runnable {
+	public enum Format { CSV, JSON, TEXT }
+
+	private final FrameProfiler profiler;
+	private final Format format;
+	private final PrintWriter out;
+	private final boolean closeOnStop;
+	private final Thread thread;
+
+	private volatile boolean running = true;
+
+	public ProfileReporter(FrameProfiler profiler, Format format, Writer writer) {
+		this(profiler, format, writer, true);
+	}
+
+	private ProfileReporter(FrameProfiler profiler, Format format, Writer writer, boolean closeOnStop) {
+		this.profiler = profiler;
+		this.format = format;
+		this.out = new PrintWriter(writer);
+		this.closeOnStop = closeOnStop;
+
+		thread = new Thread(this, "profile-reporter");
+		thread.setDaemon(true);
+	}
+
+	public static ProfileReporter toConsole(FrameProfiler profiler) {
+		return new ProfileReporter(profiler, Format.TEXT, new OutputStreamWriter(System.out), false);
+	}
+
+	public static ProfileReporter toFile(FrameProfiler profiler, Format format, String filename) throws IOException {
+		return new ProfileReporter(profiler, format,
+				Files.newBufferedWriter(Paths.get(filename), Charset.forName("UTF-8")));
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		long[] record = new long[profiler.getRing().getRecordSize()];
+
+		if (format == Format.CSV)
+			writeCsvHeader();
+
+		while (running) {
+			drain(record);
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+
+		drain(record);
+		out.flush();
+	}
+
+	private void drain(long[] record) {
+		boolean wrote = false;
+		while (profiler.getRing().poll(record)) {
+			switch (format) {
+			case CSV: writeCsv(record); break;
+			case JSON: writeJson(record); break;
+			case TEXT: writeText(record); break;
+			}
+			wrote = true;
+		}
+		if (wrote)
+			out.flush();
+	}
+
+	private void writeCsvHeader() {
+		out.print("timestamp,frames,jitter_us");
+		for (int phase = 0; phase < profiler.getPhaseCount(); phase++) {
+			String name = profiler.getPhaseName(phase);
+			out.print("," + name + "_mean_us," + name + "_p50_us," + name + "_p95_us,"
+					+ name + "_p99_us," + name + "_max_us," + name + "_stddev_us");
+		}
+		out.println();
+	}
+
+	private void writeCsv(long[] record) {
+		out.print(record[FrameProfiler.TIMESTAMP]);
+		out.print(',');
+		out.print(record[FrameProfiler.FRAMES]);
+		out.print(',');
+		out.print(micros(record[FrameProfiler.JITTER]));
+		for (int phase = 0; phase < profiler.getPhaseCount(); phase++) {
+			int stats = FrameProfiler.HEADER_SIZE + phase * FrameProfiler.STATS_PER_PHASE;
+			for (int i = 0; i < FrameProfiler.STATS_PER_PHASE; i++) {
+				out.print(',');
+				out.print(micros(record[stats + i]));
+			}
+		}
+		out.println();
+	}
+
+	private void writeJson(long[] record) {
+		out.print("{\"timestamp\":" + record[FrameProfiler.TIMESTAMP]
+				+ ",\"frames\":" + record[FrameProfiler.FRAMES]
+				+ ",\"jitter_us\":" + micros(record[FrameProfiler.JITTER]));
+		for (int phase = 0; phase < profiler.getPhaseCount(); phase++) {
+			int stats = FrameProfiler.HEADER_SIZE + phase * FrameProfiler.STATS_PER_PHASE;
+			out.print(",\"" + profiler.getPhaseName(phase) + "\":{"
+					+ "\"mean_us\":" + micros(record[stats + FrameProfiler.MEAN])
+					+ ",\"p50_us\":" + micros(record[stats + FrameProfiler.P50])
+					+ ",\"p95_us\":" + micros(record[stats + FrameProfiler.P95])
+					+ ",\"p99_us\":" + micros(record[stats + FrameProfiler.P99])
+					+ ",\"max_us\":" + micros(record[stats + FrameProfiler.MAX])
+					+ ",\"stddev_us\":" + micros(record[stats + FrameProfiler.DEVIATION]) + "}");
+		}
+		out.println("}");
+	}
+
+	// fps, then p50 / p99 / max of every phase in milliseconds
+	private void writeText(long[] record) {
+		StringBuilder line = new StringBuilder();
+		line.append(record[FrameProfiler.FRAMES]).append(" frames");
+		for (int phase = 0; phase < profiler.getPhaseCount(); phase++) {
+			int stats = FrameProfiler.HEADER_SIZE + phase * FrameProfiler.STATS_PER_PHASE;
+			line.append(String.format(Locale.ROOT, " | %s %.2f / %.2f / %.2f ms", profiler.getPhaseName(phase),
+					record[stats + FrameProfiler.P50] / 1e6d,
+					record[stats + FrameProfiler.P99] / 1e6d,
+					record[stats + FrameProfiler.MAX] / 1e6d));
+		}
+		line.append(String.format(Locale.ROOT, " | jitter %.2f ms", record[FrameProfiler.JITTER] / 1e6d));
+		out.println(line);
+	}
+
+	// the root locale makes sure the decimal separator is always a dot
+	private static String micros(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1000.0d);
+	}
+
+	// writes out whatever is left in the ring, then stops the thread
+	public void stop() {
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (profiler.getRing().getDropped() > 0)
+			System.err.println(profiler.getRing().getDropped() + " profile records were dropped");
+		if (closeOnStop)
+			out.close();
+		else
+			out.flush();
+	}
+
+}
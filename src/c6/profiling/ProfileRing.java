@@ -0,0 +1,57 @@
+package c6.profiling;
+
+// a single producer, single consumer ring of fixed size records made of longs
+// the render thread writes, the reporter thread reads, no locks and no allocation
+// when the reader falls behind, new records are dropped and counted instead of blocking
+public class ProfileRing {
+	private final int capacity;
+	private final int recordSize;
+	private final long[] records;
+
+	// only the writer changes head, only the reader changes tail
+	private volatile long head, tail;
+	private volatile long dropped;
+
+	public ProfileRing(int capacity, int recordSize) {
+		this.capacity = capacity;
+		this.recordSize = recordSize;
+		this.records = new long[capacity * recordSize];
+	}
+
+	public int getRecordSize() {
+		return recordSize;
+	}
+
+	// returns the offset of the free slot in the backing array, or -1 if the ring is full
+	// the record becomes visible to the reader after publish()
+	int claim() {
+		if (head - tail >= capacity) {
+			dropped++;
+			return -1;
+		}
+		return (int) (head % capacity) * recordSize;
+	}
+
+	long[] array() {
+		return records;
+	}
+
+	void publish() {
+		head = head + 1;
+	}
+
+	// copies the oldest record into the given array, returns false if there is none
+	public boolean poll(long[] record) {
+		if (tail == head)
+			return false;
+
+		System.arraycopy(records, (int) (tail % capacity) * recordSize, record, 0, recordSize);
+		tail = tail + 1;
+		return true;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+}
@@ -0,0 +1,149 @@
+package c6.redraw;
+
+import org.lwjgl.opengl.GL11;
+
+// collects the parts of the window that changed, so a frame only clears and draws those
+// rectangles are in pixels from the top left corner of the window, like the text
+//
+// damage.mark(x, y, width, height);   // or markAll()
+// ... once per frame
+// if (damage.isDirty()) {
+//     boolean partial = damage.beginRepaint();  // scissors the clear and the draws to the damage
+//     ... clear and draw
+//     damage.endRepaint();
+//     glfwSwapBuffers(window);
+// }
+//
+// the target has to keep what isn't repainted: a framebuffer of its own does, bufferCount 1,
+// a window's back buffer after a swap only if the driver says so, e.g. with buffer age, then bufferCount
+// is that age and a region is repainted in that many frames in a row before every buffer shows it
+// GL itself doesn't promise anything about the back buffer, so draw into a framebuffer and copy all of it
+// the damage is a single bounding rectangle, two small regions far apart repaint everything between them
+public class DamageTracker {
+	private final int width, height;
+
+	// the bounds of this frame's damage and of the frames before it, the newest first,
+	// as left, top, right, bottom, empty while right <= left
+	private final int[][] history;
+
+	private final int[] repaint = new int[4];
+	private boolean scissored;
+	private long fullRepaints, partialRepaints, repaintedPixels;
+
+	public DamageTracker(int width, int height, int bufferCount) {
+		this.width = width;
+		this.height = height;
+		history = new int[bufferCount][4];
+	}
+
+	public void markAll() {
+		mark(0, 0, width, height);
+	}
+
+	public void mark(int x, int y, int w, int h) {
+		int left = Math.max(0, x), top = Math.max(0, y);
+		int right = Math.min(width, x + w), bottom = Math.min(height, y + h);
+		if (right <= left || bottom <= top)
+			return;
+
+		int[] damage = history[0];
+		if (isEmpty(damage)) {
+			damage[0] = left;
+			damage[1] = top;
+			damage[2] = right;
+			damage[3] = bottom;
+		} else {
+			damage[0] = Math.min(damage[0], left);
+			damage[1] = Math.min(damage[1], top);
+			damage[2] = Math.max(damage[2], right);
+			damage[3] = Math.max(damage[3], bottom);
+		}
+	}
+
+	private static boolean isEmpty(int[] bounds) {
+		return bounds[2] <= bounds[0];
+	}
+
+	// something changed, or a buffer doesn't show an older change yet
+	public boolean isDirty() {
+		for (int[] damage : history)
+			if (!isEmpty(damage))
+				return true;
+		return false;
+	}
+
+	// the union of this frame's damage and the frames the back buffer missed, the scissor test
+	// is only turned on if that isn't the whole window, returns whether it is on
+	public boolean beginRepaint() {
+		boolean empty = true;
+		for (int[] damage : history) {
+			if (isEmpty(damage))
+				continue;
+			if (empty) {
+				System.arraycopy(damage, 0, repaint, 0, 4);
+				empty = false;
+			} else {
+				repaint[0] = Math.min(repaint[0], damage[0]);
+				repaint[1] = Math.min(repaint[1], damage[1]);
+				repaint[2] = Math.max(repaint[2], damage[2]);
+				repaint[3] = Math.max(repaint[3], damage[3]);
+			}
+		}
+		if (empty) {
+			repaint[0] = 0;
+			repaint[1] = 0;
+			repaint[2] = width;
+			repaint[3] = height;
+		}
+		repaintedPixels += (long) (repaint[2] - repaint[0]) * (repaint[3] - repaint[1]);
+
+		if (repaint[0] == 0 && repaint[1] == 0 && repaint[2] == width && repaint[3] == height) {
+			fullRepaints++;
+			scissored = false;
+			return false;
+		}
+
+		// the scissor box starts at the bottom left, like everything else in OpenGL
+		GL11.glEnable(GL11.GL_SCISSOR_TEST);
+		GL11.glScissor(repaint[0], height - repaint[3], repaint[2] - repaint[0], repaint[3] - repaint[1]);
+		partialRepaints++;
+		scissored = true;
+		return true;
+	}
+
+	// the frame's damage becomes the oldest the next back buffer may have missed
+	public void endRepaint() {
+		if (scissored)
+			GL11.glDisable(GL11.GL_SCISSOR_TEST);
+
+		int[] oldest = history[history.length - 1];
+		System.arraycopy(history, 0, history, 1, history.length - 1);
+		oldest[0] = 0;
+		oldest[1] = 0;
+		oldest[2] = 0;
+		oldest[3] = 0;
+		history[0] = oldest;
+	}
+
+	public long getFullRepaints() {
+		return fullRepaints;
+	}
+
+	public long getPartialRepaints() {
+		return partialRepaints;
+	}
+
+	// all the pixels cleared and drawn so far, divided by the window's it is the number of full repaints
+	public long getRepaintedPixels() {
+		return repaintedPixels;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+}
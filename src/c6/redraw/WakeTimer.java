@@ -0,0 +1,84 @@
+package c6.redraw;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+// wakes a glfwWaitEvents() up at a given time, by posting an empty event from a thread of its own
+// the GLFW this is built against has no glfwWaitEventsTimeout(), that only came with GLFW 3.2,
+// glfwPostEmptyEvent() is the one GLFW call any thread may make
+//
+// timer.wakeAt(nextRefresh);
+// glfwWaitEvents(); // returns on input, or at nextRefresh at the latest
+//
+// only the earliest wake up is kept, a later one than what is already set changes nothing
+public class WakeTimer implements Runnable {
+	private static final long NONE = Long.MAX_VALUE;
+
+	private final Object lock = new Object();
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	private long wakeAt = NONE;
+	private int wakeUps;
+
+	public WakeTimer() {
+		thread = new Thread(this, "wake-timer");
+		thread.setDaemon(true);
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	// a System.nanoTime(), the next glfwWaitEvents() returns by then
+	public void wakeAt(long nanoTime) {
+		synchronized (lock) {
+			if (wakeAt == NONE || nanoTime - wakeAt < 0) {
+				wakeAt = nanoTime;
+				lock.notify();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				synchronized (lock) {
+					long now = System.nanoTime();
+					if (wakeAt == NONE) {
+						lock.wait();
+						continue;
+					}
+					if (wakeAt - now > 0) {
+						long wait = wakeAt - now;
+						lock.wait(wait / 1000000L, (int) (wait % 1000000L));
+						continue;
+					}
+					wakeAt = NONE;
+					wakeUps++;
+				}
+				glfwPostEmptyEvent();
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		}
+	}
+
+	// how often the timer had to wake the render thread up
+	public int getWakeUps() {
+		synchronized (lock) {
+			return wakeUps;
+		}
+	}
+
+	public void stop() {
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
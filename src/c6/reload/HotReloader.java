@@ -0,0 +1,267 @@
+package c6.reload;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL32;
+
+import c6.state.GLState;
+
+// watches the files of every reloadable and builds the changed ones again on a thread of its own,
+// in a hidden window whose context shares its objects with the render context
+// the new objects are swapped in by update() at the start of a frame, and only once the GPU
+// has finished building them, so the render loop never waits for a reload
+//
+// reloader.watch(new ReloadableProgram(pId, cache, "vertex.sh", "fragment.sh", layout));
+// reloader.start();
+// ... every frame
+// reloader.update();
+//
+// editors save in several steps, so a reload only starts once the files were quiet for a moment,
+// a file that doesn't compile or decode only prints the error, the old object stays in use
+public class HotReloader implements Runnable {
+	private static final long QUIET_NANOS = 100000000L;
+
+	private final GLState state;
+	private final long context;
+	private final WatchService watcher;
+	private final Thread thread;
+
+	private final Map<Path, List<Reloadable>> byFile = new HashMap<Path, List<Reloadable>>();
+	private final Set<Path> directories = new HashSet<Path>();
+
+	// built on the reload thread, waiting for their fence on the render thread
+	private final Queue<Build> built = new ConcurrentLinkedQueue<Build>();
+	private final List<Build> waiting = new ArrayList<Build>();
+
+	private volatile boolean running = true;
+	private volatile int failures;
+	private int reloads;
+
+	private static class Build {
+		final Reloadable reloadable;
+		final int id;
+		final long fence;
+
+		Build(Reloadable reloadable, int id, long fence) {
+			this.reloadable = reloadable;
+			this.id = id;
+			this.fence = fence;
+		}
+	}
+
+	// call it on the main thread, GLFW only creates windows there
+	public HotReloader(long sharedWindow, GLState state) throws IOException {
+		this.state = state;
+
+		glfwDefaultWindowHints();
+		glfwWindowHint(GLFW_VISIBLE, GL11.GL_FALSE);
+		context = glfwCreateWindow(1, 1, "hot reload", NULL, sharedWindow);
+		glfwDefaultWindowHints();
+		if (context == NULL)
+			throw new IllegalStateException("Could not create the shared context!");
+
+		watcher = FileSystems.getDefault().newWatchService();
+
+		thread = new Thread(this, "hot-reload");
+		thread.setDaemon(true);
+	}
+
+	public void watch(Reloadable reloadable) throws IOException {
+		synchronized (byFile) {
+			for (String filename : reloadable.getFiles()) {
+				Path file = Paths.get(filename).toAbsolutePath().normalize();
+
+				// the service only watches directories, the events name the file in it
+				if (directories.add(file.getParent()))
+					file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY);
+
+				List<Reloadable> reloadables = byFile.get(file);
+				if (reloadables == null) {
+					reloadables = new ArrayList<Reloadable>();
+					byFile.put(file, reloadables);
+				}
+				reloadables.add(reloadable);
+			}
+		}
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		glfwMakeContextCurrent(context);
+		GL.createCapabilities();
+
+		Set<Reloadable> dirty = new LinkedHashSet<Reloadable>();
+		long lastEvent = 0;
+
+		try {
+			while (running) {
+				WatchKey key = dirty.isEmpty() ? watcher.take() : watcher.poll(10, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					collect(key, dirty);
+					lastEvent = System.nanoTime();
+				} else if (System.nanoTime() - lastEvent >= QUIET_NANOS) {
+					buildAll(dirty);
+				}
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		} catch (ClosedWatchServiceException e) {
+			// stopped
+		} finally {
+			glfwMakeContextCurrent(NULL);
+		}
+	}
+
+	private void collect(WatchKey key, Set<Reloadable> dirty) {
+		Path directory = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			synchronized (byFile) {
+				// too many events at once, some were lost, so everything could have changed
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					for (List<Reloadable> reloadables : byFile.values())
+						dirty.addAll(reloadables);
+					continue;
+				}
+
+				List<Reloadable> reloadables = byFile.get(directory.resolve((Path) event.context()).normalize());
+				if (reloadables != null)
+					dirty.addAll(reloadables);
+			}
+		}
+		key.reset();
+	}
+
+	private void buildAll(Set<Reloadable> dirty) {
+		for (Iterator<Reloadable> it = dirty.iterator(); it.hasNext(); ) {
+			Reloadable reloadable = it.next();
+
+			// the last build isn't installed yet, it is tried again after the next frame
+			if (!reloadable.inFlight.compareAndSet(false, true))
+				continue;
+			it.remove();
+
+			long start = System.nanoTime();
+			try {
+				int id = reloadable.build();
+
+				// the fence has to be flushed from this context, the render thread can only flush its own
+				long fence = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+				GL11.glFlush();
+				built.add(new Build(reloadable, id, fence));
+				// a render loop that waits for events wouldn't get to update() otherwise
+				glfwPostEmptyEvent();
+
+				System.out.println(String.format(Locale.ROOT, "reloaded %s in %.1f ms",
+						reloadable.getName(), (System.nanoTime() - start) / 1e6d));
+			} catch (Exception e) {
+				reloadable.inFlight.set(false);
+				failures++;
+				System.err.println("Could not reload " + reloadable.getName() + ", keeping the old one: " + e.getMessage());
+			}
+		}
+	}
+
+	// installs the builds the GPU has finished, call it once per frame on the render thread
+	// returns how many were installed, textures may have been deleted and bound behind the state cache's back
+	public int update() {
+		Build build;
+		while ((build = built.poll()) != null)
+			waiting.add(build);
+
+		int installed = 0;
+		for (Iterator<Build> it = waiting.iterator(); it.hasNext(); ) {
+			build = it.next();
+
+			int result = GL32.glClientWaitSync(build.fence, 0, 0);
+			if (result == GL32.GL_TIMEOUT_EXPIRED)
+				continue; // checked again next frame
+
+			GL32.glDeleteSync(build.fence);
+			it.remove();
+
+			if (result == GL32.GL_WAIT_FAILED) {
+				build.reloadable.delete(build.id, state);
+				failures++;
+				System.err.println("Could not wait for the reload of " + build.reloadable.getName());
+			} else {
+				build.reloadable.install(build.id, state);
+				installed++;
+			}
+			build.reloadable.inFlight.set(false);
+		}
+
+		reloads += installed;
+		return installed;
+	}
+
+	// builds that are done on the reload thread but not installed yet, update() has to keep being called
+	public boolean isPending() {
+		return !waiting.isEmpty() || !built.isEmpty();
+	}
+
+	public int getReloads() {
+		return reloads;
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	// call it on the main thread, the builds that were never installed are deleted
+	public void cleanUp() {
+		running = false;
+		thread.interrupt();
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		Build build;
+		while ((build = built.poll()) != null)
+			waiting.add(build);
+		for (Build unused : waiting) {
+			GL32.glDeleteSync(unused.fence);
+			unused.reloadable.delete(unused.id, state);
+		}
+		waiting.clear();
+
+		glfwDestroyWindow(context);
+	}
+
+}
@@ -0,0 +1,38 @@
+package c6.reload;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import c6.state.GLState;
+
+// a GL object that is built from files and is built again when one of them changes
+//
+// build() runs on the reloader's thread, with a context that shares its objects with the render context,
+// install() and delete() run on the render thread, at the start of a frame
+// a reloadable is never built again until its last build is installed or thrown away,
+// so whatever build() leaves in its fields is still there when install() runs
+public abstract class Reloadable {
+	private final String[] files;
+	final AtomicBoolean inFlight = new AtomicBoolean();
+
+	protected Reloadable(String... files) {
+		this.files = files;
+	}
+
+	public String[] getFiles() {
+		return files;
+	}
+
+	// returns the new object, or throws if the files are broken, the old object is kept then
+	protected abstract int build() throws Exception;
+
+	// replaces the object in use with the new one and deletes the old one
+	protected abstract void install(int id, GLState state);
+
+	// deletes a new object that was never installed
+	protected abstract void delete(int id, GLState state);
+
+	public String getName() {
+		return files[0];
+	}
+
+}
@@ -0,0 +1,52 @@
+package c6.reload;
+
+import c6.shaders.ProgramCache;
+import c6.state.GLState;
+import c6.vertex.VertexLayout;
+
+// a shader program that is compiled and linked again when one of its sources changes,
+// through the program cache, so the binary of the new version is stored as well
+// and going back to an old version is only a binary load
+public class ReloadableProgram extends Reloadable {
+	private final ProgramCache cache;
+	private final String vertexFile, fragmentFile;
+	private final String[] attributes;
+	private int id;
+
+	// takes over a program that was already loaded from the same files
+	public ReloadableProgram(int id, ProgramCache cache, String vertexFile, String fragmentFile, String... attributes) {
+		super(vertexFile, fragmentFile);
+		this.id = id;
+		this.cache = cache;
+		this.vertexFile = vertexFile;
+		this.fragmentFile = fragmentFile;
+		this.attributes = attributes;
+	}
+
+	public ReloadableProgram(int id, ProgramCache cache, String vertexFile, String fragmentFile, VertexLayout... layouts) {
+		this(id, cache, vertexFile, fragmentFile, ProgramCache.getAttributes(layouts));
+	}
+
+	// the one to bind, it changes when a reload is installed
+	public int getId() {
+		return id;
+	}
+
+	@Override
+	protected int build() {
+		return cache.load(vertexFile, fragmentFile, attributes);
+	}
+
+	@Override
+	protected void install(int id, GLState state) {
+		int old = this.id;
+		this.id = id;
+		state.deleteProgram(old);
+	}
+
+	@Override
+	protected void delete(int id, GLState state) {
+		state.deleteProgram(id);
+	}
+
+}
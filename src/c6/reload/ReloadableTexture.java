@@ -0,0 +1,77 @@
+package c6.reload;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import de.matthiasmann.twl.utils.PNGDecoder.Format;
+
+import c6.state.GLState;
+import c6.textures.TextureHandle;
+import c6.textures.TextureManager;
+
+// a texture of the texture manager that is decoded and uploaded again when its file changes,
+// everyone holding the handle gets the new texture with the next getId()
+public class ReloadableTexture extends Reloadable {
+	private final TextureManager manager;
+	private final TextureHandle handle;
+	private int width, height;
+
+	public ReloadableTexture(TextureManager manager, TextureHandle handle) {
+		super(handle.getPath());
+		this.manager = manager;
+		this.handle = handle;
+	}
+
+	// the same texture as the async loader makes, but the pixels go through a direct buffer,
+	// this thread has nothing else to do while the driver copies them
+	@Override
+	protected int build() throws IOException {
+		ByteBuffer pixels;
+		InputStream in = new FileInputStream(handle.getPath());
+		try {
+			PNGDecoder decoder = new PNGDecoder(in);
+			width = decoder.getWidth();
+			height = decoder.getHeight();
+			pixels = BufferUtils.createByteBuffer(4 * width * height);
+			decoder.decode(pixels, width * 4, Format.RGBA);
+			pixels.flip();
+		} finally {
+			in.close();
+		}
+
+		int texId = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width, height, 0,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+		GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+		return texId;
+	}
+
+	// the manager deletes the old texture directly, like the loader, the caller invalidates the texture bindings
+	// a handle that isn't resident yet picks up the new file when its own load finishes
+	@Override
+	protected void install(int id, GLState state) {
+		if (!manager.replace(handle, id, width, height))
+			delete(id, state);
+	}
+
+	@Override
+	protected void delete(int id, GLState state) {
+		state.deleteTexture(id);
+	}
+
+}
@@ -0,0 +1,40 @@
+package c6.reload;
+
+import java.io.IOException;
+
+import c6.state.GLState;
+import c6.textures.TextureArrayLoader;
+
+// a texture array that is loaded again when any of its layers changes
+public class ReloadableTextureArray extends Reloadable {
+	private int id;
+
+	// takes over a texture array that was already loaded from the same files
+	public ReloadableTextureArray(int id, String... layers) {
+		super(layers);
+		this.id = id;
+	}
+
+	// the one to bind, it changes when a reload is installed
+	public int getId() {
+		return id;
+	}
+
+	@Override
+	protected int build() throws IOException {
+		return TextureArrayLoader.load(getFiles());
+	}
+
+	@Override
+	protected void install(int id, GLState state) {
+		int old = this.id;
+		this.id = id;
+		state.deleteTexture(old);
+	}
+
+	@Override
+	protected void delete(int id, GLState state) {
+		state.deleteTexture(id);
+	}
+
+}
@@ -0,0 +1,83 @@
+package c6.scene;
+
+// the six planes of a camera's view volume, taken straight from its view-projection matrix
+// (Gribb and Hartmann), a box is tested against them without building any geometry
+public class Frustum {
+	public static final int OUTSIDE = 0, INTERSECTS = 1, INSIDE = 2;
+
+	// one bit per plane, a box that is inside a plane has children that are inside it too,
+	// so a hierarchy only passes the planes its parent still crosses on to the children
+	public static final int ALL_PLANES = 0x3f;
+
+	// a, b, c, d of every plane, the normal points into the frustum
+	private final float[] planes = new float[24];
+	// where the coordinates of the corners furthest along and against every plane's normal are
+	// in a box of min x, y, z, max x, y, z, picked once here instead of for every box
+	private final int[] farCorners = new int[18], nearCorners = new int[18];
+
+	private final float[] box = new float[6];
+
+	// the matrix is column major, like the ones of c6.transform.Matrices
+	public Frustum set(float[] viewProjection) {
+		for (int i = 0; i < 3; i++) {
+			for (int side = 0; side < 2; side++) {
+				float sign = side == 0 ? 1.0f : -1.0f;
+				int plane = (i * 2 + side) * 4;
+
+				// row 3 plus or minus row i
+				for (int column = 0; column < 4; column++)
+					planes[plane + column] = viewProjection[column * 4 + 3] + sign * viewProjection[column * 4 + i];
+
+				float length = (float) Math.sqrt(planes[plane] * planes[plane] + planes[plane + 1] * planes[plane + 1]
+						+ planes[plane + 2] * planes[plane + 2]);
+				if (length > 0.0f)
+					for (int k = 0; k < 4; k++)
+						planes[plane + k] /= length;
+
+				for (int k = 0; k < 3; k++) {
+					farCorners[(i * 2 + side) * 3 + k] = planes[plane + k] > 0.0f ? 3 + k : k;
+					nearCorners[(i * 2 + side) * 3 + k] = planes[plane + k] > 0.0f ? k : 3 + k;
+				}
+			}
+		}
+		return this;
+	}
+
+	public int test(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		box[0] = minX;
+		box[1] = minY;
+		box[2] = minZ;
+		box[3] = maxX;
+		box[4] = maxY;
+		box[5] = maxZ;
+		int crossed = testPlanes(box, 0, ALL_PLANES);
+		return crossed < 0 ? OUTSIDE : crossed == 0 ? INSIDE : INTERSECTS;
+	}
+
+	// tests the box at the offset against the planes in the mask, returns the ones it crosses
+	// or -1 if it is outside, the box is min x, y, z, max x, y, z
+	// only the corner furthest along a plane's normal has to be checked to find out
+	// if the box is outside, the opposite corner tells if it is completely inside
+	public int testPlanes(float[] boxes, int offset, int mask) {
+		int crossed = 0;
+		for (int i = 0; i < 6; i++) {
+			if ((mask & (1 << i)) == 0)
+				continue;
+
+			int plane = i * 4, corner = i * 3;
+			float a = planes[plane], b = planes[plane + 1], c = planes[plane + 2], d = planes[plane + 3];
+
+			float far = a * boxes[offset + farCorners[corner]] + b * boxes[offset + farCorners[corner + 1]]
+					+ c * boxes[offset + farCorners[corner + 2]] + d;
+			if (far < 0.0f)
+				return -1;
+
+			float near = a * boxes[offset + nearCorners[corner]] + b * boxes[offset + nearCorners[corner + 1]]
+					+ c * boxes[offset + nearCorners[corner + 2]] + d;
+			if (near < 0.0f)
+				crossed |= 1 << i;
+		}
+		return crossed;
+	}
+
+}
@@ -0,0 +1,363 @@
+package c6.scene;
+
+import java.util.Arrays;
+
+// the bounding boxes of every object in the scene in a dynamic bounding volume hierarchy,
+// so finding the visible ones doesn't mean testing every single one of them
+//
+// SceneIndex scene = new SceneIndex(0.05f);
+// int proxy = scene.insert(object, minX, minY, minZ, maxX, maxY, maxZ);
+// scene.move(proxy, ...); // every frame for the objects that moved
+// int visibleCount = scene.cull(frustum.set(viewProjection), visible);
+//
+// the boxes in the tree are fattened by a margin, an object that moves a little stays
+// inside its box and costs nothing, one that leaves it is taken out and put back in
+// new leaves go where they grow the tree's surface area the least, and the tree is
+// rebalanced with rotations on the way back up, so it stays shallow however objects move
+//
+// a node's box and its links are stored next to each other in two arrays, so visiting
+// a node touches one or two cache lines, nothing is allocated unless the tree has to grow
+public class SceneIndex {
+	private static final int NULL = -1;
+
+	// min x, y, z, max x, y, z
+	private static final int BOUNDS = 6;
+	// parent (or the next free node), left, right, height (-1 when free, 0 for leaves), object
+	private static final int PARENT = 0, LEFT = 1, RIGHT = 2, HEIGHT = 3, OBJECT = 4, LINKS = 5;
+
+	private final float margin;
+
+	private int capacity;
+	private float[] bounds = new float[0];
+	private int[] links = new int[0];
+	private int root = NULL, freeList = NULL, nodeCount, leafCount;
+
+	private int[] stack = new int[64], masks = new int[64];
+
+	// the numbers of the last cull()
+	private int nodesVisited, culledCount;
+
+	public SceneIndex(float margin) {
+		this(margin, 256);
+	}
+
+	public SceneIndex(float margin, int initialObjects) {
+		this.margin = margin;
+		grow(Math.max(initialObjects * 2, 16));
+	}
+
+	private void grow(int newCapacity) {
+		bounds = Arrays.copyOf(bounds, newCapacity * BOUNDS);
+		links = Arrays.copyOf(links, newCapacity * LINKS);
+
+		// the new nodes go to the front of the free list
+		for (int node = newCapacity - 1; node >= capacity; node--) {
+			links[node * LINKS + PARENT] = freeList;
+			links[node * LINKS + HEIGHT] = -1;
+			freeList = node;
+		}
+		capacity = newCapacity;
+	}
+
+	private int allocateNode() {
+		if (freeList == NULL)
+			grow(capacity * 2);
+
+		int node = freeList;
+		int link = node * LINKS;
+		freeList = links[link + PARENT];
+		links[link + PARENT] = links[link + LEFT] = links[link + RIGHT] = links[link + OBJECT] = NULL;
+		links[link + HEIGHT] = 0;
+		nodeCount++;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		links[node * LINKS + PARENT] = freeList;
+		links[node * LINKS + HEIGHT] = -1;
+		freeList = node;
+		nodeCount--;
+	}
+
+	// returns the proxy of the object, moving and removing it takes the proxy
+	public int insert(int objectId, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		int leaf = allocateNode();
+		links[leaf * LINKS + OBJECT] = objectId;
+		setFatBounds(leaf, minX, minY, minZ, maxX, maxY, maxZ);
+		insertLeaf(leaf);
+		leafCount++;
+		return leaf;
+	}
+
+	public void remove(int proxy) {
+		checkLeaf(proxy);
+		removeLeaf(proxy);
+		freeNode(proxy);
+		leafCount--;
+	}
+
+	// returns true if the object left its fat box and was put back in with a new one
+	public boolean move(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		checkLeaf(proxy);
+		int b = proxy * BOUNDS;
+		if (bounds[b] <= minX && bounds[b + 1] <= minY && bounds[b + 2] <= minZ
+				&& bounds[b + 3] >= maxX && bounds[b + 4] >= maxY && bounds[b + 5] >= maxZ)
+			return false;
+
+		removeLeaf(proxy);
+		setFatBounds(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+		insertLeaf(proxy);
+		return true;
+	}
+
+	private void checkLeaf(int proxy) {
+		if (proxy < 0 || proxy >= capacity || links[proxy * LINKS + HEIGHT] != 0)
+			throw new IllegalArgumentException("There is no object with the proxy " + proxy + "!");
+	}
+
+	private void setFatBounds(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		int b = node * BOUNDS;
+		bounds[b] = minX - margin;
+		bounds[b + 1] = minY - margin;
+		bounds[b + 2] = minZ - margin;
+		bounds[b + 3] = maxX + margin;
+		bounds[b + 4] = maxY + margin;
+		bounds[b + 5] = maxZ + margin;
+	}
+
+	public int getObject(int proxy) {
+		return links[proxy * LINKS + OBJECT];
+	}
+
+	// writes the objects whose boxes are at least partly inside the frustum to visible,
+	// which has to have room for all of them, and returns how many there are
+	// every node is only tested against the planes its parent crossed, the leaves
+	// under a node that is completely inside are added without any test
+	public int cull(Frustum frustum, int[] visible) {
+		if (visible.length < leafCount)
+			throw new IllegalArgumentException("The visible array has room for " + visible.length
+					+ " objects, the scene has " + leafCount + "!");
+
+		int count = 0;
+		nodesVisited = 0;
+		if (root != NULL) {
+			int top = 0;
+			stack[top] = root;
+			masks[top++] = Frustum.ALL_PLANES;
+			while (top > 0) {
+				int node = stack[--top];
+				int mask = masks[top];
+				nodesVisited++;
+
+				if (mask != 0) {
+					mask = frustum.testPlanes(bounds, node * BOUNDS, mask);
+					if (mask < 0)
+						continue;
+				}
+
+				int link = node * LINKS;
+				if (links[link + HEIGHT] == 0) {
+					visible[count++] = links[link + OBJECT];
+				} else {
+					if (top + 2 > stack.length) {
+						stack = Arrays.copyOf(stack, stack.length * 2);
+						masks = Arrays.copyOf(masks, masks.length * 2);
+					}
+					stack[top] = links[link + LEFT];
+					masks[top++] = mask;
+					stack[top] = links[link + RIGHT];
+					masks[top++] = mask;
+				}
+			}
+		}
+
+		culledCount = leafCount - count;
+		return count;
+	}
+
+	// the surface area, how likely a random ray or frustum is to touch the box
+	private static float area(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		float dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+		return 2.0f * (dx * dy + dy * dz + dz * dx);
+	}
+
+	private float area(int node) {
+		int b = node * BOUNDS;
+		return area(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+	}
+
+	private float unionArea(int node, int other) {
+		int a = node * BOUNDS, b = other * BOUNDS;
+		return area(Math.min(bounds[a], bounds[b]), Math.min(bounds[a + 1], bounds[b + 1]),
+				Math.min(bounds[a + 2], bounds[b + 2]), Math.max(bounds[a + 3], bounds[b + 3]),
+				Math.max(bounds[a + 4], bounds[b + 4]), Math.max(bounds[a + 5], bounds[b + 5]));
+	}
+
+	private int height(int node) {
+		return links[node * LINKS + HEIGHT];
+	}
+
+	private void insertLeaf(int leaf) {
+		if (root == NULL) {
+			root = leaf;
+			links[leaf * LINKS + PARENT] = NULL;
+			return;
+		}
+
+		// walks down to the sibling that grows the tree the least, every node passed on
+		// the way grows by the same amount whichever child is picked, so that cost is carried down
+		int sibling = root;
+		while (height(sibling) > 0) {
+			int child1 = links[sibling * LINKS + LEFT], child2 = links[sibling * LINKS + RIGHT];
+
+			float area = area(sibling);
+			float combinedArea = unionArea(sibling, leaf);
+
+			// making a new parent for this node and the leaf
+			float cost = 2.0f * combinedArea;
+			// pushing the leaf further down
+			float inheritedCost = 2.0f * (combinedArea - area);
+
+			float cost1 = descendCost(child1, leaf) + inheritedCost;
+			float cost2 = descendCost(child2, leaf) + inheritedCost;
+
+			if (cost < cost1 && cost < cost2)
+				break;
+
+			sibling = cost1 < cost2 ? child1 : child2;
+		}
+
+		int oldParent = links[sibling * LINKS + PARENT];
+		int newParent = allocateNode();
+		links[newParent * LINKS + PARENT] = oldParent;
+		links[newParent * LINKS + LEFT] = sibling;
+		links[newParent * LINKS + RIGHT] = leaf;
+		links[sibling * LINKS + PARENT] = newParent;
+		links[leaf * LINKS + PARENT] = newParent;
+
+		if (oldParent == NULL)
+			root = newParent;
+		else
+			replaceChild(oldParent, sibling, newParent);
+
+		refit(newParent);
+	}
+
+	private float descendCost(int child, int leaf) {
+		if (height(child) == 0)
+			return unionArea(child, leaf);
+		return unionArea(child, leaf) - area(child);
+	}
+
+	private void replaceChild(int node, int oldChild, int newChild) {
+		if (links[node * LINKS + LEFT] == oldChild)
+			links[node * LINKS + LEFT] = newChild;
+		else
+			links[node * LINKS + RIGHT] = newChild;
+	}
+
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL;
+			return;
+		}
+
+		// the sibling takes the place of the parent
+		int oldParent = links[leaf * LINKS + PARENT];
+		int grandParent = links[oldParent * LINKS + PARENT];
+		int sibling = links[oldParent * LINKS + LEFT] == leaf
+				? links[oldParent * LINKS + RIGHT] : links[oldParent * LINKS + LEFT];
+
+		links[sibling * LINKS + PARENT] = grandParent;
+		if (grandParent == NULL) {
+			root = sibling;
+		} else {
+			replaceChild(grandParent, oldParent, sibling);
+			refit(grandParent);
+		}
+		freeNode(oldParent);
+	}
+
+	// fixes the boxes and heights from the node up to the root, balancing the tree on the way
+	private void refit(int node) {
+		while (node != NULL) {
+			node = balance(node);
+			updateBounds(node);
+			node = links[node * LINKS + PARENT];
+		}
+	}
+
+	// if one child is more than one level taller than the other, the taller one is rotated up,
+	// returns the node that is now where the given one was
+	private int balance(int node) {
+		if (height(node) < 2)
+			return node;
+
+		int left = links[node * LINKS + LEFT], right = links[node * LINKS + RIGHT];
+		int difference = height(right) - height(left);
+
+		if (difference > 1)
+			return rotateUp(node, right);
+		if (difference < -1)
+			return rotateUp(node, left);
+		return node;
+	}
+
+	// the taller child takes the node's place, the node keeps its other child and
+	// the shorter of the taller child's children
+	private int rotateUp(int node, int taller) {
+		int f = links[taller * LINKS + LEFT], g = links[taller * LINKS + RIGHT];
+		int keep = height(f) > height(g) ? f : g;
+		int give = keep == f ? g : f;
+
+		int grandParent = links[node * LINKS + PARENT];
+		links[taller * LINKS + PARENT] = grandParent;
+		if (grandParent == NULL)
+			root = taller;
+		else
+			replaceChild(grandParent, node, taller);
+
+		links[taller * LINKS + LEFT] = node;
+		links[taller * LINKS + RIGHT] = keep;
+		links[node * LINKS + PARENT] = taller;
+
+		replaceChild(node, taller, give);
+		links[give * LINKS + PARENT] = node;
+
+		updateBounds(node);
+		updateBounds(taller);
+		return taller;
+	}
+
+	private void updateBounds(int node) {
+		int left = links[node * LINKS + LEFT], right = links[node * LINKS + RIGHT];
+		links[node * LINKS + HEIGHT] = 1 + Math.max(height(left), height(right));
+
+		int b = node * BOUNDS, l = left * BOUNDS, r = right * BOUNDS;
+		for (int i = 0; i < 3; i++) {
+			bounds[b + i] = Math.min(bounds[l + i], bounds[r + i]);
+			bounds[b + 3 + i] = Math.max(bounds[l + 3 + i], bounds[r + 3 + i]);
+		}
+	}
+
+	public int size() {
+		return leafCount;
+	}
+
+	public int getHeight() {
+		return root == NULL ? 0 : height(root);
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public int getNodesVisited() {
+		return nodesVisited;
+	}
+
+	public int getCulledCount() {
+		return culledCount;
+	}
+
+}
@@ -0,0 +1,268 @@
+package c6.shaders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ARBGetProgramBinary;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
+
+import c6.vertex.VertexAttribute;
+import c6.vertex.VertexLayout;
+
+// builds shader programs and keeps the linked binaries on disk, so the next launch
+// can skip compiling and linking entirely
+//
+// the cache key is a hash of both sources, the attribute bindings and the driver,
+// a binary the driver rejects anyway (e.g. after an update) is simply rebuilt from source
+public class ProgramCache {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final Path directory;
+	private final boolean binariesSupported;
+	private final boolean core; // GL 4.1, otherwise the binaries go through ARB_get_program_binary
+
+	private volatile int binaryHits, compiles, rejectedBinaries;
+
+	public ProgramCache(String directory) {
+		this.directory = Paths.get(directory);
+
+		ContextCapabilities caps = GL.getCapabilities();
+		core = caps.OpenGL41;
+		binariesSupported = (caps.OpenGL41 || caps.GL_ARB_get_program_binary)
+				&& GL11.glGetInteger(GL41.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+	}
+
+	// binds the attributes of every layout to their locations,
+	// e.g. the per vertex and the per instance layout together
+	public int load(String vertexFile, String fragmentFile, VertexLayout... layouts) {
+		return load(vertexFile, fragmentFile, getAttributes(layouts));
+	}
+
+	// the names of the attributes of every layout, indexed by location
+	public static String[] getAttributes(VertexLayout... layouts) {
+		int locations = 0;
+		for (VertexLayout layout : layouts)
+			for (VertexAttribute attribute : layout.getAttributes())
+				locations = Math.max(locations, attribute.getLocation() + 1);
+
+		String[] attributes = new String[locations];
+		for (VertexLayout layout : layouts)
+			for (VertexAttribute attribute : layout.getAttributes())
+				attributes[attribute.getLocation()] = attribute.getName();
+		return attributes;
+	}
+
+	// the attributes are bound to locations 0, 1, 2... in the given order, null ones are skipped
+	// any thread with a current context can load, e.g. the hot reloader's
+	public int load(String vertexFile, String fragmentFile, String... attributes) {
+		String vertexSource = readSource(vertexFile);
+		String fragmentSource = readSource(fragmentFile);
+
+		Path binaryFile = directory.resolve(hash(vertexSource, fragmentSource, attributes) + ".bin");
+
+		if (binariesSupported && Files.isRegularFile(binaryFile)) {
+			int pId = loadBinary(binaryFile);
+			if (pId != 0) {
+				binaryHits++;
+				return pId;
+			}
+			rejectedBinaries++;
+		}
+
+		int pId = link(vertexFile, vertexSource, fragmentFile, fragmentSource, attributes);
+		compiles++;
+
+		if (binariesSupported)
+			storeBinary(pId, binaryFile);
+
+		return pId;
+	}
+
+	private int link(String vertexFile, String vertexSource,
+			String fragmentFile, String fragmentSource, String[] attributes) {
+		int vsId = compileShader(vertexFile, vertexSource, GL20.GL_VERTEX_SHADER);
+		int fsId;
+		try {
+			fsId = compileShader(fragmentFile, fragmentSource, GL20.GL_FRAGMENT_SHADER);
+		} catch (ShaderException e) {
+			GL20.glDeleteShader(vsId);
+			throw e;
+		}
+
+		int pId = GL20.glCreateProgram();
+		GL20.glAttachShader(pId, vsId);
+		GL20.glAttachShader(pId, fsId);
+
+		for (int i = 0; i < attributes.length; i++)
+			if (attributes[i] != null)
+				GL20.glBindAttribLocation(pId, i, attributes[i]);
+
+		// without this hint some drivers don't keep the binary around after linking
+		if (core)
+			GL41.glProgramParameteri(pId, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);
+		else if (binariesSupported)
+			ARBGetProgramBinary.glProgramParameteri(pId, ARBGetProgramBinary.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);
+
+		GL20.glLinkProgram(pId);
+
+		// the program keeps working after the shaders are gone
+		GL20.glDetachShader(pId, vsId);
+		GL20.glDetachShader(pId, fsId);
+		GL20.glDeleteShader(vsId);
+		GL20.glDeleteShader(fsId);
+
+		if (GL20.glGetProgrami(pId, GL20.GL_LINK_STATUS) != GL11.GL_TRUE) {
+			String log = getProgramInfoLog(pId);
+			GL20.glDeleteProgram(pId);
+			throw new ShaderException("Could not link " + vertexFile + " and " + fragmentFile + ":\n" + log);
+		}
+
+		return pId;
+	}
+
+	private int loadBinary(Path binaryFile) {
+		ByteBuffer binary;
+		int format;
+		try {
+			byte[] bytes = Files.readAllBytes(binaryFile);
+			if (bytes.length <= 4)
+				return 0;
+
+			binary = BufferUtils.createByteBuffer(bytes.length);
+			binary.put(bytes);
+			binary.flip();
+			format = binary.getInt();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 0;
+		}
+
+		int pId = GL20.glCreateProgram();
+		if (core)
+			GL41.glProgramBinary(pId, format, binary);
+		else
+			ARBGetProgramBinary.glProgramBinary(pId, format, binary);
+
+		if (GL20.glGetProgrami(pId, GL20.GL_LINK_STATUS) != GL11.GL_TRUE) {
+			GL20.glDeleteProgram(pId);
+			try {
+				Files.deleteIfExists(binaryFile);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return 0;
+		}
+
+		return pId;
+	}
+
+	// the file is the binary format followed by the binary itself
+	// failing to store it only costs a compile next time, so it is not fatal
+	private void storeBinary(int pId, Path binaryFile) {
+		int length = GL20.glGetProgrami(pId, GL41.GL_PROGRAM_BINARY_LENGTH);
+		if (length <= 0)
+			return;
+
+		IntBuffer written = BufferUtils.createIntBuffer(1);
+		IntBuffer format = BufferUtils.createIntBuffer(1);
+		ByteBuffer binary = BufferUtils.createByteBuffer(length);
+		if (core)
+			GL41.glGetProgramBinary(pId, written, format, binary);
+		else
+			ARBGetProgramBinary.glGetProgramBinary(pId, written, format, binary);
+		binary.limit(written.get(0));
+
+		// in native order, like the direct buffer loadBinary() reads it back with
+		byte[] bytes = new byte[4 + binary.remaining()];
+		ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder()).putInt(format.get(0)).put(binary);
+
+		try {
+			Files.createDirectories(binaryFile.getParent());
+			Files.write(binaryFile, bytes);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static String readSource(String filename) {
+		try {
+			return new String(Files.readAllBytes(Paths.get(filename)), UTF_8);
+		} catch (IOException e) {
+			throw new ShaderException("Could not read " + filename, e);
+		}
+	}
+
+	public static int compileShader(String name, CharSequence source, int type) {
+		int shaderId = GL20.glCreateShader(type);
+		GL20.glShaderSource(shaderId, source);
+		GL20.glCompileShader(shaderId);
+
+		if (GL20.glGetShaderi(shaderId, GL20.GL_COMPILE_STATUS) != GL11.GL_TRUE) {
+			String log = GL20.glGetShaderInfoLog(shaderId, GL20.glGetShaderi(shaderId, GL20.GL_INFO_LOG_LENGTH));
+			GL20.glDeleteShader(shaderId);
+			throw new ShaderException("Could not compile " + name + ":\n" + log);
+		}
+
+		return shaderId;
+	}
+
+	private static String getProgramInfoLog(int pId) {
+		return GL20.glGetProgramInfoLog(pId, GL20.glGetProgrami(pId, GL20.GL_INFO_LOG_LENGTH));
+	}
+
+	private static String hash(String vertexSource, String fragmentSource, String[] attributes) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			update(digest, GL11.glGetString(GL11.GL_VENDOR));
+			update(digest, GL11.glGetString(GL11.GL_RENDERER));
+			update(digest, GL11.glGetString(GL11.GL_VERSION));
+			update(digest, vertexSource);
+			update(digest, fragmentSource);
+			for (String attribute : attributes)
+				update(digest, attribute);
+
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest())
+				hex.append(String.format("%02x", b & 0xff));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// every part is terminated, so "ab" + "c" and "a" + "bc" hash differently
+	private static void update(MessageDigest digest, String part) {
+		digest.update(String.valueOf(part).getBytes(UTF_8));
+		digest.update((byte) 0);
+	}
+
+	public int getBinaryHits() {
+		return binaryHits;
+	}
+
+	public int getCompiles() {
+		return compiles;
+	}
+
+	public int getRejectedBinaries() {
+		return rejectedBinaries;
+	}
+
+	public boolean areBinariesSupported() {
+		return binariesSupported;
+	}
+
+}
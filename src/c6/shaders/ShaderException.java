@@ -0,0 +1,16 @@
+package c6.shaders;
+
+// thrown when a shader doesn't compile or a program doesn't link,
+// the message contains the driver's info log
+public class ShaderException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public ShaderException(String message) {
+		super(message);
+	}
+
+	public ShaderException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
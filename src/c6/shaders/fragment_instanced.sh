@@ -0,0 +1,12 @@
+#version 330
+
+uniform sampler2DArray texture_Diffuse;
+
+in vec4 pass_Color;
+in vec3 pass_TextureCoord;
+
+out vec4 out_Color;
+
+void main() {
+	out_Color = pass_Color * texture(texture_Diffuse, pass_TextureCoord);
+}
\ No newline at end of file
@@ -0,0 +1,22 @@
+#version 330
+
+in vec4 in_Position;
+in vec4 in_Color;
+in vec2 in_TextureCoord;
+
+// these advance once per instance, not once per vertex
+in vec2 in_Offset;
+in vec2 in_Scale;
+in vec4 in_Tint;
+in float in_Layer;
+
+out vec4 pass_Color;
+out vec3 pass_TextureCoord;
+
+void main() {
+	gl_Position = vec4(in_Position.xy * in_Scale + in_Offset, in_Position.zw);
+	
+	pass_Color = in_Color * in_Tint;
+	// the third coordinate selects the layer of the texture array
+	pass_TextureCoord = vec3(in_TextureCoord, in_Layer);
+}
\ No newline at end of file
@@ -0,0 +1,28 @@
+#version 330
+
+in vec4 in_Position;
+in vec4 in_Color;
+in vec2 in_TextureCoord;
+
+// these advance once per instance, in_Offset and in_Scale are
+// already part of the transform, so they aren't used here
+in vec4 in_Tint;
+in float in_Layer;
+
+// the model-view-projection matrix of the instance, one column per attribute
+in vec4 in_Transform0;
+in vec4 in_Transform1;
+in vec4 in_Transform2;
+in vec4 in_Transform3;
+
+out vec4 pass_Color;
+out vec3 pass_TextureCoord;
+
+void main() {
+	mat4 transform = mat4(in_Transform0, in_Transform1, in_Transform2, in_Transform3);
+	gl_Position = transform * in_Position;
+	
+	pass_Color = in_Color * in_Tint;
+	// the third coordinate selects the layer of the texture array
+	pass_TextureCoord = vec3(in_TextureCoord, in_Layer);
+}
@@ -0,0 +1,118 @@
+package c6.simulation;
+
+import java.util.concurrent.locks.LockSupport;
+
+// steps a simulation at a fixed rate, independent of the frame rate
+// and publishes a snapshot after every step
+//
+// either call advance() once per frame on the render thread, or start() it
+// on a thread of its own, then the frame only pays for reading the newest snapshot
+// and an expensive step no longer makes the frame longer
+public class FixedStepSimulation<S extends Snapshot> implements Runnable {
+	// when the simulation falls this far behind, the missed steps are dropped
+	// instead of trying to catch up, which would only make it fall further behind
+	private static final int MAX_STEPS_PER_ADVANCE = 5;
+
+	private final Simulation<S> simulation;
+	private final TripleBuffer<S> snapshots;
+	private final long stepNanos;
+
+	private long nextTick;
+	private volatile long steps, skippedSteps;
+
+	private Thread thread;
+	private volatile boolean running;
+
+	// three snapshots are needed, one being written, one being read and a spare
+	public FixedStepSimulation(Simulation<S> simulation, long stepNanos, S first, S second, S third) {
+		this.simulation = simulation;
+		this.stepNanos = stepNanos;
+
+		// until the first step, every snapshot shows the starting state
+		nextTick = System.nanoTime();
+		initialize(first);
+		initialize(second);
+		initialize(third);
+		snapshots = new TripleBuffer<S>(first, second, third);
+	}
+
+	private void initialize(S snapshot) {
+		simulation.snapshot(snapshot);
+		snapshot.stamp(nextTick, stepNanos);
+	}
+
+	// runs every step that is due by now, returns how many
+	public int advance(long now) {
+		int stepsRun = 0;
+		while (now - nextTick >= 0) {
+			if (stepsRun == MAX_STEPS_PER_ADVANCE) {
+				long behind = (now - nextTick) / stepNanos + 1;
+				skippedSteps += behind;
+				nextTick += behind * stepNanos;
+				break;
+			}
+
+			simulation.step(stepNanos / 1e9d);
+
+			S snapshot = snapshots.getWriteBuffer();
+			simulation.snapshot(snapshot);
+			snapshot.stamp(nextTick, stepNanos);
+			snapshots.publish();
+
+			nextTick += stepNanos;
+			steps++;
+			stepsRun++;
+		}
+		return stepsRun;
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this, "simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			advance(System.nanoTime());
+
+			long wait = nextTick - System.nanoTime();
+			if (wait > 0)
+				LockSupport.parkNanos(wait);
+		}
+	}
+
+	public void stop() {
+		if (thread == null)
+			return;
+
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	// the newest published snapshot, only call it from one thread
+	public S getSnapshot() {
+		return snapshots.getReadBuffer();
+	}
+
+	public long getSteps() {
+		return steps;
+	}
+
+	public long getSkippedSteps() {
+		return skippedSteps;
+	}
+
+	public boolean isThreaded() {
+		return thread != null;
+	}
+
+}
@@ -0,0 +1,13 @@
+package c6.simulation;
+
+// the part of a scene that changes over time, stepped by FixedStepSimulation
+// step() and snapshot() are always called from the same thread
+public interface Simulation<S extends Snapshot> {
+
+	// advances everything by exactly one step
+	void step(double seconds);
+
+	// copies what the renderer needs, the current and the previous state, into the snapshot
+	void snapshot(S target);
+
+}
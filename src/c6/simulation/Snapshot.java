@@ -0,0 +1,27 @@
+package c6.simulation;
+
+// the base of everything a simulation publishes for rendering
+// it remembers which tick it belongs to, so the renderer can tell
+// how far it is between this tick and the one before
+public abstract class Snapshot {
+	private long tickTime;
+	private long stepNanos = 1;
+
+	void stamp(long tickTime, long stepNanos) {
+		this.tickTime = tickTime;
+		this.stepNanos = stepNanos;
+	}
+
+	// the simulated time of the tick in System.nanoTime() terms
+	public long getTickTime() {
+		return tickTime;
+	}
+
+	// 0 at the tick of this snapshot, 1 a whole step later, so drawing
+	// previous + (current - previous) * alpha is always one step behind, but smooth
+	public float getAlpha(long now) {
+		float alpha = (float) (now - tickTime) / stepNanos;
+		return Math.min(Math.max(alpha, 0.0f), 1.0f);
+	}
+
+}
@@ -0,0 +1,43 @@
+package c6.simulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// hands objects from one writer thread to one reader thread without locks or copies
+//
+// the writer fills its buffer and publishes it, the reader always gets the newest
+// published one, neither of them ever waits for the other:
+// one buffer belongs to the writer, one to the reader, the third one is in the middle
+// and publishing or reading simply swaps with it
+public class TripleBuffer<T> {
+	private static final int INDEX = 3, FRESH = 4;
+
+	private final Object[] buffers;
+
+	// the index of the buffer in the middle, and whether it is newer than the reader's
+	private final AtomicInteger middle = new AtomicInteger(1);
+	private int back = 0;	// only touched by the writer
+	private int front = 2;	// only touched by the reader
+
+	public TripleBuffer(T first, T second, T third) {
+		buffers = new Object[] { first, second, third };
+	}
+
+	@SuppressWarnings("unchecked")
+	public T getWriteBuffer() {
+		return (T) buffers[back];
+	}
+
+	// makes the write buffer the newest one, the writer gets another one to fill
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & INDEX;
+	}
+
+	// the newest published buffer, it stays the reader's until the next call
+	@SuppressWarnings("unchecked")
+	public T getReadBuffer() {
+		if ((middle.get() & FRESH) != 0)
+			front = middle.getAndSet(front) & INDEX;
+		return (T) buffers[front];
+	}
+
+}
@@ -0,0 +1,245 @@
+package c6.state;
+
+import java.util.Arrays;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+// remembers what is bound and skips the calls that would not change anything,
+// so a render method can bind everything it needs without caring what was bound before
+// and without unbinding it afterwards, which is where most of the redundant calls come from
+//
+// it only knows about the calls that go through it, code that binds things directly
+// has to call invalidate() (or invalidateTextures()) afterwards
+//
+// the element buffer and the enabled attributes belong to the VAO in OpenGL,
+// so they are remembered for every VAO separately
+public class GLState {
+	private static final int UNKNOWN = -1;
+
+	private int program = UNKNOWN;
+	private int vertexArray = UNKNOWN;
+	private int arrayBuffer = UNKNOWN;
+	private int activeUnit = UNKNOWN;
+
+	// indexed by texture unit, grown when a higher unit is used
+	private int[] textures2D = new int[0];
+	private int[] textureArrays = new int[0];
+
+	// indexed by VAO id, the attribute masks have a bit for every attribute index
+	private int[] elementBuffers = new int[0];
+	private int[] enabledAttributes = new int[0];
+	private int[] knownAttributes = new int[0];
+
+	private int issued, elided;
+	private int issuedLastFrame, elidedLastFrame;
+
+	// call once per frame, the counters of the frame before are kept for reading
+	public void beginFrame() {
+		issuedLastFrame = issued;
+		elidedLastFrame = elided;
+		issued = 0;
+		elided = 0;
+	}
+
+	public void useProgram(int pId) {
+		if (program == pId) {
+			elided++;
+			return;
+		}
+		GL20.glUseProgram(pId);
+		program = pId;
+		issued++;
+	}
+
+	public void bindVertexArray(int vaoId) {
+		if (vertexArray == vaoId) {
+			elided++;
+			return;
+		}
+		GL30.glBindVertexArray(vaoId);
+		vertexArray = vaoId;
+		issued++;
+	}
+
+	// the element buffer is remembered for the bound VAO, every other target is passed through
+	public void bindBuffer(int target, int bufferId) {
+		if (target == GL15.GL_ARRAY_BUFFER) {
+			if (arrayBuffer == bufferId) {
+				elided++;
+				return;
+			}
+			arrayBuffer = bufferId;
+		} else if (target == GL15.GL_ELEMENT_ARRAY_BUFFER && vertexArray != UNKNOWN) {
+			ensureVertexArray(vertexArray);
+			if (elementBuffers[vertexArray] == bufferId) {
+				elided++;
+				return;
+			}
+			elementBuffers[vertexArray] = bufferId;
+		}
+		GL15.glBindBuffer(target, bufferId);
+		issued++;
+	}
+
+	// unit is GL_TEXTURE0, GL_TEXTURE1...
+	public void activeTexture(int unit) {
+		if (activeUnit == unit) {
+			elided++;
+			return;
+		}
+		GL13.glActiveTexture(unit);
+		activeUnit = unit;
+		issued++;
+	}
+
+	// 2D textures and texture arrays are remembered for the active unit, other targets are passed through
+	public void bindTexture(int target, int texId) {
+		int[] bound = null;
+		if (activeUnit != UNKNOWN) {
+			int unit = activeUnit - GL13.GL_TEXTURE0;
+			ensureUnit(unit);
+			if (target == GL11.GL_TEXTURE_2D)
+				bound = textures2D;
+			else if (target == GL30.GL_TEXTURE_2D_ARRAY)
+				bound = textureArrays;
+
+			if (bound != null) {
+				if (bound[unit] == texId) {
+					elided++;
+					return;
+				}
+				bound[unit] = texId;
+			}
+		}
+		GL11.glBindTexture(target, texId);
+		issued++;
+	}
+
+	public void enableVertexAttribArray(int index) {
+		setVertexAttribArray(index, true);
+	}
+
+	public void disableVertexAttribArray(int index) {
+		setVertexAttribArray(index, false);
+	}
+
+	private void setVertexAttribArray(int index, boolean enabled) {
+		if (vertexArray != UNKNOWN) {
+			ensureVertexArray(vertexArray);
+			int bit = 1 << index;
+			if ((knownAttributes[vertexArray] & bit) != 0
+					&& ((enabledAttributes[vertexArray] & bit) != 0) == enabled) {
+				elided++;
+				return;
+			}
+			knownAttributes[vertexArray] |= bit;
+			if (enabled)
+				enabledAttributes[vertexArray] |= bit;
+			else
+				enabledAttributes[vertexArray] &= ~bit;
+		}
+		if (enabled)
+			GL20.glEnableVertexAttribArray(index);
+		else
+			GL20.glDisableVertexAttribArray(index);
+		issued++;
+	}
+
+	// deleting an object unbinds it, so these keep the cache in sync with that,
+	// OpenGL also reuses the names, a stale entry could elide the bind of a new object
+	public void deleteProgram(int pId) {
+		if (program == pId)
+			program = 0;
+		GL20.glDeleteProgram(pId);
+		issued++;
+	}
+
+	public void deleteVertexArray(int vaoId) {
+		if (vertexArray == vaoId)
+			vertexArray = 0;
+		if (vaoId < elementBuffers.length) {
+			elementBuffers[vaoId] = UNKNOWN;
+			knownAttributes[vaoId] = 0;
+		}
+		GL30.glDeleteVertexArrays(vaoId);
+		issued++;
+	}
+
+	public void deleteBuffer(int bufferId) {
+		if (arrayBuffer == bufferId)
+			arrayBuffer = 0;
+		for (int i = 0; i < elementBuffers.length; i++)
+			if (elementBuffers[i] == bufferId)
+				elementBuffers[i] = UNKNOWN;
+		GL15.glDeleteBuffers(bufferId);
+		issued++;
+	}
+
+	public void deleteTexture(int texId) {
+		for (int i = 0; i < textures2D.length; i++) {
+			if (textures2D[i] == texId)
+				textures2D[i] = 0;
+			if (textureArrays[i] == texId)
+				textureArrays[i] = 0;
+		}
+		GL11.glDeleteTextures(texId);
+		issued++;
+	}
+
+	// forgets everything, the next call of every kind is issued again
+	public void invalidate() {
+		program = UNKNOWN;
+		vertexArray = UNKNOWN;
+		arrayBuffer = UNKNOWN;
+		Arrays.fill(elementBuffers, UNKNOWN);
+		Arrays.fill(knownAttributes, 0);
+		invalidateTextures();
+	}
+
+	// for code that binds or deletes textures directly, e.g. the texture loaders
+	public void invalidateTextures() {
+		activeUnit = UNKNOWN;
+		Arrays.fill(textures2D, UNKNOWN);
+		Arrays.fill(textureArrays, UNKNOWN);
+	}
+
+	private void ensureUnit(int unit) {
+		if (unit < textures2D.length)
+			return;
+		int length = textures2D.length;
+		textures2D = Arrays.copyOf(textures2D, unit + 1);
+		textureArrays = Arrays.copyOf(textureArrays, unit + 1);
+		Arrays.fill(textures2D, length, unit + 1, UNKNOWN);
+		Arrays.fill(textureArrays, length, unit + 1, UNKNOWN);
+	}
+
+	private void ensureVertexArray(int vaoId) {
+		if (vaoId < elementBuffers.length)
+			return;
+		int length = elementBuffers.length;
+		int newLength = Math.max(vaoId + 1, length * 2);
+		elementBuffers = Arrays.copyOf(elementBuffers, newLength);
+		enabledAttributes = Arrays.copyOf(enabledAttributes, newLength);
+		knownAttributes = Arrays.copyOf(knownAttributes, newLength);
+		Arrays.fill(elementBuffers, length, newLength, UNKNOWN);
+	}
+
+	// the calls that reached the driver in the last frame
+	public int getIssuedLastFrame() {
+		return issuedLastFrame;
+	}
+
+	// the calls that were skipped in the last frame, because they would not have changed anything
+	public int getElidedLastFrame() {
+		return elidedLastFrame;
+	}
+
+	public String getStats() {
+		return issuedLastFrame + " GL calls issued, " + elidedLastFrame + " elided";
+	}
+
+}
@@ -0,0 +1,121 @@
+package c6.text;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+
+// a glyph atlas of the printable ASCII characters, drawn once with java.awt
+// and uploaded as a single texture: white glyphs, the coverage is in the alpha channel
+// the font is monospaced, so every glyph has the same cell and advance
+public class BitmapFont {
+	public static final char FIRST = ' ', LAST = '~';
+	private static final int COLUMNS = 16;
+
+	private final int textureId;
+	private final int cellWidth, cellHeight;
+	private final int atlasWidth, atlasHeight;
+
+	// the glyphs are only drawn into an image, which works without a window system,
+	// an application that doesn't otherwise use AWT can start in headless mode, see DisplayManager.main()
+	public BitmapFont(int size) {
+		Font font = new Font(Font.MONOSPACED, Font.PLAIN, size);
+
+		// the metrics are only available from a graphics context
+		BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = scratch.createGraphics();
+		g.setFont(font);
+		FontMetrics metrics = g.getFontMetrics();
+		cellWidth = metrics.charWidth('M');
+		cellHeight = metrics.getHeight();
+		int ascent = metrics.getAscent();
+		g.dispose();
+
+		int glyphs = LAST - FIRST + 1;
+		atlasWidth = COLUMNS * cellWidth;
+		atlasHeight = (glyphs + COLUMNS - 1) / COLUMNS * cellHeight;
+
+		BufferedImage atlas = new BufferedImage(atlasWidth, atlasHeight, BufferedImage.TYPE_INT_ARGB);
+		g = atlas.createGraphics();
+		g.setFont(font);
+		g.setColor(Color.WHITE);
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		for (char c = FIRST; c <= LAST; c++) {
+			int i = c - FIRST;
+			g.drawString(String.valueOf(c), (i % COLUMNS) * cellWidth, (i / COLUMNS) * cellHeight + ascent);
+		}
+		g.dispose();
+
+		textureId = upload(atlas);
+	}
+
+	private static int upload(BufferedImage atlas) {
+		int width = atlas.getWidth(), height = atlas.getHeight();
+		int[] argb = atlas.getRGB(0, 0, width, height, null, 0, width);
+
+		ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+		for (int pixel : argb)
+			pixels.put((byte) 0xff).put((byte) 0xff).put((byte) 0xff).put((byte) (pixel >>> 24));
+		pixels.flip();
+
+		int texId = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, width, height, 0,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+
+		// text is drawn pixel for pixel, so there is no filtering and no mipmaps
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+
+		return texId;
+	}
+
+	public boolean hasGlyph(char c) {
+		return c >= FIRST && c <= LAST;
+	}
+
+	// the texture coordinates of the glyph's cell
+	public float getU0(char c) {
+		return (float) ((c - FIRST) % COLUMNS * cellWidth) / atlasWidth;
+	}
+
+	public float getV0(char c) {
+		return (float) ((c - FIRST) / COLUMNS * cellHeight) / atlasHeight;
+	}
+
+	public float getU1(char c) {
+		return getU0(c) + (float) cellWidth / atlasWidth;
+	}
+
+	public float getV1(char c) {
+		return getV0(c) + (float) cellHeight / atlasHeight;
+	}
+
+	public int getTextureId() {
+		return textureId;
+	}
+
+	public int getCellWidth() {
+		return cellWidth;
+	}
+
+	public int getCellHeight() {
+		return cellHeight;
+	}
+
+	public void cleanUp() {
+		GL11.glDeleteTextures(textureId);
+	}
+
+}
@@ -0,0 +1,229 @@
+package c6.text;
+
+import c6.profiling.Histogram;
+
+// frame rate, frame time percentiles, pacing, draw calls, GL calls, fence waits, culling, staging, texture memory
+// and the CPU and GPU time the frames cost in the corner of the window, the numbers are collected every frame
+// but the text only changes once a second, so it stays readable
+//
+// nothing is allocated after construction, the text is rebuilt in one of two StringBuilders,
+// the other one keeps the text before it, so a redraw on demand only has to cover the text if it changed
+public class StatsOverlay {
+	private static final long REFRESH_NANOS = 1000000000L;
+	private static final float X = 4.0f, Y = 4.0f;
+
+	private final TextBatch text;
+	private final Histogram frameTimes = new Histogram();
+	private StringBuilder lines = new StringBuilder(256), previous = new StringBuilder(256);
+	private boolean changed = true;
+
+	private long lastFrame, lastRefresh;
+	private int drawCalls, issuedCalls, elidedCalls;
+	private long textureBytes, textureBudget;
+	private int drawnObjects, culledObjects;
+	private long fenceWaitNanos, lastFenceWaitNanos;
+	private String pacingMode = "";
+	private int swapInterval;
+	private long jitterSum, pacedFrames, spunNanos, lastJitterSum, lastPacedFrames, lastSpunNanos;
+	private int frameStaging, frameStagingPeak, stackStagingPeak, stagingOverflows;
+	private boolean onDemand;
+	private long repaints, repaintedPixels, cpuNanos, gpuNanos, lastRepaints, lastRepaintedPixels, lastCpuNanos, lastGpuNanos;
+	private int windowPixels = 1;
+	private int idleWakeUps;
+
+	public StatsOverlay(TextBatch text) {
+		this.text = text;
+		lines.append("...");
+	}
+
+	public void beginFrame() {
+		long now = System.nanoTime();
+		if (lastFrame != 0)
+			frameTimes.record(now - lastFrame);
+		else if (lastRefresh == 0)
+			lastRefresh = now;
+		lastFrame = now;
+		refreshIfDue(now);
+	}
+
+	// a loop that draws on demand woke up without drawing, the text is still refreshed on time,
+	// but the time until the next frame isn't a frame time, the wake ups are shown on their own
+	public void idle() {
+		long now = System.nanoTime();
+		if (lastRefresh == 0)
+			lastRefresh = now;
+		lastFrame = 0;
+		idleWakeUps++;
+		refreshIfDue(now);
+	}
+
+	private void refreshIfDue(long now) {
+		if (now - lastRefresh >= REFRESH_NANOS) {
+			StringBuilder shown = previous;
+			previous = lines;
+			lines = shown;
+			refresh((now - lastRefresh) / 1e9d);
+			changed |= !contentEquals(lines, previous);
+			frameTimes.reset();
+			lastRefresh = now;
+		}
+	}
+
+	// when the text changes next, a loop that waits for events has to wake up by then
+	public long getNextRefresh() {
+		return lastRefresh + REFRESH_NANOS;
+	}
+
+	// true once after the text changed, the bounds are x, y, width and height in pixels from the top left
+	// and cover both the old and the new text, so a shorter line doesn't leave the end of the old one behind
+	public boolean pollDamage(int[] bounds) {
+		if (!changed)
+			return false;
+		changed = false;
+		bounds[0] = (int) X;
+		bounds[1] = (int) Y;
+		bounds[2] = Math.max(text.getWidth(lines), text.getWidth(previous));
+		bounds[3] = Math.max(text.getHeight(lines), text.getHeight(previous));
+		return true;
+	}
+
+	private static boolean contentEquals(CharSequence a, CharSequence b) {
+		if (a.length() != b.length())
+			return false;
+		for (int i = 0; i < a.length(); i++)
+			if (a.charAt(i) != b.charAt(i))
+				return false;
+		return true;
+	}
+
+	public void setDrawCalls(int drawCalls) {
+		this.drawCalls = drawCalls;
+	}
+
+	public void setGLCalls(int issued, int elided) {
+		this.issuedCalls = issued;
+		this.elidedCalls = elided;
+	}
+
+	public void setTextureMemory(long residentBytes, long budgetBytes) {
+		this.textureBytes = residentBytes;
+		this.textureBudget = budgetBytes;
+	}
+
+	// how long the stream buffers waited for the GPU in total, shown per second
+	// the overlay's own text batch is added in here
+	public void setFenceWait(long totalNanos) {
+		this.fenceWaitNanos = totalNanos;
+	}
+
+	// the pacer's totals so far, the jitter is shown per frame and the spinning per second
+	public void setPacing(String mode, int swapInterval, long jitterSum, long frames, long spunNanos) {
+		this.pacingMode = mode;
+		this.swapInterval = swapInterval;
+		this.jitterSum = jitterSum;
+		this.pacedFrames = frames;
+		this.spunNanos = spunNanos;
+	}
+
+	// the objects that passed and failed the last frame's visibility test
+	public void setCulling(int drawn, int culled) {
+		this.drawnObjects = drawn;
+		this.culledObjects = culled;
+	}
+
+	// what the frame arena holds right now and at most, the most the stack arena ever held,
+	// and how many allocations didn't fit into either
+	public void setStagingMemory(int frameBytes, int framePeak, int stackPeak, int overflows) {
+		this.frameStaging = frameBytes;
+		this.frameStagingPeak = framePeak;
+		this.stackStagingPeak = stackPeak;
+		this.stagingOverflows = overflows;
+	}
+
+	// totals so far: the frames that were drawn, how many pixels they cleared and drew,
+	// and the CPU time of the render thread and the GPU time of the frames, all shown per second
+	public void setActivity(boolean onDemand, long repaints, long repaintedPixels, int windowPixels,
+			long cpuNanos, long gpuNanos) {
+		this.onDemand = onDemand;
+		this.repaints = repaints;
+		this.repaintedPixels = repaintedPixels;
+		this.windowPixels = windowPixels;
+		this.cpuNanos = cpuNanos;
+		this.gpuNanos = gpuNanos;
+	}
+
+	private void refresh(double seconds) {
+		lines.setLength(0);
+		lines.append(Math.round(frameTimes.getCount() / seconds)).append(" fps, ");
+		appendMillis(frameTimes.getMean()).append(" ms\n");
+		lines.append("p50 ");
+		appendMillis(frameTimes.getPercentile(50.0d)).append(" p95 ");
+		appendMillis(frameTimes.getPercentile(95.0d)).append(" p99 ");
+		appendMillis(frameTimes.getPercentile(99.0d)).append(" ms\n");
+		long frames = pacedFrames - lastPacedFrames;
+		lines.append(pacingMode).append(" (interval ").append(swapInterval).append("), jitter ");
+		appendMillis(frames > 0 ? (double) (jitterSum - lastJitterSum) / frames : 0.0d).append(" ms, spin ");
+		appendMillis((spunNanos - lastSpunNanos) / seconds).append(" ms/s\n");
+		lastJitterSum = jitterSum;
+		lastPacedFrames = pacedFrames;
+		lastSpunNanos = spunNanos;
+		lines.append(drawCalls).append(" draws, ").append(issuedCalls).append(" GL calls, ")
+				.append(elidedCalls).append(" elided\n");
+		long fenceWait = fenceWaitNanos + text.getFenceWaitNanos();
+		lines.append("fence waits ");
+		appendMillis((fenceWait - lastFenceWaitNanos) / seconds).append(" ms/s\n");
+		lastFenceWaitNanos = fenceWait;
+		if (drawnObjects + culledObjects > 0)
+			lines.append(drawnObjects).append(" drawn, ").append(culledObjects).append(" culled\n");
+		lines.append("staging ");
+		appendFixed(frameStaging / 1048576.0d).append(" / ");
+		appendFixed(frameStagingPeak / 1048576.0d).append(" MB, stack ");
+		appendFixed(stackStagingPeak / 1048576.0d).append(" MB, ");
+		lines.append(stagingOverflows).append(" overflows\n");
+		lines.append(onDemand ? "on demand, " : "continuous, ").append(Math.round((repaints - lastRepaints) / seconds))
+				.append(" repaints/s, ");
+		appendFixed((double) (repaintedPixels - lastRepaintedPixels) / windowPixels / seconds).append(" windows/s, ")
+				.append(Math.round(idleWakeUps / seconds)).append(" idle wake ups/s\ncpu ");
+		idleWakeUps = 0;
+		appendFixed((cpuNanos - lastCpuNanos) / seconds / 1e7d).append(" %, gpu ");
+		appendMillis((gpuNanos - lastGpuNanos) / seconds).append(" ms/s\n");
+		lastRepaints = repaints;
+		lastRepaintedPixels = repaintedPixels;
+		lastCpuNanos = cpuNanos;
+		lastGpuNanos = gpuNanos;
+		lines.append("textures ");
+		appendFixed(textureBytes / 1048576.0d).append(" / ");
+		appendFixed(textureBudget / 1048576.0d).append(" MB");
+	}
+
+	private StringBuilder appendMillis(double nanos) {
+		return appendFixed(nanos / 1e6d);
+	}
+
+	// two decimals without going through String.format, which allocates
+	private StringBuilder appendFixed(double value) {
+		long hundredths = Math.round(value * 100.0d);
+		// the sign goes in front, the rest is formatted from the absolute value
+		if (hundredths < 0) {
+			lines.append('-');
+			hundredths = -hundredths;
+		}
+		lines.append(hundredths / 100).append('.');
+		long fraction = hundredths % 100;
+		if (fraction < 10)
+			lines.append('0');
+		return lines.append(fraction);
+	}
+
+	public void render(int programId) {
+		text.begin(programId);
+		text.draw(lines, X, Y, 1.0f, 1.0f, 0.0f, 1.0f);
+		text.end();
+	}
+
+	// the overlay's own draw calls of the last render()
+	public int getDrawCalls() {
+		return text.getDrawCalls();
+	}
+
+}
@@ -0,0 +1,94 @@
+package c6.text;
+
+import org.lwjgl.opengl.GL11;
+
+import c6.batch.SpriteBatch;
+import c6.state.GLState;
+
+// draws text with a bitmap font, every glyph is a quad of a sprite batch,
+// so a whole screen of text is a single draw call and nothing is allocated per frame
+// positions are in pixels from the top left corner of the window
+public class TextBatch {
+	private final BitmapFont font;
+	private final SpriteBatch batch;
+	private int screenWidth, screenHeight;
+
+	public TextBatch(BitmapFont font, int maxGlyphs, GLState state, int screenWidth, int screenHeight) {
+		this.font = font;
+		this.batch = new SpriteBatch(maxGlyphs, state);
+		setScreenSize(screenWidth, screenHeight);
+	}
+
+	public void setScreenSize(int screenWidth, int screenHeight) {
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+	}
+
+	// the program has to take the SpriteBatch layout, like the c6 shaders do
+	public void begin(int programId) {
+		GL11.glEnable(GL11.GL_BLEND);
+		GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		batch.resetStats();
+		batch.begin(programId);
+	}
+
+	// a new line starts below the first one, characters missing from the font are skipped
+	public void draw(CharSequence text, float x, float y, float r, float g, float b, float a) {
+		int texId = font.getTextureId();
+		float glyphWidth = 2.0f * font.getCellWidth() / screenWidth;
+		float glyphHeight = 2.0f * font.getCellHeight() / screenHeight;
+
+		float left = x * 2.0f / screenWidth - 1.0f;
+		float penX = left, penY = 1.0f - y * 2.0f / screenHeight;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\n') {
+				penX = left;
+				penY -= glyphHeight;
+				continue;
+			}
+			if (c != ' ' && font.hasGlyph(c))
+				batch.draw(texId, penX, penY, glyphWidth, glyphHeight, r, g, b, a,
+						font.getU0(c), font.getV0(c), font.getU1(c), font.getV1(c));
+			penX += glyphWidth;
+		}
+	}
+
+	// the size of the text in pixels, laid out like draw() does it
+	public int getWidth(CharSequence text) {
+		int longest = 0, length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n')
+				length = 0;
+			else
+				longest = Math.max(longest, ++length);
+		}
+		return longest * font.getCellWidth();
+	}
+
+	public int getHeight(CharSequence text) {
+		int lines = 1;
+		for (int i = 0; i < text.length(); i++)
+			if (text.charAt(i) == '\n')
+				lines++;
+		return lines * font.getCellHeight();
+	}
+
+	public void end() {
+		batch.end();
+		GL11.glDisable(GL11.GL_BLEND);
+	}
+
+	public int getDrawCalls() {
+		return batch.getDrawCalls();
+	}
+
+	public long getFenceWaitNanos() {
+		return batch.getFenceWaitNanos();
+	}
+
+	public void cleanUp() {
+		batch.cleanUp();
+	}
+
+}
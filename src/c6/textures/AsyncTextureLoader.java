@@ -0,0 +1,374 @@
+package c6.textures;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import de.matthiasmann.twl.utils.PNGDecoder.Format;
+
+// loads PNG textures without blocking the render thread
+//
+// 1. a worker reads the file, hashes its content and reads the PNG header to find out the size
+// 2. the render thread creates a pixel buffer object of that size and maps it
+// 3. the worker decodes the image straight into the mapped memory
+// 4. the render thread unmaps it and lets OpenGL copy it into the texture,
+//    but only as many bytes per frame as the upload budget allows,
+//    if the buffer's contents were lost in the meantime it goes back to 1, once
+//
+// every GL call happens in update(), which has to be called once per frame on the render thread
+// a texture whose header came in stays unmapped until the next update(), so it can still be cancel()ed,
+// e.g. by the texture manager once the hash shows it is a copy of a texture it already has
+public class AsyncTextureLoader {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final int maxStagingBytes;
+	private final int uploadBudgetBytes;
+
+	private final ExecutorService workers;
+
+	private final Queue<Job> headerQueue = new ConcurrentLinkedQueue<Job>();
+	private final Queue<Job> decodedQueue = new ConcurrentLinkedQueue<Job>();
+	private final Queue<Job> waitingForStaging = new ArrayDeque<Job>();
+	private final List<Job> decoding = new ArrayList<Job>();
+
+	private final int placeholderId;
+	private int stagingBytes;
+	private int pending;
+	private int uploadedLastFrame;
+
+	private static class Job {
+		final TextureHandle handle;
+		String hash;
+		InputStream in;
+		PNGDecoder decoder;
+		int width, height;
+		int pboId;
+		ByteBuffer staging;
+		boolean retried;
+		volatile boolean failed;
+
+		Job(TextureHandle handle) {
+			this.handle = handle;
+		}
+
+		int getSizeInBytes() {
+			return 4 * width * height;
+		}
+	}
+
+	// a step of a job on a worker, cleanUp() gets the ones that never ran back from the executor
+	private class Task implements Runnable {
+		final Job job;
+		final boolean decode;
+
+		Task(Job job, boolean decode) {
+			this.job = job;
+			this.decode = decode;
+		}
+
+		@Override
+		public void run() {
+			if (decode)
+				decode(job);
+			else
+				readHeader(job);
+		}
+	}
+
+	public AsyncTextureLoader(int workerCount, int maxStagingBytes, int uploadBudgetBytes) {
+		this.maxStagingBytes = maxStagingBytes;
+		this.uploadBudgetBytes = uploadBudgetBytes;
+
+		workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+			private int count = 0;
+
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "texture-decoder-" + count++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		placeholderId = createPlaceholder();
+	}
+
+	// a single grey texel, so unfinished textures are visible but not distracting
+	private static int createPlaceholder() {
+		ByteBuffer texel = BufferUtils.createByteBuffer(4);
+		texel.put((byte) 128).put((byte) 128).put((byte) 128).put((byte) 255);
+		texel.flip();
+
+		int texId = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, 1, 1, 0,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, texel);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+		return texId;
+	}
+
+	// returns immediately, the handle points to the placeholder until the texture is resident
+	public TextureHandle load(String filename) {
+		final Job job = new Job(new TextureHandle(filename, placeholderId));
+		pending++;
+
+		workers.execute(new Task(job, false));
+
+		return job.handle;
+	}
+
+	private void readHeader(Job job) {
+		try {
+			// the whole file is read once, for the hash and the decoder
+			byte[] bytes = Files.readAllBytes(Paths.get(job.handle.getPath()));
+			job.hash = hash(bytes);
+			job.in = new ByteArrayInputStream(bytes);
+			job.decoder = new PNGDecoder(job.in);
+			job.width = job.decoder.getWidth();
+			job.height = job.decoder.getHeight();
+		} catch (IOException e) {
+			e.printStackTrace();
+			job.failed = true;
+		}
+		headerQueue.add(job);
+	}
+
+	// SHA-1 in hex, without a String.format per byte
+	private static String hash(byte[] bytes) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+			char[] hex = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+				hex[2 * i + 1] = HEX[digest[i] & 0xf];
+			}
+			return new String(hex);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void decode(Job job) {
+		try {
+			job.decoder.decode(job.staging, job.width * 4, Format.RGBA);
+		} catch (IOException e) {
+			e.printStackTrace();
+			job.failed = true;
+		} finally {
+			closeQuietly(job);
+		}
+		decodedQueue.add(job);
+	}
+
+	private static void closeQuietly(Job job) {
+		try {
+			if (job.in != null)
+				job.in.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		job.in = null;
+		job.decoder = null;
+	}
+
+	public void update() {
+		Job job;
+
+		// map as many staging buffers as the limit allows, but always let one through,
+		// otherwise a single texture bigger than the limit would never load
+		while ((job = waitingForStaging.peek()) != null
+				&& (stagingBytes == 0 || stagingBytes + job.getSizeInBytes() <= maxStagingBytes)) {
+			waitingForStaging.poll();
+			mapStaging(job);
+		}
+
+		uploadedLastFrame = 0;
+		while (uploadedLastFrame < uploadBudgetBytes && (job = decodedQueue.poll()) != null) {
+			decoding.remove(job);
+			boolean lost = !job.failed && !upload(job);
+			releaseStaging(job);
+			if (lost && !job.retried) {
+				// the driver lost what was decoded into the buffer, e.g. on a display mode switch,
+				// the file is read and decoded once more
+				job.retried = true;
+				workers.execute(new Task(job, false));
+			} else {
+				if (lost) {
+					System.err.println("The staging buffer for " + job.handle.getPath() + " was lost twice");
+					job.failed = true;
+				}
+				finish(job);
+			}
+		}
+
+		// mapped next time, until then the texture can be cancelled without having cost anything
+		while ((job = headerQueue.poll()) != null) {
+			if (job.failed) {
+				finish(job);
+			} else {
+				job.handle.setContentHash(job.hash);
+				waitingForStaging.add(job);
+			}
+		}
+	}
+
+	// stops loading a texture whose header is in, the handle stays on the placeholder and is not failed
+	// returns false if it is past that, then it loads as usual
+	public boolean cancel(TextureHandle handle) {
+		for (Iterator<Job> it = waitingForStaging.iterator(); it.hasNext(); ) {
+			Job job = it.next();
+			if (job.handle == handle) {
+				it.remove();
+				closeQuietly(job);
+				pending--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void mapStaging(final Job job) {
+		job.pboId = GL15.glGenBuffers();
+		GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, job.pboId);
+		GL15.glBufferData(GL21.GL_PIXEL_UNPACK_BUFFER, job.getSizeInBytes(), GL15.GL_STREAM_DRAW);
+		job.staging = GL30.glMapBufferRange(GL21.GL_PIXEL_UNPACK_BUFFER, 0, job.getSizeInBytes(),
+				GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_INVALIDATE_BUFFER_BIT, null);
+		GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+
+		stagingBytes += job.getSizeInBytes();
+		decoding.add(job);
+
+		if (job.staging == null) {
+			System.err.println("Could not map staging buffer for " + job.handle.getPath());
+			job.failed = true;
+			closeQuietly(job);
+			decodedQueue.add(job);
+			return;
+		}
+
+		workers.execute(new Task(job, true));
+	}
+
+	// returns false if the buffer's contents were lost while it was mapped, nothing is uploaded then
+	private boolean upload(Job job) {
+		GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, job.pboId);
+		boolean intact = GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
+		job.staging = null;
+		if (!intact) {
+			GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+			return false;
+		}
+
+		int texId = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+
+		// with a pixel unpack buffer bound the last argument is an offset into it,
+		// so the copy happens inside the driver, not through the JNI boundary
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, job.width, job.height, 0,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, 0);
+		GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+		GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+
+		job.handle.makeResident(texId, job.width, job.height, TextureHandle.getMipChainSize(job.width, job.height, 4));
+		uploadedLastFrame += job.getSizeInBytes();
+		return true;
+	}
+
+	private void releaseStaging(Job job) {
+		if (job.staging != null) {
+			GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, job.pboId);
+			GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
+			GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+			job.staging = null;
+		}
+		GL15.glDeleteBuffers(job.pboId);
+		stagingBytes -= job.getSizeInBytes();
+	}
+
+	private void finish(Job job) {
+		if (job.failed)
+			job.handle.fail();
+		pending--;
+	}
+
+	public int getPendingCount() {
+		return pending;
+	}
+
+	public int getUploadedBytesLastFrame() {
+		return uploadedLastFrame;
+	}
+
+	public int getPlaceholderId() {
+		return placeholderId;
+	}
+
+	// the textures handed out are owned by the caller, only the loader's own objects are deleted here
+	public void cleanUp() {
+		// the decodes that never started still hold their file's stream
+		for (Runnable task : workers.shutdownNow())
+			closeQuietly(((Task) task).job);
+
+		// a worker may still be writing into a mapped buffer, the memory stays valid
+		// until it is unmapped, so we only unmap after the workers are gone
+		boolean terminated = false;
+		try {
+			terminated = workers.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (Job job : waitingForStaging)
+			closeQuietly(job);
+		waitingForStaging.clear();
+		Job job;
+		while ((job = headerQueue.poll()) != null)
+			closeQuietly(job);
+
+		// better to leave the buffers to the context's destruction than to pull them from under a decoder
+		if (terminated) {
+			for (Job decoded : decoding)
+				releaseStaging(decoded);
+		} else {
+			System.err.println("The texture decoders didn't stop, " + decoding.size() + " staging buffers are left mapped");
+		}
+		decoding.clear();
+		decodedQueue.clear();
+
+		GL11.glDeleteTextures(placeholderId);
+	}
+
+}
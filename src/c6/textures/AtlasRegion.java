@@ -0,0 +1,83 @@
+package c6.textures;
+
+// where one image ended up in a texture atlas
+// the texture coordinates of the whole image (0 to 1) map into the region
+// with a scale and an offset: u' = u * scaleU + offsetU
+public class AtlasRegion {
+	private final String path;
+	private final int page;
+	private final int x, y, width, height;
+	private float u0, v0, u1, v1;
+	private int textureId;
+
+	AtlasRegion(String path, int page, int x, int y, int width, int height) {
+		this.path = path;
+		this.page = page;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+
+	void upload(int textureId, int pageWidth, int pageHeight) {
+		this.textureId = textureId;
+		u0 = (float) x / pageWidth;
+		v0 = (float) y / pageHeight;
+		u1 = (float) (x + width) / pageWidth;
+		v1 = (float) (y + height) / pageHeight;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public int getPage() {
+		return page;
+	}
+
+	public int getTextureId() {
+		return textureId;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public float getU0() {
+		return u0;
+	}
+
+	public float getV0() {
+		return v0;
+	}
+
+	public float getU1() {
+		return u1;
+	}
+
+	public float getV1() {
+		return v1;
+	}
+
+	public float getScaleU() {
+		return u1 - u0;
+	}
+
+	public float getScaleV() {
+		return v1 - v0;
+	}
+
+	// maps a texture coordinate of the original image into the atlas page
+	public float mapU(float u) {
+		return u0 + u * (u1 - u0);
+	}
+
+	public float mapV(float v) {
+		return v0 + v * (v1 - v0);
+	}
+
+}
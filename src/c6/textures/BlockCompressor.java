@@ -0,0 +1,223 @@
+package c6.textures;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// compresses RGBA images into S3TC blocks, every 4x4 pixels become 8 bytes (BC1 / DXT1)
+// or 16 bytes with alpha (BC3 / DXT5), instead of 64 bytes uncompressed
+//
+// the blocks are independent, so the rows of blocks are split across the fork-join pool
+// the endpoints are the inset bounding box of the block's colors, the diagonal is
+// picked by the sign of the covariance, which is fast and good enough for textures
+public class BlockCompressor {
+	// rows of blocks a single task compresses without splitting further
+	private static final int ROWS_PER_TASK = 4;
+
+	public static boolean hasAlpha(byte[] rgba) {
+		for (int i = 3; i < rgba.length; i += 4)
+			if (rgba[i] != (byte) 0xff)
+				return true;
+		return false;
+	}
+
+	public static int getCompressedSize(int width, int height, boolean alpha) {
+		return ((width + 3) / 4) * ((height + 3) / 4) * (alpha ? 16 : 8);
+	}
+
+	// BC3 if alpha is true, BC1 otherwise
+	public static byte[] compress(byte[] rgba, int width, int height, boolean alpha) {
+		byte[] blocks = new byte[getCompressedSize(width, height, alpha)];
+		int blockRows = (height + 3) / 4;
+		ForkJoinPool.commonPool().invoke(new CompressTask(rgba, width, height, alpha, blocks, 0, blockRows));
+		return blocks;
+	}
+
+	private static class CompressTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] rgba, blocks;
+		private final int width, height;
+		private final boolean alpha;
+		private final int firstRow, lastRow;
+
+		CompressTask(byte[] rgba, int width, int height, boolean alpha, byte[] blocks, int firstRow, int lastRow) {
+			this.rgba = rgba;
+			this.width = width;
+			this.height = height;
+			this.alpha = alpha;
+			this.blocks = blocks;
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (lastRow - firstRow > ROWS_PER_TASK) {
+				int middle = (firstRow + lastRow) >>> 1;
+				invokeAll(new CompressTask(rgba, width, height, alpha, blocks, firstRow, middle),
+						new CompressTask(rgba, width, height, alpha, blocks, middle, lastRow));
+				return;
+			}
+
+			int blockColumns = (width + 3) / 4;
+			int blockSize = alpha ? 16 : 8;
+			byte[] block = new byte[64];
+			for (int row = firstRow; row < lastRow; row++) {
+				for (int column = 0; column < blockColumns; column++) {
+					fetchBlock(rgba, width, height, column * 4, row * 4, block);
+					int offset = (row * blockColumns + column) * blockSize;
+					if (alpha) {
+						compressAlpha(block, blocks, offset);
+						compressColor(block, blocks, offset + 8);
+					} else {
+						compressColor(block, blocks, offset);
+					}
+				}
+			}
+		}
+	}
+
+	// blocks at the right and bottom edge repeat the last column and row
+	private static void fetchBlock(byte[] rgba, int width, int height, int x, int y, byte[] block) {
+		for (int by = 0; by < 4; by++) {
+			int sourceY = Math.min(y + by, height - 1);
+			for (int bx = 0; bx < 4; bx++) {
+				int sourceX = Math.min(x + bx, width - 1);
+				System.arraycopy(rgba, (sourceY * width + sourceX) * 4, block, (by * 4 + bx) * 4, 4);
+			}
+		}
+	}
+
+	private static void compressColor(byte[] block, byte[] out, int offset) {
+		int[] min = { 255, 255, 255 }, max = { 0, 0, 0 };
+		int[] sum = new int[3];
+		for (int i = 0; i < 16; i++) {
+			for (int c = 0; c < 3; c++) {
+				int value = block[i * 4 + c] & 0xff;
+				min[c] = Math.min(min[c], value);
+				max[c] = Math.max(max[c], value);
+				sum[c] += value;
+			}
+		}
+
+		// the bounding box has four diagonals, the covariance with red tells which one the colors follow
+		int covarianceGreen = 0, covarianceBlue = 0;
+		for (int i = 0; i < 16; i++) {
+			int red = (block[i * 4] & 0xff) * 16 - sum[0];
+			covarianceGreen += red * ((block[i * 4 + 1] & 0xff) * 16 - sum[1]);
+			covarianceBlue += red * ((block[i * 4 + 2] & 0xff) * 16 - sum[2]);
+		}
+		if (covarianceGreen < 0)
+			swap(min, max, 1);
+		if (covarianceBlue < 0)
+			swap(min, max, 2);
+
+		// moving the endpoints inwards by 1/16 of the range lowers the average error
+		for (int c = 0; c < 3; c++) {
+			int inset = (max[c] - min[c]) / 16;
+			max[c] -= inset;
+			min[c] += inset;
+		}
+
+		int color0 = to565(max), color1 = to565(min);
+		if (color0 < color1) {
+			int swap = color0;
+			color0 = color1;
+			color1 = swap;
+		}
+
+		int indices = 0;
+		if (color0 != color1) {
+			// color0 > color1 selects the 4 color mode: c0, c1, 2/3 c0 + 1/3 c1, 1/3 c0 + 2/3 c1
+			int[][] palette = new int[4][3];
+			from565(color0, palette[0]);
+			from565(color1, palette[1]);
+			for (int c = 0; c < 3; c++) {
+				palette[2][c] = (2 * palette[0][c] + palette[1][c]) / 3;
+				palette[3][c] = (palette[0][c] + 2 * palette[1][c]) / 3;
+			}
+
+			for (int i = 0; i < 16; i++) {
+				int best = 0, bestDistance = Integer.MAX_VALUE;
+				for (int p = 0; p < 4; p++) {
+					int distance = 0;
+					for (int c = 0; c < 3; c++) {
+						int d = (block[i * 4 + c] & 0xff) - palette[p][c];
+						distance += d * d;
+					}
+					if (distance < bestDistance) {
+						bestDistance = distance;
+						best = p;
+					}
+				}
+				indices |= best << (i * 2);
+			}
+		}
+
+		// everything is little endian
+		out[offset] = (byte) color0;
+		out[offset + 1] = (byte) (color0 >>> 8);
+		out[offset + 2] = (byte) color1;
+		out[offset + 3] = (byte) (color1 >>> 8);
+		out[offset + 4] = (byte) indices;
+		out[offset + 5] = (byte) (indices >>> 8);
+		out[offset + 6] = (byte) (indices >>> 16);
+		out[offset + 7] = (byte) (indices >>> 24);
+	}
+
+	// alpha0 > alpha1 selects 8 values: alpha0, alpha1 and 6 steps in between
+	private static void compressAlpha(byte[] block, byte[] out, int offset) {
+		int alpha0 = 0, alpha1 = 255;
+		for (int i = 0; i < 16; i++) {
+			int alpha = block[i * 4 + 3] & 0xff;
+			alpha0 = Math.max(alpha0, alpha);
+			alpha1 = Math.min(alpha1, alpha);
+		}
+
+		long indices = 0;
+		if (alpha0 != alpha1) {
+			int[] palette = new int[8];
+			palette[0] = alpha0;
+			palette[1] = alpha1;
+			for (int p = 1; p < 7; p++)
+				palette[p + 1] = ((7 - p) * alpha0 + p * alpha1) / 7;
+
+			for (int i = 0; i < 16; i++) {
+				int alpha = block[i * 4 + 3] & 0xff;
+				int best = 0, bestDistance = Integer.MAX_VALUE;
+				for (int p = 0; p < 8; p++) {
+					int distance = Math.abs(alpha - palette[p]);
+					if (distance < bestDistance) {
+						bestDistance = distance;
+						best = p;
+					}
+				}
+				indices |= (long) best << (i * 3);
+			}
+		}
+
+		out[offset] = (byte) alpha0;
+		out[offset + 1] = (byte) alpha1;
+		for (int i = 0; i < 6; i++)
+			out[offset + 2 + i] = (byte) (indices >>> (i * 8));
+	}
+
+	private static void swap(int[] a, int[] b, int c) {
+		int swap = a[c];
+		a[c] = b[c];
+		b[c] = swap;
+	}
+
+	private static int to565(int[] rgb) {
+		return ((rgb[0] >> 3) << 11) | ((rgb[1] >> 2) << 5) | (rgb[2] >> 3);
+	}
+
+	// the top bits are repeated in the bottom ones, so 31 becomes 255 and not 248
+	private static void from565(int color, int[] rgb) {
+		int r = (color >> 11) & 31, g = (color >> 5) & 63, b = color & 31;
+		rgb[0] = (r << 3) | (r >> 2);
+		rgb[1] = (g << 2) | (g >> 4);
+		rgb[2] = (b << 3) | (b >> 2);
+	}
+
+}
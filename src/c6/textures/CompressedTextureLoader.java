@@ -0,0 +1,83 @@
+package c6.textures;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.EXTTextureCompressionS3TC;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL13;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import de.matthiasmann.twl.utils.PNGDecoder.Format;
+
+// decodes a PNG, builds the mip chain and compresses every level with BlockCompressor
+// BC1 for opaque images (8 bytes per 16 pixels), BC3 when there is alpha (16 bytes per 16 pixels)
+// drivers without S3TC get the uncompressed levels instead
+public class CompressedTextureLoader {
+
+	public static int load(String filename) throws IOException {
+		int width, height;
+		byte[] pixels;
+		InputStream in = Files.newInputStream(Paths.get(filename));
+		try {
+			PNGDecoder decoder = new PNGDecoder(in);
+			width = decoder.getWidth();
+			height = decoder.getHeight();
+			ByteBuffer buffer = ByteBuffer.allocate(width * height * 4);
+			decoder.decode(buffer, width * 4, Format.RGBA);
+			pixels = buffer.array();
+		} finally {
+			in.close();
+		}
+
+		boolean alpha = BlockCompressor.hasAlpha(pixels);
+		boolean compressed = GL.getCapabilities().GL_EXT_texture_compression_s3tc;
+		int format = alpha ? EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT
+				: EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+
+		int texId = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+
+		int levels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+		for (int level = 0; level < levels; level++) {
+			if (level > 0) {
+				int levelWidth = Math.max(1, width / 2), levelHeight = Math.max(1, height / 2);
+				pixels = TextureContainer.downsample(pixels, width, height, levelWidth, levelHeight);
+				width = levelWidth;
+				height = levelHeight;
+			}
+
+			if (compressed) {
+				byte[] blocks = BlockCompressor.compress(pixels, width, height, alpha);
+				GL13.glCompressedTexImage2D(GL11.GL_TEXTURE_2D, level, format, width, height, 0, toBuffer(blocks));
+			} else {
+				GL11.glTexImage2D(GL11.GL_TEXTURE_2D, level, GL11.GL_RGBA8, width, height, 0,
+						GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, toBuffer(pixels));
+			}
+		}
+
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, levels - 1);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+
+		return texId;
+	}
+
+	private static ByteBuffer toBuffer(byte[] bytes) {
+		ByteBuffer buffer = BufferUtils.createByteBuffer(bytes.length);
+		buffer.put(bytes);
+		buffer.flip();
+		return buffer;
+	}
+
+}
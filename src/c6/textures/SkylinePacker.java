@@ -0,0 +1,109 @@
+package c6.textures;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// packs rectangles into a fixed size page with the skyline bottom-left heuristic:
+// the page keeps the outline of what is already placed, a new rectangle goes where
+// its top ends up lowest, ties go to the spot that wastes less of the page under it
+public class SkylinePacker {
+	private final int width, height;
+
+	// every segment of the outline: x, y (the height of the outline there) and width
+	private final List<int[]> skyline = new ArrayList<int[]>();
+	private long usedArea;
+
+	public SkylinePacker(int width, int height) {
+		this.width = width;
+		this.height = height;
+		skyline.add(new int[] { 0, 0, width });
+	}
+
+	// finds a place for the rectangle, writes its x and y into position
+	// returns false if it doesn't fit anywhere
+	public boolean pack(int w, int h, int[] position) {
+		int bestIndex = -1, bestTop = Integer.MAX_VALUE, bestWaste = Integer.MAX_VALUE, bestY = 0;
+
+		for (int i = 0; i < skyline.size(); i++) {
+			int x = skyline.get(i)[0];
+			if (x + w > width)
+				break;
+
+			// the rectangle rests on the highest segment it covers
+			int y = 0, waste = 0, covered = 0;
+			for (int j = i; covered < w; j++) {
+				int[] segment = skyline.get(j);
+				y = Math.max(y, segment[1]);
+				covered += segment[2];
+			}
+			if (y + h > height)
+				continue;
+
+			// the area between the outline and the bottom of the rectangle is lost
+			covered = 0;
+			for (int j = i; covered < w; j++) {
+				int[] segment = skyline.get(j);
+				int span = Math.min(segment[2], w - covered);
+				waste += span * (y - segment[1]);
+				covered += span;
+			}
+
+			if (y + h < bestTop || (y + h == bestTop && waste < bestWaste)) {
+				bestIndex = i;
+				bestTop = y + h;
+				bestWaste = waste;
+				bestY = y;
+			}
+		}
+
+		if (bestIndex < 0)
+			return false;
+
+		position[0] = skyline.get(bestIndex)[0];
+		position[1] = bestY;
+		place(bestIndex, position[0], bestY + h, w);
+		usedArea += (long) w * h;
+		return true;
+	}
+
+	// raises the outline under the new rectangle and merges segments of the same height
+	private void place(int index, int x, int top, int w) {
+		skyline.add(index, new int[] { x, top, w });
+
+		int right = x + w;
+		for (int i = index + 1; i < skyline.size(); ) {
+			int[] segment = skyline.get(i);
+			if (segment[0] >= right)
+				break;
+
+			int segmentRight = segment[0] + segment[2];
+			if (segmentRight <= right) {
+				skyline.remove(i);
+			} else {
+				segment[2] = segmentRight - right;
+				segment[0] = right;
+				break;
+			}
+		}
+
+		for (int i = 0; i < skyline.size() - 1; ) {
+			int[] segment = skyline.get(i), next = skyline.get(i + 1);
+			if (segment[1] == next[1]) {
+				segment[2] += next[2];
+				skyline.remove(i + 1);
+			} else {
+				i++;
+			}
+		}
+	}
+
+	// the share of the page covered by rectangles, between 0 and 1
+	public float getEfficiency() {
+		return (float) usedArea / ((long) width * height);
+	}
+
+	public long getUsedArea() {
+		return usedArea;
+	}
+
+}
@@ -0,0 +1,71 @@
+package c6.textures;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL30;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import de.matthiasmann.twl.utils.PNGDecoder.Format;
+
+// loads images of the same size into the layers of one GL_TEXTURE_2D_ARRAY,
+// so a single bound texture can serve many different sprites, the layer is picked in the shader
+public class TextureArrayLoader {
+
+	public static int load(String... filenames) throws IOException {
+		int texId = GL11.glGenTextures();
+		GL11.glBindTexture(GL30.GL_TEXTURE_2D_ARRAY, texId);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+
+		int width = 0, height = 0;
+		ByteBuffer pixels = null;
+
+		try {
+			for (int layer = 0; layer < filenames.length; layer++) {
+				InputStream in = new FileInputStream(filenames[layer]);
+				try {
+					PNGDecoder decoder = new PNGDecoder(in);
+
+					// the storage for every layer is allocated with the first image
+					if (layer == 0) {
+						width = decoder.getWidth();
+						height = decoder.getHeight();
+						pixels = BufferUtils.createByteBuffer(4 * width * height);
+						GL12.glTexImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, GL30.GL_RGBA8, width, height, filenames.length, 0,
+								GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+					} else if (decoder.getWidth() != width || decoder.getHeight() != height) {
+						throw new IOException(filenames[layer] + " is " + decoder.getWidth() + "x" + decoder.getHeight()
+								+ ", every layer has to be " + width + "x" + height);
+					}
+
+					pixels.clear();
+					decoder.decode(pixels, width * 4, Format.RGBA);
+					pixels.flip();
+					GL12.glTexSubImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, width, height, 1,
+							GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+				} finally {
+					in.close();
+				}
+			}
+		} catch (IOException e) {
+			GL11.glBindTexture(GL30.GL_TEXTURE_2D_ARRAY, 0);
+			GL11.glDeleteTextures(texId);
+			throw e;
+		}
+
+		GL30.glGenerateMipmap(GL30.GL_TEXTURE_2D_ARRAY);
+		GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		GL11.glBindTexture(GL30.GL_TEXTURE_2D_ARRAY, 0);
+
+		return texId;
+	}
+
+}
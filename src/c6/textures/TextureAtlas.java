@@ -0,0 +1,52 @@
+package c6.textures;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.lwjgl.opengl.GL11;
+
+// the pages built by TextureAtlasBuilder and where every image is on them
+public class TextureAtlas {
+	private final int[] pageIds;
+	private final int pageSize;
+	private final Map<String, AtlasRegion> regions = new HashMap<String, AtlasRegion>();
+
+	TextureAtlas(int[] pageIds, List<AtlasRegion> regions, int pageSize) {
+		this.pageIds = pageIds;
+		this.pageSize = pageSize;
+		for (AtlasRegion region : regions)
+			this.regions.put(region.getPath(), region);
+	}
+
+	// null if the image is not in the atlas
+	public AtlasRegion getRegion(String filename) {
+		return regions.get(TextureManager.normalize(filename));
+	}
+
+	public int getPageCount() {
+		return pageIds.length;
+	}
+
+	public int getPageId(int page) {
+		return pageIds[page];
+	}
+
+	public int getRegionCount() {
+		return regions.size();
+	}
+
+	// drawing every image once, in any order, needs at most one bind per page
+	// instead of one per image
+	public String getStats() {
+		return String.format(Locale.ROOT, "atlas: %d images on %d pages of %dx%d, at most %d binds instead of %d",
+				regions.size(), pageIds.length, pageSize, pageSize, pageIds.length, regions.size());
+	}
+
+	public void cleanUp() {
+		for (int pageId : pageIds)
+			GL11.glDeleteTextures(pageId);
+	}
+
+}
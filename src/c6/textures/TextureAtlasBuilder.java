@@ -0,0 +1,213 @@
+package c6.textures;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL30;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import de.matthiasmann.twl.utils.PNGDecoder.Format;
+
+// packs many images into a few large textures, so sprites from different images
+// can be drawn without a texture bind between them, e.g. in one SpriteBatch flush
+//
+// every image is surrounded by padding filled with copies of its edge pixels,
+// without it the smaller mip levels would blend in the neighbouring images
+// a padding of p pixels keeps the mip levels up to log2(p) clean, the smaller ones are not used
+public class TextureAtlasBuilder {
+	private final int pageSize;
+	private final int padding;
+
+	private final List<Image> images = new ArrayList<Image>();
+	private final List<SkylinePacker> pages = new ArrayList<SkylinePacker>();
+	private boolean packed;
+
+	private static class Image {
+		final String path;
+		final int width, height;
+		final byte[] pixels; // RGBA, top row first
+		int page, x, y;
+
+		Image(String path, int width, int height, byte[] pixels) {
+			this.path = path;
+			this.width = width;
+			this.height = height;
+			this.pixels = pixels;
+		}
+	}
+
+	public TextureAtlasBuilder(int pageSize, int padding) {
+		this.pageSize = pageSize;
+		this.padding = padding;
+	}
+
+	public void add(String filename) throws IOException {
+		InputStream in = Files.newInputStream(Paths.get(filename));
+		try {
+			PNGDecoder decoder = new PNGDecoder(in);
+			int width = decoder.getWidth(), height = decoder.getHeight();
+			if (width + 2 * padding > pageSize || height + 2 * padding > pageSize)
+				throw new IOException(filename + " is " + width + "x" + height + ", too big for a page of " + pageSize);
+
+			ByteBuffer buffer = ByteBuffer.allocate(width * height * 4);
+			decoder.decode(buffer, width * 4, Format.RGBA);
+			images.add(new Image(TextureManager.normalize(filename), width, height, buffer.array()));
+			packed = false;
+		} finally {
+			in.close();
+		}
+	}
+
+	// adds every PNG in the directory and the ones below it
+	public void addDirectory(String directory) throws IOException {
+		DirectoryStream<Path> entries = Files.newDirectoryStream(Paths.get(directory));
+		try {
+			for (Path entry : entries) {
+				if (Files.isDirectory(entry))
+					addDirectory(entry.toString());
+				else if (entry.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".png"))
+					add(entry.toString());
+			}
+		} finally {
+			entries.close();
+		}
+	}
+
+	// places every image, the tallest first, which leaves the least gaps
+	// doesn't need OpenGL, so the packing can be checked offline, returns the number of pages
+	public int pack() {
+		if (packed)
+			return pages.size();
+
+		pages.clear();
+		List<Image> sorted = new ArrayList<Image>(images);
+		Collections.sort(sorted, new Comparator<Image>() {
+			@Override
+			public int compare(Image a, Image b) {
+				return b.height != a.height ? b.height - a.height : b.width - a.width;
+			}
+		});
+
+		int[] position = new int[2];
+		for (Image image : sorted) {
+			int w = image.width + 2 * padding, h = image.height + 2 * padding;
+
+			image.page = -1;
+			for (int page = 0; page < pages.size() && image.page < 0; page++)
+				if (pages.get(page).pack(w, h, position))
+					image.page = page;
+
+			if (image.page < 0) {
+				SkylinePacker packer = new SkylinePacker(pageSize, pageSize);
+				packer.pack(w, h, position);
+				pages.add(packer);
+				image.page = pages.size() - 1;
+			}
+
+			image.x = position[0] + padding;
+			image.y = position[1] + padding;
+		}
+
+		packed = true;
+		return pages.size();
+	}
+
+	// how much of the page the images cover, the padding counts as waste
+	public float getEfficiency(int page) {
+		pack();
+		long pixels = 0;
+		for (Image image : images)
+			if (image.page == page)
+				pixels += (long) image.width * image.height;
+		return (float) pixels / ((long) pageSize * pageSize);
+	}
+
+	public int getImageCount() {
+		return images.size();
+	}
+
+	// the page index of every image in the order they were added
+	public int getPage(int image) {
+		pack();
+		return images.get(image).page;
+	}
+
+	// uploads every page as a mipmapped texture
+	public TextureAtlas build() {
+		pack();
+
+		List<AtlasRegion> regions = new ArrayList<AtlasRegion>();
+		for (Image image : images)
+			regions.add(new AtlasRegion(image.path, image.page, image.x, image.y, image.width, image.height));
+
+		int[] pageIds = new int[pages.size()];
+		ByteBuffer pagePixels = BufferUtils.createByteBuffer(pageSize * pageSize * 4);
+		for (int page = 0; page < pages.size(); page++) {
+			pagePixels.clear();
+			for (int i = 0; i < pageSize * pageSize * 4; i++)
+				pagePixels.put(i, (byte) 0);
+
+			for (Image image : images)
+				if (image.page == page)
+					copyPadded(image, pagePixels);
+
+			pageIds[page] = upload(pagePixels);
+		}
+
+		for (AtlasRegion region : regions)
+			region.upload(pageIds[region.getPage()], pageSize, pageSize);
+
+		return new TextureAtlas(pageIds, regions, pageSize);
+	}
+
+	// the image itself, then its edge pixels stretched out into the padding
+	private void copyPadded(Image image, ByteBuffer page) {
+		for (int y = -padding; y < image.height + padding; y++) {
+			int sourceY = Math.min(Math.max(y, 0), image.height - 1);
+			for (int x = -padding; x < image.width + padding; x++) {
+				int sourceX = Math.min(Math.max(x, 0), image.width - 1);
+				int source = (sourceY * image.width + sourceX) * 4;
+				int target = ((image.y + y) * pageSize + image.x + x) * 4;
+				page.put(target, image.pixels[source]);
+				page.put(target + 1, image.pixels[source + 1]);
+				page.put(target + 2, image.pixels[source + 2]);
+				page.put(target + 3, image.pixels[source + 3]);
+			}
+		}
+	}
+
+	private int upload(ByteBuffer pixels) {
+		int texId = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, pageSize, pageSize, 0,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+
+		// only the levels the padding protects
+		int maxLevel = 31 - Integer.numberOfLeadingZeros(Math.max(padding, 1));
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, maxLevel);
+		GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+
+		return texId;
+	}
+
+}
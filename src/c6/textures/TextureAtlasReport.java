@@ -0,0 +1,49 @@
+package c6.textures;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+// packs the images of a directory without uploading anything and prints how well
+// the pages are used, and how many texture binds a sprite batch needs to draw
+// the images in a random order with separate textures and with the atlas
+// usage: TextureAtlasReport [directory] [page size] [padding] [draws]
+public class TextureAtlasReport {
+
+	public static void main(String[] args) throws IOException {
+		String directory = args.length > 0 ? args[0] : "res/textures";
+		int pageSize = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+		int padding = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		int draws = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+
+		TextureAtlasBuilder builder = new TextureAtlasBuilder(pageSize, padding);
+		builder.addDirectory(directory);
+		int pages = builder.pack();
+
+		System.out.println(builder.getImageCount() + " images on " + pages + " pages of " + pageSize + "x" + pageSize
+				+ ", " + padding + " pixels of padding");
+		for (int page = 0; page < pages; page++)
+			System.out.println(String.format(Locale.ROOT, "  page %d: %.1f%% used", page, builder.getEfficiency(page) * 100.0f));
+
+		if (builder.getImageCount() == 0)
+			return;
+
+		// a bind is needed whenever the texture changes from one sprite to the next
+		Random random = new Random(42);
+		int separateBinds = 0, atlasBinds = 0;
+		int lastImage = -1, lastPage = -1;
+		for (int i = 0; i < draws; i++) {
+			int image = random.nextInt(builder.getImageCount());
+			int page = builder.getPage(image);
+			if (image != lastImage)
+				separateBinds++;
+			if (page != lastPage)
+				atlasBinds++;
+			lastImage = image;
+			lastPage = page;
+		}
+		System.out.println(String.format(Locale.ROOT, "%d sprites in random order: %d binds with separate textures, "
+				+ "%d with the atlas, %d saved", draws, separateBinds, atlasBinds, separateBinds - atlasBinds));
+	}
+
+}
@@ -0,0 +1,184 @@
+package c6.textures;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import de.matthiasmann.twl.utils.PNGDecoder.Format;
+
+// a texture file with the whole mip chain already in the layout glTexImage2D wants,
+// so loading is mapping the file and handing every level to the driver,
+// no decoding, no conversion, no glGenerateMipmap and no copy in between
+//
+// the layout, big endian:
+// "C6TX", version, internal format, format, type, width, height, level count,
+// then width, height, offset and size of every level, then the levels, each 4 byte aligned
+//
+// convert a PNG offline: TextureContainer input.png output.c6tex
+public class TextureContainer {
+	private static final int MAGIC = 0x43365458; // "C6TX"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8 * 4, LEVEL_SIZE = 4 * 4;
+
+	// decodes the PNG, halves it down to 1x1 with a box filter and writes every level
+	public static void convert(String pngFile, String containerFile) throws IOException {
+		int width, height;
+		byte[] pixels;
+		InputStream in = Files.newInputStream(Paths.get(pngFile));
+		try {
+			PNGDecoder decoder = new PNGDecoder(in);
+			width = decoder.getWidth();
+			height = decoder.getHeight();
+			ByteBuffer buffer = ByteBuffer.allocate(width * height * 4);
+			decoder.decode(buffer, width * 4, Format.RGBA);
+			pixels = buffer.array();
+		} finally {
+			in.close();
+		}
+
+		int levels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+		byte[][] chain = new byte[levels][];
+		int[] widths = new int[levels], heights = new int[levels];
+		chain[0] = pixels;
+		widths[0] = width;
+		heights[0] = height;
+		for (int level = 1; level < levels; level++) {
+			widths[level] = Math.max(1, widths[level - 1] / 2);
+			heights[level] = Math.max(1, heights[level - 1] / 2);
+			chain[level] = downsample(chain[level - 1], widths[level - 1], heights[level - 1], widths[level], heights[level]);
+		}
+
+		Path target = Paths.get(containerFile);
+		if (target.getParent() != null)
+			Files.createDirectories(target.getParent());
+		OutputStream file = Files.newOutputStream(target);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(GL11.GL_RGBA8);
+			out.writeInt(GL11.GL_RGBA);
+			out.writeInt(GL11.GL_UNSIGNED_BYTE);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(levels);
+
+			int offset = HEADER_SIZE + levels * LEVEL_SIZE;
+			for (int level = 0; level < levels; level++) {
+				out.writeInt(widths[level]);
+				out.writeInt(heights[level]);
+				out.writeInt(offset);
+				out.writeInt(chain[level].length);
+				offset += align(chain[level].length);
+			}
+
+			for (int level = 0; level < levels; level++) {
+				out.write(chain[level]);
+				for (int i = chain[level].length; i < align(chain[level].length); i++)
+					out.write(0);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static int align(int size) {
+		return (size + 3) & ~3;
+	}
+
+	// every pixel is the average of the 2x2 pixels above it, the last row or column
+	// of an odd sized level is simply repeated
+	static byte[] downsample(byte[] source, int sourceWidth, int sourceHeight, int width, int height) {
+		byte[] target = new byte[width * height * 4];
+		for (int y = 0; y < height; y++) {
+			int y0 = Math.min(y * 2, sourceHeight - 1), y1 = Math.min(y * 2 + 1, sourceHeight - 1);
+			for (int x = 0; x < width; x++) {
+				int x0 = Math.min(x * 2, sourceWidth - 1), x1 = Math.min(x * 2 + 1, sourceWidth - 1);
+				for (int c = 0; c < 4; c++) {
+					int sum = (source[(y0 * sourceWidth + x0) * 4 + c] & 0xff)
+							+ (source[(y0 * sourceWidth + x1) * 4 + c] & 0xff)
+							+ (source[(y1 * sourceWidth + x0) * 4 + c] & 0xff)
+							+ (source[(y1 * sourceWidth + x1) * 4 + c] & 0xff);
+					target[(y * width + x) * 4 + c] = (byte) ((sum + 2) / 4);
+				}
+			}
+		}
+		return target;
+	}
+
+	// maps the file and uploads every level straight from the mapping, returns the texture id
+	public static int load(String containerFile) throws IOException {
+		ByteBuffer file;
+		FileChannel channel = FileChannel.open(Paths.get(containerFile), StandardOpenOption.READ);
+		try {
+			// the mapping stays valid after the channel is closed
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+
+		if (file.remaining() < HEADER_SIZE || file.getInt(0) != MAGIC)
+			throw new IOException(containerFile + " is not a texture container");
+		if (file.getInt(4) != VERSION)
+			throw new IOException(containerFile + " has version " + file.getInt(4) + ", expected " + VERSION);
+
+		int internalFormat = file.getInt(8), format = file.getInt(12), type = file.getInt(16);
+		int levels = file.getInt(28);
+
+		if (levels < 1 || levels > 32 || HEADER_SIZE + levels * LEVEL_SIZE > file.capacity())
+			throw new IOException(containerFile + " has a broken level table");
+		for (int level = 0; level < levels; level++) {
+			int entry = HEADER_SIZE + level * LEVEL_SIZE;
+			if ((long) file.getInt(entry + 8) + file.getInt(entry + 12) > file.capacity())
+				throw new IOException(containerFile + " is truncated");
+		}
+
+		int texId = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+
+		for (int level = 0; level < levels; level++) {
+			int entry = HEADER_SIZE + level * LEVEL_SIZE;
+			int width = file.getInt(entry), height = file.getInt(entry + 4);
+			int offset = file.getInt(entry + 8), size = file.getInt(entry + 12);
+
+			// a view of the level, not a copy
+			file.limit(offset + size).position(offset);
+			ByteBuffer data = file.slice();
+			file.clear();
+
+			GL11.glTexImage2D(GL11.GL_TEXTURE_2D, level, internalFormat, width, height, 0, format, type, data);
+		}
+
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, levels - 1);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+
+		return texId;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: TextureContainer input.png output.c6tex");
+			System.exit(-1);
+		}
+		convert(args[0], args[1]);
+		System.out.println(args[0] + " -> " + args[1] + ", " + Files.size(Paths.get(args[1])) + " bytes");
+	}
+
+}
@@ -0,0 +1,96 @@
+package c6.textures;
+
+// what the texture loaders hand out instead of a raw texture id
+// until the real texture is uploaded, getId() returns the placeholder texture,
+// so callers can bind it every frame without checking anything
+// a handle can follow another one, e.g. when its file turned out to be a copy of the other's,
+// then everything but the path is the other handle's
+public class TextureHandle {
+	private final String path;
+	private TextureHandle source;
+	private String contentHash;
+	private int id;
+	private int width, height;
+	private long sizeInBytes;
+	private boolean resident;
+	private boolean failed;
+
+	TextureHandle(String path, int placeholderId) {
+		this.path = path;
+		this.id = placeholderId;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public int getId() {
+		return source != null ? source.getId() : id;
+	}
+
+	public int getWidth() {
+		return source != null ? source.getWidth() : width;
+	}
+
+	public int getHeight() {
+		return source != null ? source.getHeight() : height;
+	}
+
+	// the estimated video memory used, including the mip levels
+	public long getSizeInBytes() {
+		return source != null ? source.getSizeInBytes() : sizeInBytes;
+	}
+
+	public boolean isResident() {
+		return source != null ? source.isResident() : resident;
+	}
+
+	public boolean hasFailed() {
+		return source != null ? source.hasFailed() : failed;
+	}
+
+	// the hash of the file's content, null until the loader has read the file
+	String getContentHash() {
+		return contentHash;
+	}
+
+	void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	// the handle's own load was cancelled, from now on it shows the other handle's texture
+	void follow(TextureHandle source) {
+		this.source = source;
+	}
+
+	void makeResident(int id, int width, int height, long sizeInBytes) {
+		this.id = id;
+		this.width = width;
+		this.height = height;
+		this.sizeInBytes = sizeInBytes;
+		this.resident = true;
+	}
+
+	// goes back to the placeholder, the caller has deleted the texture
+	void evict(int placeholderId) {
+		this.id = placeholderId;
+		this.resident = false;
+	}
+
+	// every level is half the size of the previous one, down to 1x1
+	public static long getMipChainSize(int width, int height, int bytesPerTexel) {
+		long size = 0;
+		while (true) {
+			size += (long) width * height * bytesPerTexel;
+			if (width == 1 && height == 1)
+				return size;
+			width = Math.max(1, width / 2);
+			height = Math.max(1, height / 2);
+		}
+	}
+
+	void fail() {
+		failed = true;
+	}
+
+}
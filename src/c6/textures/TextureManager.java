@@ -0,0 +1,261 @@
+package c6.textures;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.opengl.GL11;
+
+// sits in front of the texture loader and makes sure every image is only on the GPU once
+//
+// textures are looked up by path when they are acquired, the hash of the file's content is only
+// known once the loader's worker has read the file, a copy of a texture that is already there
+// is merged into it then, before it is decoded, its handle follows the other one from then on
+// every acquire() has to be paired with a release(), textures nobody holds stay
+// cached until the memory budget is exceeded, then the least recently used ones go first
+// a texture that failed to load is forgotten right away, the next acquire() of its path tries again
+public class TextureManager {
+	private final AsyncTextureLoader loader;
+	private final long budgetBytes;
+
+	private final Map<String, Entry> byPath = new HashMap<String, Entry>();
+	private final Map<String, Entry> byHash = new HashMap<String, Entry>();
+	private final Map<TextureHandle, Entry> byHandle = new IdentityHashMap<TextureHandle, Entry>();
+
+	// access ordered, so the first entry is always the least recently used one
+	private final LinkedHashMap<TextureHandle, Entry> unused = new LinkedHashMap<TextureHandle, Entry>(16, 0.75f, true);
+
+	private final List<Entry> loading = new ArrayList<Entry>();
+
+	private long residentBytes;
+	private int hits, misses, evictions;
+
+	private static class Entry {
+		String hash;
+		final TextureHandle handle;
+		final List<String> paths = new ArrayList<String>();
+		final List<TextureHandle> followers = new ArrayList<TextureHandle>();
+		int references;
+
+		Entry(String hash, TextureHandle handle) {
+			this.hash = hash;
+			this.handle = handle;
+		}
+	}
+
+	public TextureManager(AsyncTextureLoader loader, long budgetBytes) {
+		this.loader = loader;
+		this.budgetBytes = budgetBytes;
+	}
+
+	public TextureHandle acquire(String filename) {
+		String path = normalize(filename);
+
+		Entry entry = byPath.get(path);
+		if (entry == null) {
+			misses++;
+			entry = new Entry(null, loader.load(filename));
+			byHandle.put(entry.handle, entry);
+			loading.add(entry);
+
+			entry.paths.add(path);
+			byPath.put(path, entry);
+		} else {
+			hits++;
+		}
+
+		if (entry.references++ == 0)
+			unused.remove(entry.handle);
+
+		return entry.handle;
+	}
+
+	public void release(TextureHandle handle) {
+		Entry entry = byHandle.get(handle);
+		if (entry == null || entry.references == 0)
+			throw new IllegalArgumentException("The texture " + handle.getPath() + " is not held by anyone!");
+
+		if (--entry.references == 0) {
+			if (entry.handle.hasFailed())
+				remove(entry);
+			else
+				unused.put(entry.handle, entry);
+		}
+	}
+
+	// swaps the texture of a resident handle for a new one, e.g. after its file changed,
+	// the old texture is deleted and the handle keeps its place in the cache
+	// returns false if the handle isn't resident (anymore), the caller still owns the new texture then
+	public boolean replace(TextureHandle handle, int texId, int width, int height) {
+		Entry entry = byHandle.get(handle);
+		if (entry == null || !entry.handle.isResident())
+			return false;
+
+		// a follower's texture is the one of the handle it follows
+		handle = entry.handle;
+		GL11.glDeleteTextures(handle.getId());
+		residentBytes -= handle.getSizeInBytes();
+		handle.makeResident(texId, width, height, TextureHandle.getMipChainSize(width, height, 4));
+		residentBytes += handle.getSizeInBytes();
+
+		// the content isn't what it was hashed from anymore, so copies of the old file can't share it
+		if (entry.hash != null && byHash.get(entry.hash) == entry)
+			byHash.remove(entry.hash);
+
+		evictUnused();
+		return true;
+	}
+
+	// call it once per frame on the render thread, instead of the loader's update()
+	public void update() {
+		loader.update();
+
+		for (Iterator<Entry> it = loading.iterator(); it.hasNext(); ) {
+			Entry entry = it.next();
+
+			// the worker read the file, a copy of a texture that is already there isn't loaded again
+			if (entry.hash == null && entry.handle.getContentHash() != null) {
+				entry.hash = entry.handle.getContentHash();
+				Entry original = byHash.get(entry.hash);
+				if (original == null) {
+					byHash.put(entry.hash, entry);
+				} else if (loader.cancel(entry.handle)) {
+					merge(entry, original);
+					it.remove();
+					continue;
+				}
+			}
+
+			if (entry.handle.isResident()) {
+				residentBytes += entry.handle.getSizeInBytes();
+				it.remove();
+			} else if (entry.handle.hasFailed()) {
+				it.remove();
+				forget(entry);
+				if (entry.references == 0) {
+					unused.remove(entry.handle);
+					remove(entry);
+				}
+			}
+		}
+
+		evictUnused();
+	}
+
+	// nothing finds a failed texture by its paths or hash anymore, a copy isn't merged into it,
+	// whoever still holds its handle releases it as usual
+	private void forget(Entry entry) {
+		for (String path : entry.paths)
+			if (byPath.get(path) == entry)
+				byPath.remove(path);
+		entry.paths.clear();
+		if (entry.hash != null && byHash.get(entry.hash) == entry)
+			byHash.remove(entry.hash);
+	}
+
+	// the copy's paths, handle and references go over to the original
+	private void merge(Entry copy, Entry original) {
+		copy.handle.follow(original.handle);
+		original.followers.add(copy.handle);
+		byHandle.put(copy.handle, original);
+		for (String path : copy.paths) {
+			original.paths.add(path);
+			byPath.put(path, original);
+		}
+
+		if (copy.references == 0)
+			unused.remove(copy.handle);
+		else if (original.references == 0)
+			unused.remove(original.handle);
+		original.references += copy.references;
+		if (original.references == 0)
+			unused.put(original.handle, original);
+
+		// it turned out to be a hit after all
+		misses--;
+		hits++;
+	}
+
+	private void evictUnused() {
+		Iterator<Entry> it = unused.values().iterator();
+		while (residentBytes > budgetBytes && it.hasNext()) {
+			Entry entry = it.next();
+
+			// still in flight, it can only be evicted once it is resident
+			// failed ones are never in here, they are removed as soon as they fail
+			if (!entry.handle.isResident())
+				continue;
+
+			it.remove();
+			remove(entry);
+			evictions++;
+		}
+	}
+
+	private void remove(Entry entry) {
+		if (entry.handle.isResident()) {
+			GL11.glDeleteTextures(entry.handle.getId());
+			residentBytes -= entry.handle.getSizeInBytes();
+			entry.handle.evict(loader.getPlaceholderId());
+		}
+
+		for (String path : entry.paths)
+			byPath.remove(path);
+		if (entry.hash != null && byHash.get(entry.hash) == entry)
+			byHash.remove(entry.hash);
+		byHandle.remove(entry.handle);
+		for (TextureHandle follower : entry.followers)
+			byHandle.remove(follower);
+	}
+
+	static String normalize(String filename) {
+		return Paths.get(filename).toAbsolutePath().normalize().toString();
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	public int getEvictions() {
+		return evictions;
+	}
+
+	public long getResidentBytes() {
+		return residentBytes;
+	}
+
+	public long getBudgetBytes() {
+		return budgetBytes;
+	}
+
+	public int getTextureCount() {
+		return new HashSet<Entry>(byHandle.values()).size();
+	}
+
+	public String getStats() {
+		return String.format("textures: %d, %.2f / %.2f MB, %d hits, %d misses, %d evictions",
+				getTextureCount(), residentBytes / 1048576.0d, budgetBytes / 1048576.0d, hits, misses, evictions);
+	}
+
+	// deletes every texture, held or not, and shuts the loader down
+	public void cleanUp() {
+		// followers map to the entry they follow, so it can be in there more than once
+		for (Entry entry : new HashSet<Entry>(byHandle.values()))
+			remove(entry);
+		unused.clear();
+		loading.clear();
+
+		loader.cleanUp();
+	}
+
+}
@@ -0,0 +1,220 @@
+package c6.timing;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import org.lwjgl.glfw.GLFWvidmode;
+import org.lwjgl.opengl.GL11;
+
+// decides when a frame is swapped, instead of a hard-coded swap interval
+//
+// UNLIMITED  as fast as it goes, swap interval 0
+// VSYNC      swap interval 1, the driver waits for the display
+// ADAPTIVE   vsync while the frames are fast enough, tearing instead of halving the frame rate
+//            when one is late: swap interval -1 with the swap_control_tear extension, without it
+//            the interval is switched between 1 and 0 from the measured frame times
+// TARGET     swap interval 0, the pacer itself waits until the next frame is due
+//
+// pacer.probe();       // once, on the main thread, GLFW only asks the monitor there
+// pacer.start();       // once, on the thread the context is current on
+// ... every frame
+// pacer.beginFrame();
+// ... draw
+// pacer.sync();        // right before glfwSwapBuffers
+//
+// the wait sleeps while the deadline is far away and spins for the rest, Thread.sleep()
+// oversleeps by anything from 50 us to 15 ms depending on the OS, so every sleep is measured
+// and the spin starts as long before the deadline as the worst recent oversleep,
+// but never more than a quarter of the frame, a hiccup of the scheduler shouldn't make it spin all the time
+public class FramePacer {
+	public enum Mode { UNLIMITED, VSYNC, ADAPTIVE, TARGET }
+
+	private static final long MIN_SPIN_NANOS = 200000L;
+
+	private final Mode mode;
+	private final long periodNanos;
+
+	// the worst recent oversleep, older ones fade out over a few dozen sleeps
+	private double oversleepMax;
+
+	private long deadline;
+	private long frameStart, lastFrameStart, lastInterval = -1;
+	private long refreshNanos;
+	private boolean tearControl;
+	private int swapInterval = -2;
+	private double workMean;
+
+	private long frames, jitterSum, sleptNanos, spunNanos;
+
+	// the target frame rate is only used by TARGET
+	public FramePacer(Mode mode, double targetFps) {
+		// also catches NaN, a rate of 0 or less would make the period overflow or go negative
+		if (mode == Mode.TARGET && !(targetFps > 0.0d))
+			throw new IllegalArgumentException("The target frame rate has to be positive, not " + targetFps + "!");
+		this.mode = mode;
+		this.periodNanos = mode == Mode.TARGET ? Math.round(1e9d / targetFps) : 0;
+	}
+
+	// "unlimited", "vsync", "adaptive" or a frame rate to hold, e.g. "60"
+	public static FramePacer parse(String value) {
+		String name = value.toUpperCase(Locale.ROOT);
+		for (Mode mode : Mode.values())
+			if (mode.name().equals(name) && mode != Mode.TARGET)
+				return new FramePacer(mode, 0.0d);
+		return new FramePacer(Mode.TARGET, Double.parseDouble(value));
+	}
+
+	// the refresh rate of the primary monitor, glfwGetVideoMode() may only be called on the main thread
+	public void probe() {
+		ByteBuffer vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
+		int refreshRate = vidmode != null ? GLFWvidmode.refreshRate(vidmode) : 0;
+		refreshNanos = Math.round(1e9d / (refreshRate > 0 ? refreshRate : 60));
+	}
+
+	// the swap interval and the extensions belong to the current context, so this runs on its thread,
+	// after probe()
+	public void start() {
+		if (refreshNanos == 0)
+			throw new IllegalStateException("probe() the monitor on the main thread before start()");
+
+		tearControl = glfwExtensionSupported("WGL_EXT_swap_control_tear") == GL11.GL_TRUE
+				|| glfwExtensionSupported("GLX_EXT_swap_control_tear") == GL11.GL_TRUE;
+
+		switch (mode) {
+		case VSYNC: setSwapInterval(1); break;
+		case ADAPTIVE: setSwapInterval(tearControl ? -1 : 1); break;
+		default: setSwapInterval(0); break;
+		}
+
+		calibrate();
+		deadline = System.nanoTime() + periodNanos;
+	}
+
+	// a few sleeps up front, so the first frames already know how bad the oversleep is
+	private void calibrate() {
+		for (int i = 0; i < 16; i++)
+			sleep(1000000L);
+	}
+
+	private void setSwapInterval(int interval) {
+		if (interval != swapInterval) {
+			glfwSwapInterval(interval);
+			swapInterval = interval;
+		}
+	}
+
+	public void beginFrame() {
+		long now = System.nanoTime();
+
+		// jitter is how much a frame differs from the one before it, like the profiler's
+		if (lastFrameStart != 0) {
+			long interval = now - lastFrameStart;
+			if (lastInterval >= 0)
+				jitterSum += Math.abs(interval - lastInterval);
+			lastInterval = interval;
+			frames++;
+		}
+
+		lastFrameStart = now;
+		frameStart = now;
+	}
+
+	// the time until the next beginFrame() isn't a frame, e.g. a loop that sleeps until there is input
+	public void pause() {
+		lastFrameStart = 0;
+		lastInterval = -1;
+	}
+
+	public void sync() {
+		long now = System.nanoTime();
+		long work = now - frameStart;
+		workMean = workMean == 0.0d ? work : workMean * 0.9d + work * 0.1d;
+
+		if (mode == Mode.TARGET) {
+			// a frame that was more than a whole period late starts a new schedule,
+			// otherwise the next frames would be rushed out to catch up
+			if (now - deadline > periodNanos)
+				deadline = now;
+			waitUntil(deadline);
+			deadline += periodNanos;
+		} else if (mode == Mode.ADAPTIVE && !tearControl) {
+			// with a gap between the two, so it doesn't flip every other frame
+			if (swapInterval == 1 && workMean > refreshNanos * 0.95d)
+				setSwapInterval(0);
+			else if (swapInterval == 0 && workMean < refreshNanos * 0.8d)
+				setSwapInterval(1);
+		}
+	}
+
+	private void waitUntil(long target) {
+		long now = System.nanoTime();
+		long spin = getSpinNanos();
+
+		// short sleeps, so a bad oversleep near the deadline can't cost much
+		while (target - now > spin) {
+			sleep(Math.min(1000000L, target - now - spin));
+			now = System.nanoTime();
+		}
+
+		long spinStart = now;
+		while (target - now > 0) {
+			Thread.yield();
+			now = System.nanoTime();
+		}
+		spunNanos += now - spinStart;
+	}
+
+	private void sleep(long nanos) {
+		long start = System.nanoTime();
+		try {
+			Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		long slept = System.nanoTime() - start;
+		sleptNanos += slept;
+
+		oversleepMax = Math.max(slept - nanos, oversleepMax * 0.98d);
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	// the swap interval in use right now, it changes in ADAPTIVE mode without tear control
+	public int getSwapInterval() {
+		return swapInterval;
+	}
+
+	// all the jitter so far, divided by the frames it is the average difference between two frames
+	public long getJitterSum() {
+		return jitterSum;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	// how long the waits slept and spun, only the spinning keeps a core busy
+	public long getSleptNanos() {
+		return sleptNanos;
+	}
+
+	public long getSpunNanos() {
+		return spunNanos;
+	}
+
+	// how long before a deadline the wait stops sleeping and starts spinning
+	public long getSpinNanos() {
+		return Math.max(MIN_SPIN_NANOS, Math.min((long) oversleepMax, periodNanos / 4));
+	}
+
+	public String getStats() {
+		return String.format(Locale.ROOT, "pacer: %s, interval %d, jitter %.3f ms, spin %.3f ms, slept %.1f s, spun %.1f s",
+				mode, swapInterval, frames == 0 ? 0.0d : jitterSum / 1e6d / frames, getSpinNanos() / 1e6d,
+				sleptNanos / 1e9d, spunNanos / 1e9d);
+	}
+
+}
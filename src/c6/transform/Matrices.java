@@ -0,0 +1,62 @@
+package c6.transform;
+
+// 4x4 matrices as float[16] in column major order, the way OpenGL reads them
+// these build the per frame matrices (the camera), the per object ones are composed by Transforms
+public final class Matrices {
+
+	private Matrices() {
+	}
+
+	public static float[] identity(float[] m) {
+		for (int i = 0; i < 16; i++)
+			m[i] = i % 5 == 0 ? 1.0f : 0.0f;
+		return m;
+	}
+
+	// result = a * b, result can't be a or b
+	public static float[] multiply(float[] a, float[] b, float[] result) {
+		for (int column = 0; column < 4; column++) {
+			for (int row = 0; row < 4; row++) {
+				float sum = 0.0f;
+				for (int k = 0; k < 4; k++)
+					sum += a[k * 4 + row] * b[column * 4 + k];
+				result[column * 4 + row] = sum;
+			}
+		}
+		return result;
+	}
+
+	public static float[] translation(float x, float y, float z, float[] m) {
+		identity(m);
+		m[12] = x;
+		m[13] = y;
+		m[14] = z;
+		return m;
+	}
+
+	public static float[] orthographic(float left, float right, float bottom, float top,
+			float near, float far, float[] m) {
+		identity(m);
+		m[0] = 2.0f / (right - left);
+		m[5] = 2.0f / (top - bottom);
+		m[10] = -2.0f / (far - near);
+		m[12] = -(right + left) / (right - left);
+		m[13] = -(top + bottom) / (top - bottom);
+		m[14] = -(far + near) / (far - near);
+		return m;
+	}
+
+	// the vertical field of view is in radians
+	public static float[] perspective(float fovY, float aspect, float near, float far, float[] m) {
+		float f = 1.0f / (float) Math.tan(fovY / 2.0f);
+		for (int i = 0; i < 16; i++)
+			m[i] = 0.0f;
+		m[0] = f / aspect;
+		m[5] = f;
+		m[10] = (far + near) / (near - far);
+		m[11] = -1.0f;
+		m[14] = 2.0f * far * near / (near - far);
+		return m;
+	}
+
+}
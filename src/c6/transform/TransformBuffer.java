@@ -0,0 +1,114 @@
+package c6.transform;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.lwjgl.opengl.GL15;
+
+import c6.buffers.StreamBuffer;
+import c6.memory.FrameArena;
+import c6.state.GLState;
+import c6.vertex.VertexLayout;
+import c6.vertex.VertexType;
+
+// the composed matrices as per instance attributes, a mat4 takes up four locations,
+// one per column, the shader puts them back together
+// the locations continue after the InstanceBuffer's, so a VAO can hold both
+//
+// a uniform buffer would only fit about a thousand matrices (16 KB to 64 KB),
+// an instance buffer holds as many as there is memory for
+// like the InstanceBuffer it streams through a StreamBuffer, call fence() after the draw call,
+// and given a frame arena the matrices are staged in it, every upload() allocates them again
+public class TransformBuffer {
+	public static final VertexLayout LAYOUT = new VertexLayout.Builder(7)
+			.add("in_Transform0", 4, VertexType.FLOAT)
+			.add("in_Transform1", 4, VertexType.FLOAT)
+			.add("in_Transform2", 4, VertexType.FLOAT)
+			.add("in_Transform3", 4, VertexType.FLOAT)
+			.build();
+
+	private final int maxInstances;
+	private ByteBuffer matrices;
+	private FloatBuffer floats;
+	private final FrameArena arena;
+	private final GLState state;
+	private final StreamBuffer stream;
+	private int vaoId;
+	private long offset;
+	private int count;
+
+	public TransformBuffer(int maxInstances, GLState state) {
+		this(maxInstances, state, null);
+	}
+
+	public TransformBuffer(int maxInstances, GLState state, FrameArena arena) {
+		this.maxInstances = maxInstances;
+		this.arena = arena;
+		if (arena == null) {
+			this.matrices = LAYOUT.createBuffer(maxInstances);
+			this.floats = matrices.asFloatBuffer();
+		}
+		this.state = state;
+		this.stream = new StreamBuffer(GL15.GL_ARRAY_BUFFER, LAYOUT.getSizeInBytes(maxInstances), state);
+	}
+
+	// adds the matrix attributes to a VAO that already holds the mesh
+	public void attach(int vaoId) {
+		this.vaoId = vaoId;
+		state.bindVertexArray(vaoId);
+		state.bindBuffer(GL15.GL_ARRAY_BUFFER, stream.getBufferId());
+		LAYOUT.applyPerInstance(offset);
+	}
+
+	// one bulk copy into the staging buffer and one into the stream buffer
+	public void upload(Transforms transforms) {
+		count = Math.min(transforms.getCount(), maxInstances);
+		if (count == 0)
+			return;
+
+		// always the full size, so the arena hands out the same view and the float view can be kept
+		if (arena != null) {
+			ByteBuffer staging = arena.allocate(LAYOUT.getSizeInBytes(maxInstances));
+			if (staging != matrices) {
+				matrices = staging;
+				floats = staging.asFloatBuffer();
+			}
+		}
+
+		floats.clear();
+		floats.put(transforms.getMatrices(), 0, count * Transforms.FLOATS_PER_MATRIX);
+		matrices.clear();
+		matrices.limit(count * LAYOUT.getStride());
+
+		stream.map(matrices.remaining(), LAYOUT.getStride()).put(matrices);
+		offset = stream.unmap();
+
+		if (vaoId != 0) {
+			state.bindVertexArray(vaoId);
+			state.bindBuffer(GL15.GL_ARRAY_BUFFER, stream.getBufferId());
+			LAYOUT.applyPointers(offset);
+		}
+	}
+
+	// the draw call that reads the last upload is issued
+	public void fence() {
+		stream.fence();
+	}
+
+	public long getFenceWaitNanos() {
+		return stream.getWaitNanos();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getMaxInstances() {
+		return maxInstances;
+	}
+
+	public void cleanUp() {
+		stream.cleanUp();
+	}
+
+}
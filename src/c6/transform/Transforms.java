@@ -0,0 +1,249 @@
+package c6.transform;
+
+// the position, rotation and scale of a lot of objects, stored as one array per component
+// (structure of arrays) instead of one object per transform, so composing them is a handful
+// of straight loops over contiguous floats
+// the arrays are cut into blocks of BLOCK_SIZE transforms, every block is composed on its own,
+// so the intermediate results stay in the cache even with a million transforms
+//
+// Transforms transforms = new Transforms(10000);
+// int i = transforms.add(x, y, z);
+// transforms.setRotation(i, 0.0f, 1.0f, 0.0f, angle);
+// transforms.compose(viewProjection); // every model-view-projection matrix at once
+// transformBuffer.upload(transforms);
+//
+// compose() is written for HotSpot's superword pass, which turns simple loops into SSE / AVX:
+// every loop stores to one array only, has no branches and indexes every array from 0,
+// an offset like x[start + i] or a second store in the same loop is enough to keep it scalar
+// composeScalar() is the usual one matrix at a time version, for comparison
+public class Transforms {
+	public static final int FLOATS_PER_MATRIX = 16;
+
+	// 25 arrays of 256 floats for the intermediate results, 25 KB, fits the L1 cache of most CPUs
+	static final int BLOCK_SIZE = 256, BLOCK_SHIFT = 8;
+
+	private final int capacity;
+	private int count;
+
+	// the inputs, [block][index in the block]
+	final float[][] x, y, z;
+	final float[][] qx, qy, qz, qw; // the rotation as a unit quaternion
+	final float[][] sx, sy, sz;
+
+	// the model matrices of a block without their last row, which is always 0 0 0 1
+	private final float[] m00, m01, m02, m10, m11, m12, m20, m21, m22;
+
+	// the composed matrices of a block, one array per element, then interleaved for the upload
+	private final float[][] mvp;
+	private final float[] interleaved;
+
+	public Transforms(int capacity) {
+		this.capacity = capacity;
+
+		int blocks = (capacity + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		x = new float[blocks][BLOCK_SIZE];
+		y = new float[blocks][BLOCK_SIZE];
+		z = new float[blocks][BLOCK_SIZE];
+		qx = new float[blocks][BLOCK_SIZE];
+		qy = new float[blocks][BLOCK_SIZE];
+		qz = new float[blocks][BLOCK_SIZE];
+		qw = new float[blocks][BLOCK_SIZE];
+		sx = new float[blocks][BLOCK_SIZE];
+		sy = new float[blocks][BLOCK_SIZE];
+		sz = new float[blocks][BLOCK_SIZE];
+
+		m00 = new float[BLOCK_SIZE];
+		m01 = new float[BLOCK_SIZE];
+		m02 = new float[BLOCK_SIZE];
+		m10 = new float[BLOCK_SIZE];
+		m11 = new float[BLOCK_SIZE];
+		m12 = new float[BLOCK_SIZE];
+		m20 = new float[BLOCK_SIZE];
+		m21 = new float[BLOCK_SIZE];
+		m22 = new float[BLOCK_SIZE];
+
+		mvp = new float[FLOATS_PER_MATRIX][BLOCK_SIZE];
+		interleaved = new float[capacity * FLOATS_PER_MATRIX];
+	}
+
+	// not rotated and not scaled, returns the index of the transform
+	public int add(float x, float y, float z) {
+		if (count == capacity)
+			throw new IllegalStateException("There is no room for more transforms!");
+
+		int i = count++;
+		setPosition(i, x, y, z);
+		setRotation(i, 0.0f, 0.0f, 0.0f, 1.0f);
+		setScale(i, 1.0f, 1.0f, 1.0f);
+		return i;
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	public void setPosition(int i, float x, float y, float z) {
+		int block = i >> BLOCK_SHIFT, j = i & (BLOCK_SIZE - 1);
+		this.x[block][j] = x;
+		this.y[block][j] = y;
+		this.z[block][j] = z;
+	}
+
+	public void setRotation(int i, float qx, float qy, float qz, float qw) {
+		int block = i >> BLOCK_SHIFT, j = i & (BLOCK_SIZE - 1);
+		this.qx[block][j] = qx;
+		this.qy[block][j] = qy;
+		this.qz[block][j] = qz;
+		this.qw[block][j] = qw;
+	}
+
+	// the axis has to be normalized, the angle is in radians
+	public void setRotation(int i, float axisX, float axisY, float axisZ, double angle) {
+		float sin = (float) Math.sin(angle / 2.0d);
+		setRotation(i, axisX * sin, axisY * sin, axisZ * sin, (float) Math.cos(angle / 2.0d));
+	}
+
+	public void setScale(int i, float sx, float sy, float sz) {
+		int block = i >> BLOCK_SHIFT, j = i & (BLOCK_SIZE - 1);
+		this.sx[block][j] = sx;
+		this.sy[block][j] = sy;
+		this.sz[block][j] = sz;
+	}
+
+	// viewProjection * translation * rotation * scale for every transform
+	public void compose(float[] viewProjection) {
+		for (int block = 0; block * BLOCK_SIZE < count; block++) {
+			int length = Math.min(BLOCK_SIZE, count - block * BLOCK_SIZE);
+			composeModels(block, length);
+			composeWith(viewProjection, block, length);
+			interleave(block, length);
+		}
+	}
+
+	private void composeModels(int block, int length) {
+		final float[] qx = this.qx[block], qy = this.qy[block], qz = this.qz[block], qw = this.qw[block];
+		final float[] sx = this.sx[block], sy = this.sy[block], sz = this.sz[block];
+		final float[] m00 = this.m00, m01 = this.m01, m02 = this.m02;
+		final float[] m10 = this.m10, m11 = this.m11, m12 = this.m12;
+		final float[] m20 = this.m20, m21 = this.m21, m22 = this.m22;
+
+		// the rotation matrix of the quaternion, every column scaled by its axis
+		for (int i = 0; i < length; i++)
+			m00[i] = (1.0f - 2.0f * (qy[i] * qy[i] + qz[i] * qz[i])) * sx[i];
+		for (int i = 0; i < length; i++)
+			m10[i] = 2.0f * (qx[i] * qy[i] + qw[i] * qz[i]) * sx[i];
+		for (int i = 0; i < length; i++)
+			m20[i] = 2.0f * (qx[i] * qz[i] - qw[i] * qy[i]) * sx[i];
+		for (int i = 0; i < length; i++)
+			m01[i] = 2.0f * (qx[i] * qy[i] - qw[i] * qz[i]) * sy[i];
+		for (int i = 0; i < length; i++)
+			m11[i] = (1.0f - 2.0f * (qx[i] * qx[i] + qz[i] * qz[i])) * sy[i];
+		for (int i = 0; i < length; i++)
+			m21[i] = 2.0f * (qy[i] * qz[i] + qw[i] * qx[i]) * sy[i];
+		for (int i = 0; i < length; i++)
+			m02[i] = 2.0f * (qx[i] * qz[i] + qw[i] * qy[i]) * sz[i];
+		for (int i = 0; i < length; i++)
+			m12[i] = 2.0f * (qy[i] * qz[i] - qw[i] * qx[i]) * sz[i];
+		for (int i = 0; i < length; i++)
+			m22[i] = (1.0f - 2.0f * (qx[i] * qx[i] + qy[i] * qy[i])) * sz[i];
+	}
+
+	// four loops per row of the view-projection, its elements are the same for every transform
+	private void composeWith(float[] vp, int block, int length) {
+		final float[] x = this.x[block], y = this.y[block], z = this.z[block];
+
+		for (int row = 0; row < 4; row++) {
+			float v0 = vp[row], v1 = vp[4 + row], v2 = vp[8 + row], v3 = vp[12 + row];
+			float[] c0 = mvp[row], c1 = mvp[4 + row], c2 = mvp[8 + row], c3 = mvp[12 + row];
+
+			for (int i = 0; i < length; i++)
+				c0[i] = v0 * m00[i] + v1 * m10[i] + v2 * m20[i];
+			for (int i = 0; i < length; i++)
+				c1[i] = v0 * m01[i] + v1 * m11[i] + v2 * m21[i];
+			for (int i = 0; i < length; i++)
+				c2[i] = v0 * m02[i] + v1 * m12[i] + v2 * m22[i];
+			for (int i = 0; i < length; i++)
+				c3[i] = v0 * x[i] + v1 * y[i] + v2 * z[i] + v3;
+		}
+	}
+
+	// the GPU wants the 16 floats of a matrix next to each other
+	private void interleave(int block, int length) {
+		final float[] e0 = mvp[0], e1 = mvp[1], e2 = mvp[2], e3 = mvp[3];
+		final float[] e4 = mvp[4], e5 = mvp[5], e6 = mvp[6], e7 = mvp[7];
+		final float[] e8 = mvp[8], e9 = mvp[9], e10 = mvp[10], e11 = mvp[11];
+		final float[] e12 = mvp[12], e13 = mvp[13], e14 = mvp[14], e15 = mvp[15];
+		final float[] interleaved = this.interleaved;
+
+		for (int i = 0, j = block * BLOCK_SIZE * FLOATS_PER_MATRIX; i < length; i++, j += FLOATS_PER_MATRIX) {
+			interleaved[j] = e0[i];
+			interleaved[j + 1] = e1[i];
+			interleaved[j + 2] = e2[i];
+			interleaved[j + 3] = e3[i];
+			interleaved[j + 4] = e4[i];
+			interleaved[j + 5] = e5[i];
+			interleaved[j + 6] = e6[i];
+			interleaved[j + 7] = e7[i];
+			interleaved[j + 8] = e8[i];
+			interleaved[j + 9] = e9[i];
+			interleaved[j + 10] = e10[i];
+			interleaved[j + 11] = e11[i];
+			interleaved[j + 12] = e12[i];
+			interleaved[j + 13] = e13[i];
+			interleaved[j + 14] = e14[i];
+			interleaved[j + 15] = e15[i];
+		}
+	}
+
+	// the same result as compose(), built one matrix at a time with general 4x4 multiplies
+	public void composeScalar(float[] viewProjection) {
+		float[] model = new float[16], result = new float[16];
+		for (int i = 0; i < count; i++) {
+			int block = i >> BLOCK_SHIFT, j = i & (BLOCK_SIZE - 1);
+			float qx = this.qx[block][j], qy = this.qy[block][j], qz = this.qz[block][j], qw = this.qw[block][j];
+			float sx = this.sx[block][j], sy = this.sy[block][j], sz = this.sz[block][j];
+
+			float xx = qx * qx, yy = qy * qy, zz = qz * qz;
+			float xy = qx * qy, xz = qx * qz, yz = qy * qz;
+			float wx = qw * qx, wy = qw * qy, wz = qw * qz;
+
+			model[0] = (1.0f - 2.0f * (yy + zz)) * sx;
+			model[1] = 2.0f * (xy + wz) * sx;
+			model[2] = 2.0f * (xz - wy) * sx;
+			model[3] = 0.0f;
+			model[4] = 2.0f * (xy - wz) * sy;
+			model[5] = (1.0f - 2.0f * (xx + zz)) * sy;
+			model[6] = 2.0f * (yz + wx) * sy;
+			model[7] = 0.0f;
+			model[8] = 2.0f * (xz + wy) * sz;
+			model[9] = 2.0f * (yz - wx) * sz;
+			model[10] = (1.0f - 2.0f * (xx + yy)) * sz;
+			model[11] = 0.0f;
+			model[12] = x[block][j];
+			model[13] = y[block][j];
+			model[14] = z[block][j];
+			model[15] = 1.0f;
+
+			Matrices.multiply(viewProjection, model, result);
+			System.arraycopy(result, 0, interleaved, i * FLOATS_PER_MATRIX, FLOATS_PER_MATRIX);
+		}
+	}
+
+	// the composed matrices of the first getCount() transforms, 16 floats each
+	float[] getMatrices() {
+		return interleaved;
+	}
+
+	public float getMatrixElement(int i, int element) {
+		return interleaved[i * FLOATS_PER_MATRIX + element];
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+}
@@ -0,0 +1,71 @@
+package c6.vertex;
+
+import java.nio.ByteBuffer;
+
+// one attribute of an interleaved vertex, e.g. the position or the color
+// the size is padded to 4 bytes, since most drivers want aligned attributes
+public class VertexAttribute {
+	private final String name;
+	private final int location;
+	private final int components;
+	private final VertexType type;
+	private final int offset;
+
+	VertexAttribute(String name, int location, int components, VertexType type, int offset) {
+		this.name = name;
+		this.location = location;
+		this.components = components;
+		this.type = type;
+		this.offset = offset;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getLocation() {
+		return location;
+	}
+
+	public int getComponents() {
+		return components;
+	}
+
+	public VertexType getType() {
+		return type;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getSize() {
+		return (components * type.getBytes() + 3) & ~3;
+	}
+
+	// writes the first "components" values at the buffer's position, then skips the padding
+	// unused values are simply ignored, so there is no need for an array per vertex
+	public void put(ByteBuffer buffer, float x, float y, float z, float w) {
+		int start = buffer.position();
+		type.put(buffer, x);
+		if (components > 1) type.put(buffer, y);
+		if (components > 2) type.put(buffer, z);
+		if (components > 3) type.put(buffer, w);
+		buffer.position(start + getSize());
+	}
+
+	public void put(ByteBuffer buffer, float[] values, int index) {
+		int first = index * components;
+		put(buffer,
+			values[first],
+			components > 1 ? values[first + 1] : 0.0f,
+			components > 2 ? values[first + 2] : 0.0f,
+			components > 3 ? values[first + 3] : 0.0f);
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + components + " x " + type + " (" + getSize() + " bytes)";
+	}
+
+}
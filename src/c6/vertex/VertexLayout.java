@@ -0,0 +1,142 @@
+package c6.vertex;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL33;
+
+// describes an interleaved vertex once, the attribute locations follow the order
+// in which they were added, so the same layout can bind the shader attributes too
+//
+// VertexLayout layout = new VertexLayout.Builder()
+//     .add("in_Position", 3, VertexType.FLOAT)
+//     .add("in_Color", 4, VertexType.UNSIGNED_BYTE_NORMALIZED)
+//     .build();
+public class VertexLayout {
+	private final List<VertexAttribute> attributes;
+	private final int stride;
+
+	private VertexLayout(List<VertexAttribute> attributes, int stride) {
+		this.attributes = Collections.unmodifiableList(attributes);
+		this.stride = stride;
+	}
+
+	public static class Builder {
+		private final List<VertexAttribute> attributes = new ArrayList<VertexAttribute>();
+		private final int firstLocation;
+		private int offset = 0;
+
+		public Builder() {
+			this(0);
+		}
+
+		// a second layout (e.g. per instance data) continues where the first one ended
+		public Builder(int firstLocation) {
+			this.firstLocation = firstLocation;
+		}
+
+		public Builder add(String name, int components, VertexType type) {
+			if (components < 1 || components > 4)
+				throw new IllegalArgumentException("A vertex attribute has 1 to 4 components!");
+
+			VertexAttribute attribute = new VertexAttribute(name, firstLocation + attributes.size(), components, type, offset);
+			attributes.add(attribute);
+			offset += attribute.getSize();
+			return this;
+		}
+
+		public VertexLayout build() {
+			if (attributes.isEmpty())
+				throw new IllegalStateException("A vertex layout needs at least one attribute!");
+
+			return new VertexLayout(new ArrayList<VertexAttribute>(attributes), offset);
+		}
+	}
+
+	public List<VertexAttribute> getAttributes() {
+		return attributes;
+	}
+
+	// the index is the order in which the attribute was added, not its location
+	public VertexAttribute getAttribute(int index) {
+		return attributes.get(index);
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	public int getSizeInBytes(int vertexCount) {
+		return vertexCount * stride;
+	}
+
+	public ByteBuffer createBuffer(int vertexCount) {
+		return BufferUtils.createByteBuffer(getSizeInBytes(vertexCount));
+	}
+
+	// call it while the VAO and the VBO holding the vertices are bound
+	// the enabled arrays are stored in the VAO together with the pointers
+	public void apply() {
+		apply(0);
+	}
+
+	// the vertices start that many bytes into the VBO
+	public void apply(long baseOffset) {
+		applyPointers(baseOffset);
+		for (VertexAttribute attribute : attributes)
+			GL20.glEnableVertexAttribArray(attribute.getLocation());
+	}
+
+	// only moves the pointers, e.g. to where this frame's data is in a StreamBuffer,
+	// the arrays stay enabled and the divisors stay what they were
+	public void applyPointers(long baseOffset) {
+		for (VertexAttribute attribute : attributes)
+			GL20.glVertexAttribPointer(attribute.getLocation(), attribute.getComponents(),
+					attribute.getType().getGlType(), attribute.getType().isNormalized(),
+					stride, baseOffset + attribute.getOffset());
+	}
+
+	// the same as apply(), but the attributes only advance once per instance
+	// instead of once per vertex, for glDrawElementsInstanced
+	public void applyPerInstance() {
+		applyPerInstance(0);
+	}
+
+	public void applyPerInstance(long baseOffset) {
+		apply(baseOffset);
+		for (VertexAttribute attribute : attributes)
+			GL33.glVertexAttribDivisor(attribute.getLocation(), 1);
+	}
+
+	// call it before glLinkProgram
+	public void bindAttribLocations(int programId) {
+		for (VertexAttribute attribute : attributes)
+			GL20.glBindAttribLocation(programId, attribute.getLocation(), attribute.getName());
+	}
+
+	// memory is what the VBO takes up, bandwidth is what the vertex fetch
+	// has to read each second if every vertex is drawn drawsPerSecond times
+	public String report(int vertexCount, int drawsPerSecond) {
+		StringBuilder report = new StringBuilder();
+		for (VertexAttribute attribute : attributes)
+			report.append("  ").append(attribute).append("\n");
+
+		long bytes = (long) vertexCount * stride;
+		report.append(String.format("  stride %d bytes, %d vertices: %.2f MB, %.2f MB/s at %d draws/s",
+				stride, vertexCount, bytes / 1048576.0d, bytes * (double) drawsPerSecond / 1048576.0d, drawsPerSecond));
+		return report.toString();
+	}
+
+	public String compare(VertexLayout baseline, int vertexCount, int drawsPerSecond) {
+		long saved = (long) vertexCount * (baseline.stride - stride);
+		return String.format("%d -> %d bytes per vertex, saves %.2f MB (%.1f%%) and %.2f MB/s at %d draws/s",
+				baseline.stride, stride, saved / 1048576.0d,
+				100.0d * (baseline.stride - stride) / baseline.stride,
+				saved * (double) drawsPerSecond / 1048576.0d, drawsPerSecond);
+	}
+
+}
@@ -0,0 +1,38 @@
+package c6.vertex;
+
+// prints the memory and bandwidth cost of the c6 vertex formats for a large mesh
+// usage: VertexLayoutReport [vertex count] [draws per second]
+public class VertexLayoutReport {
+
+	// the original c6 format: vec4 positions, float colors and float texture coordinates
+	public static final VertexLayout FLOAT_LAYOUT = new VertexLayout.Builder()
+			.add("in_Position", 4, VertexType.FLOAT)
+			.add("in_Color", 4, VertexType.FLOAT)
+			.add("in_TextureCoord", 2, VertexType.FLOAT)
+			.build();
+
+	public static final VertexLayout PACKED_LAYOUT = new VertexLayout.Builder()
+			.add("in_Position", 3, VertexType.FLOAT)
+			.add("in_Color", 4, VertexType.UNSIGNED_BYTE_NORMALIZED)
+			.add("in_TextureCoord", 2, VertexType.UNSIGNED_SHORT_NORMALIZED)
+			.build();
+
+	// half float positions are only good enough for small, local coordinates
+	public static final VertexLayout COMPACT_LAYOUT = new VertexLayout.Builder()
+			.add("in_Position", 3, VertexType.HALF_FLOAT)
+			.add("in_Color", 4, VertexType.UNSIGNED_BYTE_NORMALIZED)
+			.add("in_TextureCoord", 2, VertexType.HALF_FLOAT)
+			.build();
+
+	public static void main(String[] args) {
+		int vertexCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int drawsPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+
+		System.out.println("float:\n" + FLOAT_LAYOUT.report(vertexCount, drawsPerSecond));
+		System.out.println("packed:\n" + PACKED_LAYOUT.report(vertexCount, drawsPerSecond));
+		System.out.println("  " + PACKED_LAYOUT.compare(FLOAT_LAYOUT, vertexCount, drawsPerSecond));
+		System.out.println("compact:\n" + COMPACT_LAYOUT.report(vertexCount, drawsPerSecond));
+		System.out.println("  " + COMPACT_LAYOUT.compare(FLOAT_LAYOUT, vertexCount, drawsPerSecond));
+	}
+
+}
@@ -0,0 +1,105 @@
+package c6.vertex;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+// the component types a vertex attribute can be stored as
+// the normalized ones are turned back into floats by OpenGL,
+// signed ones to the [-1, 1] range, unsigned ones to [0, 1]
+public enum VertexType {
+	FLOAT(GL11.GL_FLOAT, 4, false),
+	HALF_FLOAT(GL30.GL_HALF_FLOAT, 2, false),
+	BYTE_NORMALIZED(GL11.GL_BYTE, 1, true),
+	UNSIGNED_BYTE_NORMALIZED(GL11.GL_UNSIGNED_BYTE, 1, true),
+	SHORT_NORMALIZED(GL11.GL_SHORT, 2, true),
+	UNSIGNED_SHORT_NORMALIZED(GL11.GL_UNSIGNED_SHORT, 2, true);
+
+	private final int glType;
+	private final int bytes;
+	private final boolean normalized;
+
+	private VertexType(int glType, int bytes, boolean normalized) {
+		this.glType = glType;
+		this.bytes = bytes;
+		this.normalized = normalized;
+	}
+
+	public int getGlType() {
+		return glType;
+	}
+
+	public int getBytes() {
+		return bytes;
+	}
+
+	public boolean isNormalized() {
+		return normalized;
+	}
+
+	// converts the value to this type and writes it at the buffer's position
+	public void put(ByteBuffer buffer, float value) {
+		switch (this) {
+		case FLOAT:
+			buffer.putFloat(value);
+			break;
+		case HALF_FLOAT:
+			buffer.putShort(toHalfFloat(value));
+			break;
+		case BYTE_NORMALIZED:
+			buffer.put((byte) Math.round(clamp(value, -1.0f, 1.0f) * 127.0f));
+			break;
+		case UNSIGNED_BYTE_NORMALIZED:
+			buffer.put((byte) Math.round(clamp(value, 0.0f, 1.0f) * 255.0f));
+			break;
+		case SHORT_NORMALIZED:
+			buffer.putShort((short) Math.round(clamp(value, -1.0f, 1.0f) * 32767.0f));
+			break;
+		case UNSIGNED_SHORT_NORMALIZED:
+			buffer.putShort((short) Math.round(clamp(value, 0.0f, 1.0f) * 65535.0f));
+			break;
+		}
+	}
+
+	private static float clamp(float value, float min, float max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+
+	// IEEE 754 binary16 conversion with round to nearest even
+	// values too big for a half float become infinity, tiny ones become denormals or zero
+	public static short toHalfFloat(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = (bits >>> 23) & 0xff;
+		int mantissa = bits & 0x7fffff;
+
+		if (exponent == 0xff) // infinity or NaN
+			return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+
+		int halfExponent = exponent - 127 + 15;
+		if (halfExponent >= 0x1f) // overflow
+			return (short) (sign | 0x7c00);
+
+		if (halfExponent <= 0) { // denormal or zero
+			if (halfExponent < -10)
+				return (short) sign;
+			mantissa |= 0x800000;
+			int shift = 14 - halfExponent;
+			int half = mantissa >> shift;
+			int rest = mantissa & ((1 << shift) - 1);
+			int halfway = 1 << (shift - 1);
+			if (rest > halfway || (rest == halfway && (half & 1) != 0))
+				half++;
+			return (short) (sign | half);
+		}
+
+		int half = sign | (halfExponent << 10) | (mantissa >> 13);
+		int rest = mantissa & 0x1fff;
+		// rounding may carry into the exponent, which is still the correct result
+		if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0))
+			half++;
+		return (short) half;
+	}
+
+}